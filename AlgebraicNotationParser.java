@@ -25,6 +25,76 @@ public class AlgebraicNotationParser {
      * @return SAN string with check (+) or checkmate (#) symbols if applicable
      */
     public String toAlgebraicNotation(Move move) throws InvalidSquareException, GameStateException {
+        EngineMetrics.SanWriteEvent event = EngineMetrics.startSanWrite();
+        // Disambiguation depends on the position before the move, so step back to it if we can
+        String notation;
+        List<Move> log = engine.getMoveLog();
+        if (!log.isEmpty() && log.get(log.size() - 1) == move) {
+            engine.undoMove();
+            try {
+                notation = moveText(move);
+            } finally {
+                try {
+                    engine.makeMove(move);
+                } catch (InvalidMoveException e) {
+                    throw new GameStateException("Could not replay " + move + ": " + e.getMessage(), e);
+                }
+            }
+        } else {
+            notation = moveText(move);
+        }
+        StringBuilder san = new StringBuilder(notation);
+
+        // Add check or checkmate symbol
+        String opponentColor = engine.getCurrentTurn(); // After move, it's opponent's turn
+        if (engine.isCheckmate()) {
+            san.append("#");
+        } else if (engine.isInCheck(opponentColor)) {
+            san.append("+");
+        }
+        
+        return written(event, san.toString());
+    }
+
+    /**
+     * Generates Standard Algebraic Notation for a legal move of the current position,
+     * with check (+) or checkmate (#) symbols. Call this BEFORE the move is made;
+     * the move is played and taken back to find the symbol.
+     *
+     * @param move A legal move of the engine's current position
+     * @return SAN string
+     */
+    public String toSan(Move move) throws InvalidSquareException, GameStateException {
+        EngineMetrics.SanWriteEvent event = EngineMetrics.startSanWrite();
+        StringBuilder san = new StringBuilder(moveText(move));
+        try {
+            engine.makeMove(move);
+        } catch (InvalidMoveException e) {
+            throw new GameStateException("Cannot play " + move + ": " + e.getMessage(), e);
+        }
+        try {
+            if (engine.isCheckmate()) {
+                san.append("#");
+            } else if (engine.isInCheck(engine.getCurrentTurn())) {
+                san.append("+");
+            }
+        } finally {
+            engine.undoMove();
+        }
+        return written(event, san.toString());
+    }
+
+    private static String written(EngineMetrics.SanWriteEvent event, String san) {
+        if (event != null) {
+            event.san = san;
+            event.commit();
+        }
+        EngineMetrics.count(EngineMetrics.Counter.SAN_WRITTEN);
+        return san;
+    }
+
+    // SAN without the check symbol, for a move of the current position
+    private String moveText(Move move) throws InvalidSquareException, GameStateException {
         StringBuilder san = new StringBuilder();
         
         // Handle castling
@@ -38,7 +108,7 @@ public class AlgebraicNotationParser {
             Square end = move.getEndSquare();
             
             // For non-pawn pieces, add the piece letter
-            if (!piece.getType().equals("Pawn")) {
+            if (piece.getKind() != PieceKind.PAWN) {
                 san.append(piece.getPieceLetter());
                 
                 // Add disambiguation if needed
@@ -64,14 +134,6 @@ public class AlgebraicNotationParser {
             }
         }
         
-        // Add check or checkmate symbol
-        String opponentColor = engine.getCurrentTurn(); // After move, it's opponent's turn
-        if (engine.isCheckmate()) {
-            san.append("#");
-        } else if (engine.isInCheck(opponentColor)) {
-            san.append("+");
-        }
-        
         return san.toString();
     }
 
@@ -90,8 +152,7 @@ public class AlgebraicNotationParser {
         // Find other pieces of the same type that can move to the same square
         List<Move> ambiguousMoves = new ArrayList<>();
         for (Move m : allMoves) {
-            if (m.getPieceMoved().getType().equals(piece.getType()) &&
-                m.getPieceMoved().getColor().equals(piece.getColor()) &&
+            if (m.getPieceMoved() == piece &&
                 m.getEndSquare().equals(end) &&
                 !m.getStartSquare().equals(start)) {
                 ambiguousMoves.add(m);
@@ -140,6 +201,25 @@ public class AlgebraicNotationParser {
      * @throws PGNParseException if there's an error during parsing
      */
     public Move parseMove(String san) throws PGNParseException {
+        EngineMetrics.SanParseEvent event = EngineMetrics.startSanParse();
+        Move move = null;
+        try {
+            move = matchMove(san);
+            return move;
+        } finally {
+            if (event != null) {
+                event.san = san;
+                event.matched = move != null;
+                event.commit();
+            }
+            EngineMetrics.count(EngineMetrics.Counter.SAN_PARSED);
+            if (move == null) {
+                EngineMetrics.count(EngineMetrics.Counter.PARSE_FAILURES);
+            }
+        }
+    }
+
+    private Move matchMove(String san) throws PGNParseException {
         // Remove check and checkmate symbols if present
         san = san.replaceAll("[+#]", "");
         
@@ -183,7 +263,7 @@ public class AlgebraicNotationParser {
         Square end = move.getEndSquare();
         
         // Handle pawn moves
-        if (piece.getType().equals("Pawn")) {
+        if (piece.getKind() == PieceKind.PAWN) {
             // Check if it's a capture (e.g., "exd5")
             if (san.contains("x")) {
                 // Format: file + x + destination (e.g., "exd5")
@@ -0,0 +1,183 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import exceptions.*;
+
+/**
+ * Background multi-PV analysis for game review.
+ *
+ * {@link #analyze(ChessEngine)} starts an open-ended search of a copy of the
+ * position, and every completed iteration is published as a
+ * {@link SearchResult} whose {@link SearchResult#getLines()} hold the best
+ * moves with scores and principal variations. The first results arrive after
+ * a few milliseconds and get deeper for as long as the analysis runs.
+ *
+ * Analysis can be cancelled and resumed; a resumed analysis picks up at the
+ * depth it had reached. The transposition table is kept between positions,
+ * so stepping through the moves of a game reuses the earlier work.
+ *
+ * Subscribers that fall behind miss intermediate results rather than slowing
+ * the search down; every result is complete on its own. A search that fails
+ * is reported through the Future of that analysis only, and the publisher
+ * stays open for the next one until the analyzer is closed.
+ */
+public class Analyzer implements AutoCloseable {
+
+    private final TranspositionTable table;
+    private final SubmissionPublisher<SearchResult> publisher;
+    private final ExecutorService searchThread;
+    private volatile int multiPv;
+    private volatile TablebaseProber tablebases;
+
+    // The position being analysed and the running search, if any
+    private byte[] position;
+    private Search search;
+    private Future<SearchResult> running;
+    private volatile int depthReached;
+
+    /**
+     * @param hashMegabytes Size of the transposition table
+     * @param multiPv Number of best moves to report
+     */
+    public Analyzer(int hashMegabytes, int multiPv) {
+        this.table = new TranspositionTable(hashMegabytes);
+        this.publisher = new SubmissionPublisher<>();
+        this.searchThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Get the stream of results, for reactive consumers.
+     *
+     * @return Publisher of each completed iteration
+     */
+    public Flow.Publisher<SearchResult> getPublisher() {
+        return this.publisher;
+    }
+
+    /**
+     * Registers a callback for each completed iteration. It runs on the
+     * publisher's executor, not on the search thread.
+     *
+     * @param listener The callback
+     * @return Completes when the analyzer is closed
+     */
+    public CompletableFuture<Void> addListener(Consumer<SearchResult> listener) {
+        return this.publisher.consume(listener);
+    }
+
+    /**
+     * Sets the number of best moves reported, from the next (re)started analysis on.
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Sets endgame tables for the search, from the next (re)started analysis on.
+     *
+     * @param tablebases The tables, or null to analyse without them
+     */
+    public void setTablebases(TablebaseProber tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Starts analysing a position, stopping any analysis in progress. The engine
+     * is copied, so the caller may keep using it.
+     *
+     * @param engine The position, with its game history for repetitions
+     * @return Completes with the last result when the analysis stops, or with a
+     *         GameStateException if the search fails
+     */
+    public synchronized Future<SearchResult> analyze(ChessEngine engine) {
+        cancel();
+        this.position = engine.toSnapshot();
+        this.depthReached = 0;
+        return start(1);
+    }
+
+    /**
+     * Stops the running analysis. The last published result stays valid.
+     */
+    public synchronized void cancel() {
+        if (this.running == null) {
+            return;
+        }
+        this.search.stop();
+        try {
+            this.running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // reported through the Future returned when the analysis started
+        }
+        this.running = null;
+        this.search = null;
+    }
+
+    /**
+     * Continues a cancelled analysis of the same position from the depth it had
+     * reached. Does nothing if the analysis is running or no position was given.
+     *
+     * @return The running analysis, as {@link #analyze(ChessEngine)} returns it,
+     *         or null if no position was given
+     */
+    public synchronized Future<SearchResult> resume() {
+        if (this.position == null || isRunning()) {
+            return this.running;
+        }
+        return start(Math.max(1, this.depthReached));
+    }
+
+    /**
+     * Checks if an analysis is in progress.
+     */
+    public synchronized boolean isRunning() {
+        return this.running != null && !this.running.isDone();
+    }
+
+    /**
+     * Get the depth of the last completed iteration for the current position.
+     */
+    public int getDepthReached() {
+        return this.depthReached;
+    }
+
+    @Override
+    public synchronized void close() {
+        cancel();
+        this.searchThread.shutdown();
+        this.publisher.close();
+    }
+
+    private Future<SearchResult> start(int startDepth) {
+        ChessEngine copy;
+        try {
+            copy = ChessEngine.fromSnapshot(this.position);
+        } catch (GameStateException e) {
+            throw new IllegalStateException("Position snapshot is invalid", e);
+        }
+        Search analysis = new Search(copy);
+        analysis.setTranspositionTable(this.table);
+        analysis.setMultiPv(this.multiPv);
+        analysis.setTablebases(this.tablebases);
+        analysis.setStartDepth(startDepth);
+        analysis.setIterationListener(result -> {
+            this.depthReached = result.getDepth();
+            this.publisher.offer(result, (subscriber, dropped) -> false);
+        });
+        this.search = analysis;
+        this.running = this.searchThread.submit(analysis::search);
+        return this.running;
+    }
+}
@@ -4,55 +4,259 @@ import exceptions.*;
 public class Board
 {
     private Square[][] squares;
+    private Square[] squaresByIndex; // the same squares, indexed by row * 8 + col
+    private int castlingRights; // 1 = white kingside, 2 = white queenside, 4 = black kingside, 8 = black queenside
+
+    // Rights kept when a move starts or ends on a square, indexed by row * 8 + col
+    private static final int[] CASTLING_MASK = new int[64];
+    static
+    {
+        java.util.Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[7 * 8 + 4] = ~(1 | 2) & 15;
+        CASTLING_MASK[7 * 8 + 7] = ~1 & 15;
+        CASTLING_MASK[7 * 8 + 0] = ~2 & 15;
+        CASTLING_MASK[0 * 8 + 4] = ~(4 | 8) & 15;
+        CASTLING_MASK[0 * 8 + 7] = ~4 & 15;
+        CASTLING_MASK[0 * 8 + 0] = ~8 & 15;
+    }
 
     public Board() {
-        this.squares = new Square[8][8];
         this.initEmptyBoard();
         this.setStartingPosition();
     }
+
+    //board set up from the piece placement field of a FEN (e.g., "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR")
+    public Board(String fen) throws FENParseException {
+        this.initEmptyBoard();
+        this.setPosition(fen);
+    }
     private void initEmptyBoard()
     {
+        this.squares = new Square[8][8];
+        this.squaresByIndex = new Square[64];
         for(int row = 0; row < 8; row++) 
         {
             for(int col = 0; col < 8; col++) 
             {
                 this.squares[row][col] = new Square(row, col);
+                this.squaresByIndex[Square.index(row, col)] = this.squares[row][col];
             }
         }
     }
 
     private void setStartingPosition()
     {
-         for(int col = 0; col < 8; col++) {
-            this.squares[6][col].setPiece(new Pawn("white"));
-            this.squares[1][col].setPiece(new Pawn("black"));
-            if(col == 0 || col == 7)
+        PieceKind[] backRank = {PieceKind.ROOK, PieceKind.KNIGHT, PieceKind.BISHOP, PieceKind.QUEEN,
+                                PieceKind.KING, PieceKind.BISHOP, PieceKind.KNIGHT, PieceKind.ROOK};
+        for(int col = 0; col < 8; col++)
+        {
+            this.squares[6][col].setPiece(Piece.of(PieceColor.WHITE, PieceKind.PAWN));
+            this.squares[1][col].setPiece(Piece.of(PieceColor.BLACK, PieceKind.PAWN));
+            this.squares[7][col].setPiece(Piece.of(PieceColor.WHITE, backRank[col]));
+            this.squares[0][col].setPiece(Piece.of(PieceColor.BLACK, backRank[col]));
+        }
+        this.castlingRights = 15;
+    }
+
+    //remove every piece, keeping the square objects
+    public void clear()
+    {
+        for(int row = 0; row < 8; row++)
+        {
+            for(int col = 0; col < 8; col++)
             {
-                this.squares[7][col].setPiece(new Rook("white"));
-                this.squares[0][col].setPiece(new Rook("black"));
+                this.squares[row][col].removePiece();
             }
-            if(col == 1 || col == 6)
+        }
+        this.castlingRights = 0;
+    }
+
+    /**
+     * Replaces the pieces on this board with the piece placement of a FEN.
+     * Only the first FEN field is read; anything after the first space is ignored.
+     * The existing square objects are reused, so no per-position board is allocated.
+     * Castling rights are set to every right the placement allows, i.e. wherever a
+     * king and a rook stand on their original squares; the caller narrows them down
+     * to the FEN's castling field (see ChessEngine.loadFen). The board is only
+     * changed once the whole placement has been read, so a bad one leaves it as it was.
+     *
+     * @param fen A FEN string or just its piece placement field
+     * @throws FENParseException if the placement does not describe 8 ranks of 8 squares
+     */
+    public void setPosition(String fen) throws FENParseException
+    {
+        this.setPlacement(parsePlacement(fen));
+    }
+
+    /**
+     * Reads the piece placement field of a FEN without changing any board.
+     *
+     * @param fen A FEN string or just its piece placement field
+     * @return The piece on each square, indexed row * 8 + col, or null where empty
+     * @throws FENParseException if the placement does not describe 8 ranks of 8 squares
+     */
+    public static Piece[] parsePlacement(String fen) throws FENParseException
+    {
+        Piece[] placement = new Piece[64];
+        int row = 0;
+        int col = 0;
+        int i = 0;
+        for(; i < fen.length(); i++)
+        {
+            char c = fen.charAt(i);
+            if(c == ' ')
+            {
+                break;
+            }
+            if(c == '/')
             {
-                this.squares[7][col].setPiece(new Knight("white"));
-                this.squares[0][col].setPiece(new Knight("black"));
+                if(col != 8)
+                {
+                    throw new FENParseException(fen, "rank " + (8 - row) + " does not have 8 squares");
+                }
+                row++;
+                col = 0;
+                continue;
+            }
+            if(c >= '1' && c <= '8')
+            {
+                col += c - '0';
+                if(col > 8)
+                {
+                    throw new FENParseException(fen, "rank " + (8 - row) + " has more than 8 squares");
+                }
+                continue;
             }
-            if(col == 2 || col == 5)
+            if(row > 7 || col > 7)
             {
-                this.squares[7][col].setPiece(new Bishop("white"));
-                this.squares[0][col].setPiece(new Bishop("black"));
+                throw new FENParseException(fen, "too many squares");
             }
-            if(col == 3)
+            Piece piece = Piece.fromFenChar(c);
+            if(piece == null)
             {
-                this.squares[7][col].setPiece(new Queen("white"));
-                this.squares[0][col].setPiece(new Queen("black"));
+                throw new FENParseException(fen, "unknown piece '" + c + "'");
             }
-            if(col == 4)
+            if(piece.getKind() == PieceKind.PAWN && (row == 0 || row == 7))
             {
-                this.squares[7][col].setPiece(new King("white"));
-                this.squares[0][col].setPiece(new King("black"));
+                throw new FENParseException(fen, "pawn on the first or last rank");
             }
+            placement[row * 8 + col] = piece;
+            col++;
         }
+        if(row != 7 || col != 8)
+        {
+            throw new FENParseException(fen, "piece placement must describe 8 ranks of 8 squares");
+        }
+        return placement;
+    }
 
+    /**
+     * Replaces the pieces on this board, as read by {@link #parsePlacement(String)}.
+     * Castling rights are set as by {@link #setPosition(String)}.
+     *
+     * @param placement The piece on each square, indexed row * 8 + col
+     */
+    public void setPlacement(Piece[] placement)
+    {
+        this.clear();
+        for(int square = 0; square < 64; square++)
+        {
+            if(placement[square] != null)
+            {
+                this.squares[square / 8][square % 8].setPiece(placement[square]);
+            }
+        }
+        this.castlingRights = this.possibleCastlingRights();
+    }
+
+    //get the piece placement field of the FEN for this board
+    public String toFenPlacement()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        for(int row = 0; row < 8; row++)
+        {
+            int empty = 0;
+            for(int col = 0; col < 8; col++)
+            {
+                Piece piece = this.squares[row][col].getPiece();
+                if(piece == null)
+                {
+                    empty++;
+                    continue;
+                }
+                if(empty > 0)
+                {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                sb.append(piece.getFenChar());
+            }
+            if(empty > 0)
+            {
+                sb.append(empty);
+            }
+            if(row < 7)
+            {
+                sb.append('/');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the castling rights of the position. They are part of the position
+     * rather than of the pieces: a right is lost for good once the king or the
+     * rook moves or the rook is captured.
+     *
+     * @return Bit mask: 1 = white kingside, 2 = white queenside, 4 = black kingside, 8 = black queenside
+     */
+    public int getCastlingRights()
+    {
+        return this.castlingRights;
+    }
+
+    /**
+     * Replaces the castling rights, e.g. when a move is undone.
+     *
+     * @param castlingRights Bit mask as returned by {@link #getCastlingRights()}
+     */
+    public void setCastlingRights(int castlingRights)
+    {
+        this.castlingRights = castlingRights & 15;
+    }
+
+    /**
+     * Drops the castling rights tied to a square, i.e. those of a king or rook
+     * that moves from it or a rook that is captured on it.
+     *
+     * @param row Row (0-7)
+     * @param col Column (0-7)
+     */
+    public void clearCastlingRights(int row, int col)
+    {
+        this.castlingRights &= CASTLING_MASK[Square.index(row, col)];
+    }
+
+    // every right allowed by the placement: king and rook of a side on their original squares
+    private int possibleCastlingRights()
+    {
+        int rights = 0;
+        if(isOnSquare(7, 4, PieceColor.WHITE, PieceKind.KING))
+        {
+            if(isOnSquare(7, 7, PieceColor.WHITE, PieceKind.ROOK)) rights |= 1;
+            if(isOnSquare(7, 0, PieceColor.WHITE, PieceKind.ROOK)) rights |= 2;
+        }
+        if(isOnSquare(0, 4, PieceColor.BLACK, PieceKind.KING))
+        {
+            if(isOnSquare(0, 7, PieceColor.BLACK, PieceKind.ROOK)) rights |= 4;
+            if(isOnSquare(0, 0, PieceColor.BLACK, PieceKind.ROOK)) rights |= 8;
+        }
+        return rights;
+    }
+
+    private boolean isOnSquare(int row, int col, PieceColor color, PieceKind kind)
+    {
+        return this.squares[row][col].getPiece() == Piece.of(color, kind);
     }
 
     //get square by row and col
@@ -61,14 +265,20 @@ public class Board
             throw new InvalidSquareException(row, col);
         return this.squares[row][col];
     }
+    //get square by index (row * 8 + col, see Square.getIndex)
+    public Square getSquare(int index)
+    {
+        return this.squaresByIndex[index];
+    }
     //get square by file and rank(e.g., d4)
     public Square getSquare(String square)
     {
-        String files = "abcdefgh";
-        String ranks = "87654321";
-        int col = files.indexOf(square.charAt(0));
-        int row = ranks.indexOf(square.charAt(1));
-        return this.squares[row][col];
+        int index = Square.indexOf(square);
+        if(index < 0)
+        {
+            throw new IllegalArgumentException("Not a square: " + square);
+        }
+        return this.squaresByIndex[index];
     }
     public Square[][] getSquares()
     {
@@ -91,7 +301,7 @@ public class Board
                 // Get piece from square
                 Square square = this.squares[row][col];
                 if (square.hasPiece()) {
-                    String pieceColor = square.getPiece().getColor().equals("white") ? whitePieceFg : blackPieceFg;
+                    String pieceColor = square.getPiece().isWhite() ? whitePieceFg : blackPieceFg;
                     String symbol = square.getPiece().getSymbol();
                     System.out.print(pieceColor + symbol + " " + reset);
                 } else {
@@ -2,22 +2,46 @@
     import exceptions.*;
 
     import java.util.ArrayList;
+    import java.util.Collections;
     import java.util.List;
 
     public class ChessEngine {
+        public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
         Board board;
         List<Move> moveLog;
-        String currentTurn;
+        PieceColor currentTurn;
         GameResult gameResult;
         private String drawRequestedBy; // Track who requested a draw
+        private int halfmoveClock; // plies since the last capture or pawn move
+        private int fullmoveNumber;
+        private Square startEnPassantSquare; // en passant target of the set-up position, used while moveLog is empty
+        private long[] positionHashes; // Zobrist hash of every position of the game, current one last
+        private int positionCount;
+        private int[] materialSignatures; // MaterialSignature of every position, parallel to positionHashes
+        private PositionStatus[] statusCache; // lazily computed legal moves / check state, parallel to positionHashes
+        private int automaticResultPly; // moveLog size when a draw was declared by the engine itself, or -1
 
 
         public ChessEngine() {
             this.board = new Board();
             this.moveLog = new ArrayList<>();
-            this.currentTurn = "white";
+            this.currentTurn = PieceColor.WHITE;
             this.gameResult = new GameResult();
             this.drawRequestedBy = null;
+            this.halfmoveClock = 0;
+            this.fullmoveNumber = 1;
+            this.startEnPassantSquare = null;
+            this.positionHashes = new long[128];
+            this.materialSignatures = new int[128];
+            this.statusCache = new PositionStatus[128];
+            this.resetPositionHistory();
+        }
+
+        //engine set up from a position in Forsyth-Edwards Notation
+        public ChessEngine(String fen) throws FENParseException {
+            this();
+            this.loadFen(fen);
         }
 
         public Board getBoard()
@@ -30,6 +54,11 @@
             return this.moveLog;
         }
         public String getCurrentTurn()
+        {
+            return this.currentTurn.getName();
+        }
+
+        public PieceColor getSideToMove()
         {
             return this.currentTurn;
         }
@@ -48,6 +77,370 @@
         {
             this.drawRequestedBy = null;
         }
+
+        public int getHalfmoveClock()
+        {
+            return this.halfmoveClock;
+        }
+
+        public int getFullmoveNumber()
+        {
+            return this.fullmoveNumber;
+        }
+
+        //get the square a pawn could move to when capturing en passant, or null if there is none
+        public Square getEnPassantTarget()
+        {
+            if(this.moveLog.isEmpty())
+            {
+                return this.startEnPassantSquare;
+            }
+            Move lastMove = this.moveLog.get(this.moveLog.size() - 1);
+            int startRow = lastMove.getStartSquare().getRow();
+            int endRow = lastMove.getEndSquare().getRow();
+            if(lastMove.getPieceMoved().getKind() == PieceKind.PAWN && Math.abs(startRow - endRow) == 2)
+            {
+                return this.board.getSquares()[(startRow + endRow) / 2][lastMove.getEndSquare().getCol()];
+            }
+            return null;
+        }
+
+        /**
+         * Replaces the game with a position in Forsyth-Edwards Notation.
+         * The board instance is reused; the move log, result and draw offer are reset.
+         * Castling rights are kept only where the king and rook stand on their original squares.
+         * The halfmove clock and fullmove number fields are optional and default to 0 and 1.
+         * A malformed FEN leaves the game unchanged, as does one without exactly one king
+         * per side or with the side not to move in check. A position that is already drawn, e.g. by
+         * insufficient material or the 75-move rule, gets that result at once.
+         *
+         * @param fen The position, e.g. "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"
+         * @throws FENParseException if the FEN is malformed or the position is illegal
+         */
+        public void loadFen(String fen) throws FENParseException
+        {
+            // field boundaries, found without splitting the string
+            int[] starts = new int[6];
+            int[] ends = new int[6];
+            int fields = 0;
+            int i = 0;
+            while(i < fen.length() && fields < 6)
+            {
+                while(i < fen.length() && fen.charAt(i) == ' ') i++;
+                if(i == fen.length()) break;
+                starts[fields] = i;
+                while(i < fen.length() && fen.charAt(i) != ' ') i++;
+                ends[fields++] = i;
+            }
+            if(fields < 4)
+            {
+                throw new FENParseException(fen, "expected at least 4 fields");
+            }
+
+            // check every field before anything is changed, so a bad FEN leaves the game as it was
+            if(ends[1] - starts[1] != 1 || (fen.charAt(starts[1]) != 'w' && fen.charAt(starts[1]) != 'b'))
+            {
+                throw new FENParseException(fen, "side to move must be 'w' or 'b'");
+            }
+            PieceColor turn = fen.charAt(starts[1]) == 'w' ? PieceColor.WHITE : PieceColor.BLACK;
+
+            int castling = 0;
+            for(int c = starts[2]; c < ends[2]; c++)
+            {
+                switch(fen.charAt(c))
+                {
+                    case 'K': castling |= 1; break;
+                    case 'Q': castling |= 2; break;
+                    case 'k': castling |= 4; break;
+                    case 'q': castling |= 8; break;
+                    case '-': break;
+                    default: throw new FENParseException(fen, "invalid castling field");
+                }
+            }
+
+            int enPassantRow = -1;
+            int enPassantCol = -1;
+            if(fen.charAt(starts[3]) != '-')
+            {
+                enPassantCol = fen.charAt(starts[3]) - 'a';
+                int rank = ends[3] - starts[3] == 2 ? fen.charAt(starts[3] + 1) - '0' : -1;
+                if(enPassantCol < 0 || enPassantCol > 7 || (rank != 3 && rank != 6))
+                {
+                    throw new FENParseException(fen, "invalid en passant square");
+                }
+                enPassantRow = 8 - rank;
+            }
+
+            int halfmoves;
+            int fullmoves;
+            try
+            {
+                halfmoves = fields > 4 ? Integer.parseInt(fen, starts[4], ends[4], 10) : 0;
+                fullmoves = fields > 5 ? Integer.parseInt(fen, starts[5], ends[5], 10) : 1;
+            }
+            catch(NumberFormatException e)
+            {
+                throw new FENParseException(fen, "invalid move counters");
+            }
+
+            Piece[] placement = Board.parsePlacement(fen.substring(starts[0], ends[0]));
+            int whiteKing = findKing(placement, PieceColor.WHITE);
+            int blackKing = findKing(placement, PieceColor.BLACK);
+            if(whiteKing < 0 || blackKing < 0)
+            {
+                throw new FENParseException(fen, "each side must have exactly one king");
+            }
+            int waitingKing = turn == PieceColor.WHITE ? blackKing : whiteKing;
+            if(isAttacked(placement, waitingKing, turn))
+            {
+                throw new FENParseException(fen, "the side not to move is in check");
+            }
+
+            this.board.setPlacement(placement);
+            // the board allows every right its placement permits; keep those the FEN grants
+            this.board.setCastlingRights(this.board.getCastlingRights() & castling);
+            this.currentTurn = turn;
+            this.startEnPassantSquare = enPassantRow < 0 ? null : this.board.getSquares()[enPassantRow][enPassantCol];
+            this.halfmoveClock = halfmoves;
+            this.fullmoveNumber = fullmoves;
+            this.moveLog.clear();
+            this.gameResult = new GameResult();
+            this.drawRequestedBy = null;
+            this.resetPositionHistory();
+            this.checkLoadedPosition();
+        }
+
+        // square of the only king of a colour in a placement, or -1 if there is none or more than one
+        private static int findKing(Piece[] placement, PieceColor color)
+        {
+            Piece king = Piece.of(color, PieceKind.KING);
+            int found = -1;
+            for(int square = 0; square < 64; square++)
+            {
+                if(placement[square] == king)
+                {
+                    if(found >= 0)
+                    {
+                        return -1;
+                    }
+                    found = square;
+                }
+            }
+            return found;
+        }
+
+        // true if a piece of the given colour attacks the square, in a placement that is not on a board yet
+        private static boolean isAttacked(Piece[] placement, int square, PieceColor by)
+        {
+            int row = square / 8;
+            int col = square % 8;
+            // a white pawn attacks towards row 0, so it stands one row below the square
+            int pawnRow = by == PieceColor.WHITE ? row + 1 : row - 1;
+            Piece pawn = Piece.of(by, PieceKind.PAWN);
+            for(int dc = -1; dc <= 1; dc += 2)
+            {
+                if(pieceAt(placement, pawnRow, col + dc) == pawn)
+                {
+                    return true;
+                }
+            }
+            Piece knight = Piece.of(by, PieceKind.KNIGHT);
+            int[][] jumps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+            for(int[] jump : jumps)
+            {
+                if(pieceAt(placement, row + jump[0], col + jump[1]) == knight)
+                {
+                    return true;
+                }
+            }
+            Piece king = Piece.of(by, PieceKind.KING);
+            Piece queen = Piece.of(by, PieceKind.QUEEN);
+            Piece rook = Piece.of(by, PieceKind.ROOK);
+            Piece bishop = Piece.of(by, PieceKind.BISHOP);
+            for(int dr = -1; dr <= 1; dr++)
+            {
+                for(int dc = -1; dc <= 1; dc++)
+                {
+                    if(dr == 0 && dc == 0)
+                    {
+                        continue;
+                    }
+                    Piece slider = dr == 0 || dc == 0 ? rook : bishop;
+                    int r = row + dr;
+                    int c = col + dc;
+                    if(pieceAt(placement, r, c) == king)
+                    {
+                        return true;
+                    }
+                    while(r >= 0 && r < 8 && c >= 0 && c < 8)
+                    {
+                        Piece piece = placement[r * 8 + c];
+                        if(piece != null)
+                        {
+                            if(piece == slider || piece == queen)
+                            {
+                                return true;
+                            }
+                            break;
+                        }
+                        r += dr;
+                        c += dc;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static Piece pieceAt(Piece[] placement, int row, int col)
+        {
+            return row < 0 || row > 7 || col < 0 || col > 7 ? null : placement[row * 8 + col];
+        }
+
+        // a set-up position may already be drawn, e.g. bare kings or an expired 75-move clock
+        private void checkLoadedPosition()
+        {
+            try
+            {
+                this.checkAutomaticDraw();
+            }
+            catch(InvalidSquareException e)
+            {
+                throw new IllegalStateException("Board squares are invalid", e);
+            }
+        }
+
+        private void resetPositionHistory()
+        {
+            this.positionHashes[0] = Zobrist.hash(this);
+            this.materialSignatures[0] = MaterialSignature.of(this.board);
+            this.resetStatus(0);
+            this.positionCount = 1;
+            this.automaticResultPly = -1;
+        }
+
+        private void resetStatus(int index)
+        {
+            if(this.statusCache[index] == null)
+            {
+                this.statusCache[index] = new PositionStatus();
+            }
+            this.statusCache[index].legalMoves = null;
+            this.statusCache[index].inCheck = PositionStatus.UNKNOWN;
+        }
+
+        //get the Zobrist hash of the current position (maintained incrementally)
+        public long getPositionHash()
+        {
+            return this.positionHashes[this.positionCount - 1];
+        }
+
+        /**
+         * Counts how often the current position has occurred in this game, including now.
+         * Only positions since the last capture or pawn move can repeat, so the scan
+         * stops there and only looks at positions with the same side to move.
+         *
+         * @return Number of occurrences (1 if the position is new)
+         */
+        public int getRepetitionCount()
+        {
+            long current = this.getPositionHash();
+            int oldest = Math.max(0, this.positionCount - 1 - this.halfmoveClock);
+            int count = 1;
+            for(int i = this.positionCount - 3; i >= oldest; i -= 2)
+            {
+                if(this.positionHashes[i] == current)
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        //get the material signature of the current position (maintained incrementally)
+        public int getMaterialSignature()
+        {
+            return this.materialSignatures[this.positionCount - 1];
+        }
+
+        //true if neither side can ever mate, whatever is played
+        public boolean isInsufficientMaterial()
+        {
+            return MaterialSignature.classify(this.getMaterialSignature()) == MaterialSignature.Outcome.DRAWN;
+        }
+
+        //true if a player may claim a draw under the fifty-move rule
+        public boolean isFiftyMoveRuleReached()
+        {
+            return this.halfmoveClock >= 100;
+        }
+
+        // declare draws that need no claim: insufficient material, threefold and fivefold repetition, 75-move rule
+        private void checkAutomaticDraw() throws InvalidSquareException
+        {
+            if(this.gameResult.isGameOver())
+            {
+                return;
+            }
+            String reason = null;
+            int repetitions = this.getRepetitionCount();
+            if(this.isInsufficientMaterial())
+            {
+                reason = "Draw by insufficient material";
+            }
+            else if(repetitions >= 5)
+            {
+                reason = "Draw by fivefold repetition";
+            }
+            else if(repetitions >= 3)
+            {
+                reason = "Draw by threefold repetition";
+            }
+            else if(this.halfmoveClock >= 150)
+            {
+                // a mate delivered on the 150th ply still counts
+                try
+                {
+                    if(!this.isCheckmate())
+                    {
+                        reason = "Draw by the 75-move rule";
+                    }
+                }
+                catch(GameStateException e)
+                {
+                    reason = "Draw by the 75-move rule";
+                }
+            }
+            if(reason != null)
+            {
+                this.gameResult.setResult(GameResult.ResultType.DRAW, reason);
+                this.automaticResultPly = this.moveLog.size();
+            }
+        }
+
+        //get the current position in Forsyth-Edwards Notation
+        public String toFen()
+        {
+            StringBuilder sb = new StringBuilder(90);
+            sb.append(this.board.toFenPlacement());
+            sb.append(this.currentTurn == PieceColor.WHITE ? " w " : " b ");
+            int castling = this.board.getCastlingRights();
+            if(castling == 0)
+            {
+                sb.append('-');
+            }
+            else
+            {
+                if((castling & 1) != 0) sb.append('K');
+                if((castling & 2) != 0) sb.append('Q');
+                if((castling & 4) != 0) sb.append('k');
+                if((castling & 8) != 0) sb.append('q');
+            }
+            Square epSquare = this.getEnPassantTarget();
+            sb.append(' ').append(epSquare == null ? "-" : epSquare.getAlgebraicNotation());
+            sb.append(' ').append(this.halfmoveClock);
+            sb.append(' ').append(this.fullmoveNumber);
+            return sb.toString();
+        }
         
         public void setCurrentTurn(String currentTurn) throws InvalidColorException
         {   
@@ -55,29 +448,60 @@
             {
                 throw new InvalidColorException(currentTurn);
             }
-            this.currentTurn = currentTurn;
+            PieceColor side = PieceColor.of(currentTurn);
+            if(side != this.currentTurn)
+            {
+                this.currentTurn = side;
+                this.positionHashes[this.positionCount - 1] = Zobrist.hash(this);
+                this.resetStatus(this.positionCount - 1);
+            }
         }
         //execute a move by changing the board state and saving the move in movelog
         public void makeMove(Move move) throws InvalidMoveException, InvalidSquareException
         {
-            if(!this.currentTurn.equals(move.getPieceMoved().getColor()))
+            if(this.currentTurn != move.getPieceMoved().getPieceColor())
             {
-                throw new WrongTurnException(this.currentTurn, move.getPieceMoved().getColor());
+                throw new WrongTurnException(this.currentTurn.getName(), move.getPieceMoved().getColor());
             }
             Piece pieceMoved = move.getPieceMoved();
             Square start = move.getStartSquare();
             Square end = move.getEndSquare();
+            long hash = this.getPositionHash()
+                ^ Zobrist.castlingKey(this.board.getCastlingRights())
+                ^ Zobrist.enPassantKey(Zobrist.enPassantFile(this));
+            int material = this.getMaterialSignature();
+            move.setPreviousHalfmoveClock(this.halfmoveClock);
+            move.setPreviousCastlingRights(this.board.getCastlingRights());
+            boolean resetsClock = pieceMoved.getKind() == PieceKind.PAWN || move.getPieceCaptured() != null;
+            this.halfmoveClock = resetsClock ? 0 : this.halfmoveClock + 1;
+            if(this.currentTurn == PieceColor.BLACK)
+            {
+                this.fullmoveNumber++;
+            }
             end.setPiece(pieceMoved);
             start.removePiece();
-            pieceMoved.setMoved(true);
+            this.board.clearCastlingRights(start.getRow(), start.getCol());
+            this.board.clearCastlingRights(end.getRow(), end.getCol());
+            hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(pieceMoved), start.getRow(), start.getCol());
             if(move.getIsEnpassant()) // en passant move
             {
-                move.getEnPassantCapturingSquare().removePiece();
+                Square capturingSquare = move.getEnPassantCapturingSquare();
+                capturingSquare.removePiece();
+                hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(move.getPieceCaptured()), capturingSquare.getRow(), capturingSquare.getCol());
+                material -= MaterialSignature.delta(move.getPieceCaptured(), capturingSquare.getRow(), capturingSquare.getCol());
+            }
+            else if(move.getPieceCaptured() != null)
+            {
+                hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(move.getPieceCaptured()), end.getRow(), end.getCol());
+                material -= MaterialSignature.delta(move.getPieceCaptured(), end.getRow(), end.getCol());
             }
             if(move.getIsPawnPromotion())
             {
                 end.setPiece(move.getPawnPromotionPiece());
+                material += MaterialSignature.delta(move.getPawnPromotionPiece(), end.getRow(), end.getCol())
+                    - MaterialSignature.delta(pieceMoved, start.getRow(), start.getCol());
             }
+            hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(end.getPiece()), end.getRow(), end.getCol());
             // Handle castling - move the rook as well
             if(move.getKingSideCastle()) {
                 int row = start.getRow();
@@ -86,7 +510,7 @@
                 Piece rook = rookStart.getPiece();
                 rookEnd.setPiece(rook);
                 rookStart.removePiece();
-                rook.setMoved(true);
+                hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(rook), row, 7) ^ Zobrist.pieceKey(Zobrist.pieceIndex(rook), row, 5);
             }
             if(move.getQueenSideCastle()) {
                 int row = start.getRow();
@@ -95,10 +519,24 @@
                 Piece rook = rookStart.getPiece();
                 rookEnd.setPiece(rook);
                 rookStart.removePiece();
-                rook.setMoved(true);
+                hash ^= Zobrist.pieceKey(Zobrist.pieceIndex(rook), row, 0) ^ Zobrist.pieceKey(Zobrist.pieceIndex(rook), row, 3);
             }
-            this.currentTurn = this.currentTurn.equals("white") ? "black" : "white";
+            this.currentTurn = this.currentTurn.opposite();
             this.moveLog.add(move);
+            hash ^= Zobrist.sideToMoveKey()
+                ^ Zobrist.castlingKey(this.board.getCastlingRights())
+                ^ Zobrist.enPassantKey(Zobrist.enPassantFile(this));
+            if(this.positionCount == this.positionHashes.length)
+            {
+                this.positionHashes = java.util.Arrays.copyOf(this.positionHashes, this.positionCount * 2);
+                this.materialSignatures = java.util.Arrays.copyOf(this.materialSignatures, this.positionCount * 2);
+                this.statusCache = java.util.Arrays.copyOf(this.statusCache, this.positionCount * 2);
+            }
+            this.resetStatus(this.positionCount);
+            this.materialSignatures[this.positionCount] = material;
+            this.positionHashes[this.positionCount++] = hash;
+            this.checkAutomaticDraw();
+            EngineMetrics.count(EngineMetrics.Counter.MOVES_MADE);
         }
         //undo move by returning to the board last state and removing last move from movelog
         public void undoMove() throws GameStateException, InvalidSquareException
@@ -112,13 +550,25 @@
             Piece pieceCaptured = lastMove.getPieceCaptured();
             Square start = lastMove.getStartSquare();
             Square end = lastMove.getEndSquare();
+            this.halfmoveClock = lastMove.getPreviousHalfmoveClock();
+            this.board.setCastlingRights(lastMove.getPreviousCastlingRights());
+            if(pieceMoved.getPieceColor() == PieceColor.BLACK)
+            {
+                this.fullmoveNumber--;
+            }
+            this.positionCount--;
+            if(this.automaticResultPly > this.moveLog.size())
+            {
+                // the draw was declared by the move being undone
+                this.gameResult = new GameResult();
+                this.automaticResultPly = -1;
+            }
             if(lastMove.getIsEnpassant()) // undo en passant move
             {
                 start.setPiece(pieceMoved);
                 end.removePiece();     
                 lastMove.getEnPassantCapturingSquare().setPiece(pieceCaptured);
-                pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
-                this.currentTurn = this.currentTurn.equals("white") ? "black" : "white";
+                this.currentTurn = this.currentTurn.opposite();
                 return;
             }
             // Handle undoing castling
@@ -126,7 +576,6 @@
                 int row = start.getRow();
                 start.setPiece(pieceMoved);
                 end.removePiece();
-                pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
                 
                 if(lastMove.getKingSideCastle()) {
                     Square rookEnd = this.board.getSquare(row, 5);
@@ -134,38 +583,37 @@
                     Piece rook = rookEnd.getPiece();
                     rookStart.setPiece(rook);
                     rookEnd.removePiece();
-                    rook.setMoved(false);
                 } else { // queenside castle
                     Square rookEnd = this.board.getSquare(row, 3);
                     Square rookStart = this.board.getSquare(row, 0);
                     Piece rook = rookEnd.getPiece();
                     rookStart.setPiece(rook);
                     rookEnd.removePiece();
-                    rook.setMoved(false);
                 }
                 
-                this.currentTurn = this.currentTurn.equals("white") ? "black" : "white";
+                this.currentTurn = this.currentTurn.opposite();
                 return;
             }
             // pawn promotion is the same undo move as normal move
             start.setPiece(pieceMoved);
             end.setPiece(pieceCaptured);
-            pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
-            this.currentTurn = this.currentTurn.equals("white") ? "black" : "white";
+            this.currentTurn = this.currentTurn.opposite();
         
         }
 
 
     // Find the king of the specified color
     public Square findKing(String color) throws InvalidSquareException, GameStateException {
+        return findKing(PieceColor.of(color));
+    }
+
+    public Square findKing(PieceColor color) throws InvalidSquareException, GameStateException {
+        Piece king = Piece.of(color, PieceKind.KING);
+        Square[][] squares = this.board.getSquares();
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                Square square = this.board.getSquare(row, col);
-                if (square.hasPiece()) {
-                    Piece piece = square.getPiece();
-                    if (piece.getType().equals("King") && piece.getColor().equals(color)) {
-                        return square;
-                    }
+                if (squares[row][col].getPiece() == king) {
+                    return squares[row][col];
                 }
             }
         }
@@ -174,8 +622,12 @@
     
     // Check if a square is under attack by the specified color
     public boolean isSquareUnderAttack(int row, int col, String byColor) throws InvalidSquareException, GameStateException {
+        return isSquareUnderAttack(row, col, PieceColor.of(byColor));
+    }
+
+    public boolean isSquareUnderAttack(int row, int col, PieceColor byColor) throws InvalidSquareException, GameStateException {
         // Save current turn
-        String originalTurn = this.currentTurn;
+        PieceColor originalTurn = this.currentTurn;
         
         // Temporarily switch turn to get opponent's moves
         this.currentTurn = byColor;
@@ -196,25 +648,59 @@
         return false;
     }
     
-    // Check if the king of the specified color is in check
+    // Check if the king of the specified color is in check (cached for the side to move)
     public boolean isInCheck(String color) throws InvalidSquareException, GameStateException {
+        return isInCheck(PieceColor.of(color));
+    }
+
+    public boolean isInCheck(PieceColor color) throws InvalidSquareException, GameStateException {
+        if (color != this.currentTurn) {
+            return computeInCheck(color);
+        }
+        PositionStatus status = this.statusCache[this.positionCount - 1];
+        if (status.inCheck == PositionStatus.UNKNOWN) {
+            status.inCheck = computeInCheck(color) ? PositionStatus.YES : PositionStatus.NO;
+        }
+        return status.inCheck == PositionStatus.YES;
+    }
+
+    // uncached check test, also valid while a move is being tried out
+    private boolean computeInCheck(PieceColor color) throws InvalidSquareException, GameStateException {
         Square kingSquare = findKing(color);
-        String opponentColor = color.equals("white") ? "black" : "white";
-        return isSquareUnderAttack(kingSquare.getRow(), kingSquare.getCol(), opponentColor);
+        return isSquareUnderAttack(kingSquare.getRow(), kingSquare.getCol(), color.opposite());
     }
-    
-    //filter those move if the put the king in check or not
+
+    /**
+     * Get all legal moves of the side to move. The list is generated at most once
+     * per position and shared until the position changes, so it cannot be modified.
+     *
+     * @return Unmodifiable list of legal moves
+     */
     public List<Move> getAllLegalMoves() throws InvalidSquareException, GameStateException
     {
+        PositionStatus status = this.statusCache[this.positionCount - 1];
+        if (status.legalMoves == null) {
+            status.legalMoves = Collections.unmodifiableList(generateLegalMoves());
+        }
+        return status.legalMoves;
+    }
+
+    //filter those move if the put the king in check or not
+    private List<Move> generateLegalMoves() throws InvalidSquareException, GameStateException
+    {
+        boolean timed = EngineMetrics.isEnabled();
+        long startNanos = timed ? System.nanoTime() : 0;
+        EngineMetrics.MoveGenerationEvent generation = EngineMetrics.startMoveGeneration();
         List<Move> possibleMoves = this.getAllPossibleMoves();
         List<Move> legalMoves = new ArrayList<>();
+        EngineMetrics.LegalityCheckEvent check = EngineMetrics.startLegalityCheck();
         
         // Test each move to see if it leaves the king in check
         for (Move move : possibleMoves) {
             // Special handling for castling - check that king doesn't castle through check
             if (move.getKingSideCastle() || move.getQueenSideCastle()) {
-                String kingColor = move.getPieceMoved().getColor();
-                String opponentColor = kingColor.equals("white") ? "black" : "white";
+                PieceColor kingColor = move.getPieceMoved().getPieceColor();
+                PieceColor opponentColor = kingColor.opposite();
                 int row = move.getStartSquare().getRow();
                 int startCol = move.getStartSquare().getCol();
                 
@@ -247,7 +733,7 @@
                 makeMoveTesting(move);
                 
                 // Check if this leaves our king in check
-                if (!isInCheck(move.getPieceMoved().getColor())) {
+                if (!computeInCheck(move.getPieceMoved().getPieceColor())) {
                     legalMoves.add(move);
                 }
                 
@@ -265,7 +751,24 @@
                 }
             }
         }
-        
+
+        int rejected = possibleMoves.size() - legalMoves.size();
+        if (check != null) {
+            check.checked = possibleMoves.size();
+            check.rejected = rejected;
+            check.commit();
+        }
+        if (generation != null) {
+            generation.pseudoLegalMoves = possibleMoves.size();
+            generation.legalMoves = legalMoves.size();
+            generation.commit();
+        }
+        EngineMetrics.count(EngineMetrics.Counter.POSITIONS_GENERATED);
+        EngineMetrics.count(EngineMetrics.Counter.MOVES_CHECKED, possibleMoves.size());
+        EngineMetrics.count(EngineMetrics.Counter.MOVES_REJECTED, rejected);
+        if (timed) {
+            EngineMetrics.recordMoveGeneration(System.nanoTime() - startNanos);
+        }
         return legalMoves;
     }
     
@@ -276,9 +779,9 @@
         Square end = move.getEndSquare();
         end.setPiece(pieceMoved);
         start.removePiece();
-        boolean hadMoved = pieceMoved.hasMoved();
-        pieceMoved.setMoved(true);
-        move.setHadPieceBeenMoved(hadMoved);
+        move.setPreviousCastlingRights(this.board.getCastlingRights());
+        this.board.clearCastlingRights(start.getRow(), start.getCol());
+        this.board.clearCastlingRights(end.getRow(), end.getCol());
         
         if(move.getIsEnpassant()) {
             move.getEnPassantCapturingSquare().removePiece();
@@ -293,7 +796,6 @@
             Piece rook = rookStart.getPiece();
             rookEnd.setPiece(rook);
             rookStart.removePiece();
-            rook.setMoved(true);
         }
         if(move.getQueenSideCastle()) {
             int row = start.getRow();
@@ -302,7 +804,6 @@
             Piece rook = rookStart.getPiece();
             rookEnd.setPiece(rook);
             rookStart.removePiece();
-            rook.setMoved(true);
         }
         
         this.moveLog.add(move);
@@ -319,12 +820,12 @@
         Piece pieceCaptured = lastMove.getPieceCaptured();
         Square start = lastMove.getStartSquare();
         Square end = lastMove.getEndSquare();
+        this.board.setCastlingRights(lastMove.getPreviousCastlingRights());
         
         if(lastMove.getIsEnpassant()) {
             start.setPiece(pieceMoved);
             end.removePiece();
             lastMove.getEnPassantCapturingSquare().setPiece(pieceCaptured);
-            pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
             return;
         }
         
@@ -332,7 +833,6 @@
             int row = start.getRow();
             start.setPiece(pieceMoved);
             end.removePiece();
-            pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
             
             if(lastMove.getKingSideCastle()) {
                 Square rookEnd = this.board.getSquare(row, 5);
@@ -340,76 +840,282 @@
                 Piece rook = rookEnd.getPiece();
                 rookStart.setPiece(rook);
                 rookEnd.removePiece();
-                rook.setMoved(false);
             } else {
                 Square rookEnd = this.board.getSquare(row, 3);
                 Square rookStart = this.board.getSquare(row, 0);
                 Piece rook = rookEnd.getPiece();
                 rookStart.setPiece(rook);
                 rookEnd.removePiece();
-                rook.setMoved(false);
             }
             return;
         }
         
         start.setPiece(pieceMoved);
         end.setPiece(pieceCaptured);
-        pieceMoved.setMoved(lastMove.getHadPieceBeenMoved());
     }
     
     // Check if the current player is in checkmate
     public boolean isCheckmate() throws InvalidSquareException, GameStateException {
         return getAllLegalMoves().isEmpty() && isInCheck(this.currentTurn);
     }
+
+    /**
+     * Finds the legal move given in coordinate notation, as used by UCI
+     * (e.g., "e2e4", "e7e8q"; castling is the king's move, "e1g1").
+     *
+     * @param coordinate The move
+     * @return The legal move, or null if no legal move matches
+     */
+    public Move findMove(String coordinate) throws InvalidSquareException, GameStateException {
+        if (coordinate.length() != 4 && coordinate.length() != 5) {
+            return null;
+        }
+        int from = Square.indexOf(coordinate.charAt(0), coordinate.charAt(1));
+        int to = Square.indexOf(coordinate.charAt(2), coordinate.charAt(3));
+        char promotion = coordinate.length() == 5 ? coordinate.charAt(4) : 0;
+        for (Move move : getAllLegalMoves()) {
+            if (move.getStartSquare().getIndex() == from && move.getEndSquare().getIndex() == to) {
+                char letter = move.getIsPawnPromotion() ? Character.toLowerCase(move.getPawnPromotionPiece().getFenChar()) : 0;
+                if (letter == promotion) {
+                    return move;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Check if the side to move has at least one legal move
+    public boolean hasLegalMoves() throws InvalidSquareException, GameStateException {
+        return !getAllLegalMoves().isEmpty();
+    }
     
     // Check if the game is a stalemate
     public boolean isStalemate() throws InvalidSquareException, GameStateException {
         return getAllLegalMoves().isEmpty() && !isInCheck(this.currentTurn);
     }
 
+    private static final int SNAPSHOT_MAGIC = 0x4D4C534E; // "MLSN"
+    private static final byte SNAPSHOT_VERSION = 2;
+
+    /**
+     * Encodes the complete game state: pieces, castling rights, side to move,
+     * clocks, move log, result, pending draw offer and position history. Pieces
+     * are shared instances, so they are written as colour and kind and a
+     * restored engine can undo moves exactly like the original.
+     *
+     * @return The snapshot bytes
+     */
+    public byte[] toSnapshot() {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream(192 + 24 * this.moveLog.size());
+        java.io.DataOutputStream out = new java.io.DataOutputStream(bytes);
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeByte(SNAPSHOT_VERSION);
+            for (int square = 0; square < 64; square++) {
+                out.writeByte(snapshotCode(this.board.getSquare(square).getPiece()));
+            }
+            out.writeByte(this.board.getCastlingRights());
+            out.writeBoolean(this.currentTurn == PieceColor.WHITE);
+            out.writeInt(this.halfmoveClock);
+            out.writeInt(this.fullmoveNumber);
+            out.writeByte(snapshotSquare(this.startEnPassantSquare));
+            out.writeByte(this.drawRequestedBy == null ? 0 : this.drawRequestedBy.equals("white") ? 1 : 2);
+            out.writeByte(this.gameResult.getResultType().ordinal());
+            out.writeUTF(this.gameResult.getReason());
+            out.writeInt(this.automaticResultPly);
+
+            out.writeInt(this.moveLog.size());
+            for (Move move : this.moveLog) {
+                out.writeByte(snapshotSquare(move.getStartSquare()));
+                out.writeByte(snapshotSquare(move.getEndSquare()));
+                out.writeByte(snapshotCode(move.getPieceMoved()));
+                out.writeByte(snapshotCode(move.getPieceCaptured()));
+                out.writeByte(snapshotCode(move.getPawnPromotionPiece()));
+                out.writeByte(snapshotSquare(move.getEnPassantCapturingSquare()));
+                out.writeByte(move.getPreviousCastlingRights() | (move.getIsEnpassant() ? 16 : 0)
+                    | (move.getKingSideCastle() ? 32 : 0) | (move.getQueenSideCastle() ? 64 : 0));
+                out.writeInt(move.getPreviousHalfmoveClock());
+            }
+
+            for (int i = 0; i < this.positionCount; i++) {
+                out.writeLong(this.positionHashes[i]);
+                out.writeInt(this.materialSignatures[i]);
+            }
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the game with a snapshot from {@link #toSnapshot()}. Nothing is
+     * replayed: pieces, move log and position history are read back as stored.
+     * The whole snapshot is decoded before the game is changed, so a corrupt one
+     * leaves it as it was.
+     *
+     * @param snapshot The snapshot bytes
+     * @throws GameStateException if the bytes are not a valid snapshot
+     */
+    public void restoreSnapshot(byte[] snapshot) throws GameStateException {
+        // decode everything first, so a corrupt snapshot leaves the game as it was
+        Piece[] pieces = new Piece[64];
+        int castlingRights;
+        PieceColor turn;
+        int halfmoves;
+        int fullmoves;
+        Square enPassantSquare;
+        String drawRequest;
+        GameResult result;
+        int resultPly;
+        List<Move> moves;
+        long[] hashes;
+        int[] signatures;
+        java.io.DataInputStream in = new java.io.DataInputStream(new java.io.ByteArrayInputStream(snapshot));
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new GameStateException("Not a game snapshot (bad header)");
+            }
+            int version = in.readByte();
+            if (version != SNAPSHOT_VERSION) {
+                throw new GameStateException("Unsupported snapshot version " + version);
+            }
+            for (int square = 0; square < 64; square++) {
+                pieces[square] = snapshotPiece(in.readUnsignedByte());
+            }
+            castlingRights = in.readUnsignedByte();
+            turn = in.readBoolean() ? PieceColor.WHITE : PieceColor.BLACK;
+            halfmoves = in.readInt();
+            fullmoves = in.readInt();
+            enPassantSquare = snapshotSquare(in.readByte());
+            int drawRequestCode = in.readUnsignedByte();
+            drawRequest = drawRequestCode == 0 ? null : drawRequestCode == 1 ? "white" : "black";
+            GameResult.ResultType[] types = GameResult.ResultType.values();
+            int type = in.readUnsignedByte();
+            if (type >= types.length) {
+                throw new GameStateException("Corrupt snapshot: unknown result " + type);
+            }
+            result = new GameResult(types[type], in.readUTF());
+            resultPly = in.readInt();
+
+            int moveCount = in.readInt();
+            if (moveCount < 0 || moveCount > snapshot.length) {
+                throw new GameStateException("Corrupt snapshot: bad move count " + moveCount);
+            }
+            moves = new ArrayList<>(moveCount);
+            for (int i = 0; i < moveCount; i++) {
+                Square start = snapshotSquare(in.readByte());
+                Square end = snapshotSquare(in.readByte());
+                Piece moved = snapshotPiece(in.readUnsignedByte());
+                Piece captured = snapshotPiece(in.readUnsignedByte());
+                Piece promotion = snapshotPiece(in.readUnsignedByte());
+                Square enPassantCapture = snapshotSquare(in.readByte());
+                int flags = in.readUnsignedByte();
+                if (start == null || end == null || moved == null) {
+                    throw new GameStateException("Corrupt snapshot: incomplete move " + (i + 1));
+                }
+                moves.add(new Move(start, end, moved, captured, flags & 15, (flags & 16) != 0,
+                    enPassantCapture, promotion, (flags & 32) != 0, (flags & 64) != 0, in.readInt()));
+            }
+
+            hashes = new long[moveCount + 1];
+            signatures = new int[moveCount + 1];
+            for (int i = 0; i <= moveCount; i++) {
+                hashes[i] = in.readLong();
+                signatures[i] = in.readInt();
+            }
+        } catch (java.io.IOException e) {
+            throw new GameStateException("Corrupt snapshot: " + e, e);
+        }
+
+        for (int square = 0; square < 64; square++) {
+            if (pieces[square] == null) {
+                this.board.getSquare(square).removePiece();
+            } else {
+                this.board.getSquare(square).setPiece(pieces[square]);
+            }
+        }
+        this.board.setCastlingRights(castlingRights);
+        this.currentTurn = turn;
+        this.halfmoveClock = halfmoves;
+        this.fullmoveNumber = fullmoves;
+        this.startEnPassantSquare = enPassantSquare;
+        this.drawRequestedBy = drawRequest;
+        this.gameResult = result;
+        this.automaticResultPly = resultPly;
+        this.moveLog.clear();
+        this.moveLog.addAll(moves);
+
+        int count = hashes.length;
+        if (this.positionHashes.length < count) {
+            int capacity = Integer.highestOneBit(count) * 2;
+            this.positionHashes = new long[capacity];
+            this.materialSignatures = new int[capacity];
+            this.statusCache = java.util.Arrays.copyOf(this.statusCache, capacity);
+        }
+        System.arraycopy(hashes, 0, this.positionHashes, 0, count);
+        System.arraycopy(signatures, 0, this.materialSignatures, 0, count);
+        for (int i = 0; i < count; i++) {
+            this.resetStatus(i);
+        }
+        this.positionCount = count;
+        this.checkLoadedPosition();
+    }
+
+    /**
+     * Creates an engine from a snapshot.
+     *
+     * @param snapshot The snapshot bytes from {@link #toSnapshot()}
+     * @return The restored engine
+     * @throws GameStateException if the bytes are not a valid snapshot
+     */
+    public static ChessEngine fromSnapshot(byte[] snapshot) throws GameStateException {
+        ChessEngine engine = new ChessEngine();
+        engine.restoreSnapshot(snapshot);
+        return engine;
+    }
+
+    // 0 for no piece, else 1 + kind + 6 for black
+    private static int snapshotCode(Piece piece) {
+        return piece == null ? 0 : 1 + piece.getKind().ordinal() + 6 * piece.getPieceColor().ordinal();
+    }
+
+    private static Piece snapshotPiece(int code) throws GameStateException {
+        if (code > 12) {
+            throw new GameStateException("Corrupt snapshot: unknown piece " + code);
+        }
+        return code == 0 ? null : Piece.of(code > 6 ? PieceColor.BLACK : PieceColor.WHITE, PieceKind.of((code - 1) % 6));
+    }
+
+    private static int snapshotSquare(Square square) {
+        return square == null ? -1 : square.getIndex();
+    }
+
+    private Square snapshotSquare(int square) throws GameStateException {
+        if (square < -1 || square > 63) {
+            throw new GameStateException("Corrupt snapshot: bad square " + square);
+        }
+        return square < 0 ? null : this.board.getSquare(square);
+    }
+
         //getting all moves that follow the basic rules of chess (how every piece move) + pawn promotion + en passant rules
 
         public List<Move> getAllPossibleMoves() throws InvalidSquareException
         {
             List<Move> possibleMoves = new ArrayList<>();
-            String cols = "abcdefgh";
-            String rows = "87654321";
-            for(int r = 0; r < rows.length(); r++) 
+            for(int index = 0; index < 64; index++)
             {
-                for(int c = 0; c < cols.length(); c++) 
+                Square currentSquare = this.board.getSquare(index);
+                Piece currentPiece = currentSquare.getPiece();
+                if(currentPiece != null && currentPiece.getPieceColor() == this.currentTurn)
                 {
-                    String squareName = String.valueOf(cols.charAt(c)) + String.valueOf(rows.charAt(r));
-                    Square currentSquare = this.board.getSquare(squareName);
-                    Piece currentPiece = currentSquare.getPiece();
-                    if(currentPiece != null)
+                    switch(currentPiece.getKind())
                     {
-                        if(currentPiece.getColor().equals(this.currentTurn))
-                        {
-                            if(currentPiece.getType().equals("Pawn"))
-                            {
-                                this.getPawnMoves(currentSquare, this.board, possibleMoves);
-                            }
-                            if(currentPiece.getType().equals("Rook"))
-                            {
-                                this.getRookMoves(currentSquare, this.board, possibleMoves);
-                            }
-                            if(currentPiece.getType().equals("Bishop"))
-                            {
-                                this.getBishopMoves(currentSquare, this.board, possibleMoves);
-                            }
-                            if(currentPiece.getType().equals("Queen"))
-                            {
-                                this.getQueenMoves(currentSquare, this.board, possibleMoves);
-                            }
-                            if(currentPiece.getType().equals("Knight"))
-                            {
-                                this.getKnightMoves(currentSquare, this.board, possibleMoves);
-                            }
-                            if(currentPiece.getType().equals("King"))
-                            {
-                                this.getKingMoves(currentSquare, this.board, possibleMoves);
-                            }
-                        }
+                        case PAWN: this.getPawnMoves(currentSquare, this.board, possibleMoves); break;
+                        case KNIGHT: this.getKnightMoves(currentSquare, this.board, possibleMoves); break;
+                        case BISHOP: this.getBishopMoves(currentSquare, this.board, possibleMoves); break;
+                        case ROOK: this.getRookMoves(currentSquare, this.board, possibleMoves); break;
+                        case QUEEN: this.getQueenMoves(currentSquare, this.board, possibleMoves); break;
+                        default: this.getKingMoves(currentSquare, this.board, possibleMoves); break;
                     }
                 }
             }
@@ -450,45 +1156,23 @@
                     if(targetPiece == null)
                     {
                         //en passant 
-                        if(!this.moveLog.isEmpty()) 
+                        if(targetSquare == this.getEnPassantTarget())
                         {
-                            Move lastMove = this.moveLog.get(this.moveLog.size() - 1);
-                            if(lastMove.getPieceMoved().getType().equals("Pawn"))
+                            Square capturedSquare = board.getSquare(startSquare.getRow(), newCol);
+                            Piece capturedPiece = capturedSquare.getPiece();
+                            if(capturedPiece == Piece.of(pawn.getPieceColor().opposite(), PieceKind.PAWN))
                             {
-                                int pawnRow = startSquare.getRow();
-                                int pawnCol = startSquare.getCol();
-                                int lastStartRow = lastMove.getStartSquare().getRow();
-                                int lastEndRow = lastMove.getEndSquare().getRow();
-                                int lastEndCol = lastMove.getEndSquare().getCol();
-
-                                if(Math.abs(lastStartRow - lastEndRow) == 2) 
-                                {
-                                    if(lastEndRow == pawnRow) 
-                                    {
-                                        if(Math.abs(lastEndCol - pawnCol) == 1) 
-                                        {
-                                            int direction = pawn.getColor().equals("white") ? -1 : 1;
-                                            int epRow = pawnRow + direction;
-                                            int epCol = lastEndCol; 
-                                            Square epSquare = board.getSquare(epRow, epCol);
-                                            if(epSquare.getPiece() == null) 
-                                            {
-                                                Move enPassantMove = new Move(startSquare, epSquare);
-                                                enPassantMove.setEnpassant();
-                                                enPassantMove.setPieceCaptured(lastMove.getPieceMoved());
-                                                enPassantMove.setEnPassantCapturingSquare(lastMove.getEndSquare());
-                                                possibleMoves.add(enPassantMove);
-
-                                            }
-                                        }
-                                    }
-                                }
+                                Move enPassantMove = new Move(startSquare, targetSquare);
+                                enPassantMove.setEnpassant();
+                                enPassantMove.setPieceCaptured(capturedPiece);
+                                enPassantMove.setEnPassantCapturingSquare(capturedSquare);
+                                possibleMoves.add(enPassantMove);
                             }
                         }
                         continue;
                     }
 
-                    if(!(targetPiece.getColor().equals(pawn.getColor())))
+                    if(targetPiece.getPieceColor() != pawn.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                         moveAdded = true;
@@ -501,13 +1185,14 @@
                     if(moveRow == 0 || moveRow == 7)
                     {
                         lastMove.setPawnPromotion();
-                        lastMove.setPawnPromotionPiece(new Queen(lastMove.getPieceMoved().getColor()));
+                        PieceColor color = pawn.getPieceColor();
+                        lastMove.setPawnPromotionPiece(Piece.of(color, PieceKind.QUEEN));
                         Move pawnToRook = new Move(lastMove);
-                        pawnToRook.setPawnPromotionPiece(new Rook(lastMove.getPieceMoved().getColor()));
+                        pawnToRook.setPawnPromotionPiece(Piece.of(color, PieceKind.ROOK));
                         Move pawnToBishop = new Move(lastMove);
-                        pawnToBishop.setPawnPromotionPiece(new Bishop(lastMove.getPieceMoved().getColor()));
+                        pawnToBishop.setPawnPromotionPiece(Piece.of(color, PieceKind.BISHOP));
                         Move pawnToKnight = new Move(lastMove);
-                        pawnToKnight.setPawnPromotionPiece(new Knight(lastMove.getPieceMoved().getColor()));
+                        pawnToKnight.setPawnPromotionPiece(Piece.of(color, PieceKind.KNIGHT));
                         possibleMoves.add(pawnToRook);
                         possibleMoves.add(pawnToBishop);
                         possibleMoves.add(pawnToKnight);
@@ -548,7 +1233,7 @@
                 }
                 else
                 {
-                    if(!targetPiece.getColor().equals(rook.getColor()))
+                    if(targetPiece.getPieceColor() != rook.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                     }
@@ -586,7 +1271,7 @@
                 }
                 else
                 {
-                    if(!targetPiece.getColor().equals(queen.getColor()))
+                    if(targetPiece.getPieceColor() != queen.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                     }
@@ -624,7 +1309,7 @@
                 }
                 else
                 {
-                    if(!targetPiece.getColor().equals(bishop.getColor()))
+                    if(targetPiece.getPieceColor() != bishop.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                     }
@@ -650,7 +1335,7 @@
                 }
                 else
                 {
-                    if(!targetPiece.getColor().equals(knight.getColor()))
+                    if(targetPiece.getPieceColor() != knight.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                     }
@@ -674,7 +1359,7 @@
                 }
                 else
                 {
-                    if(!targetPiece.getColor().equals(king.getColor()))
+                    if(targetPiece.getPieceColor() != king.getPieceColor())
                     {
                         possibleMoves.add(new Move(startSquare, targetSquare));
                     }
@@ -684,16 +1369,15 @@
             // Castling
             // Note: We only check if path is clear here. Check detection (can't castle through check)
             // will be handled by getAllLegalMoves() which filters out moves that leave king in check
-            if (!king.hasMoved()) {
+            int rights = this.board.getCastlingRights() >> (king.isWhite() ? 0 : 2);
+            Piece ownRook = Piece.of(king.getPieceColor(), PieceKind.ROOK);
+            if ((rights & 3) != 0) {
                 int kingRow = startSquare.getRow();
                 int kingCol = startSquare.getCol();
                 
                 // Kingside castling
                 Square kingsideRookSquare = board.getSquare(kingRow, 7);
-                if (kingsideRookSquare.hasPiece() && 
-                    kingsideRookSquare.getPiece().getType().equals("Rook") &&
-                    kingsideRookSquare.getPiece().getColor().equals(king.getColor()) &&
-                    !kingsideRookSquare.getPiece().hasMoved()) {
+                if ((rights & 1) != 0 && kingsideRookSquare.getPiece() == ownRook) {
                     
                     // Check if squares between king and rook are empty
                     boolean pathClear = true;
@@ -713,10 +1397,7 @@
                 
                 // Queenside castling
                 Square queensideRookSquare = board.getSquare(kingRow, 0);
-                if (queensideRookSquare.hasPiece() && 
-                    queensideRookSquare.getPiece().getType().equals("Rook") &&
-                    queensideRookSquare.getPiece().getColor().equals(king.getColor()) &&
-                    !queensideRookSquare.getPiece().hasMoved()) {
+                if ((rights & 2) != 0 && queensideRookSquare.getPiece() == ownRook) {
                     
                     // Check if squares between king and rook are empty
                     boolean pathClear = true;
@@ -741,8 +1422,8 @@
      */
     public void resign()
     {
-        String winner = this.currentTurn.equals("white") ? "BLACK" : "WHITE";
-        GameResult.ResultType resultType = this.currentTurn.equals("white") ? 
+        String winner = this.currentTurn == PieceColor.WHITE ? "BLACK" : "WHITE";
+        GameResult.ResultType resultType = this.currentTurn == PieceColor.WHITE ? 
             GameResult.ResultType.BLACK_RESIGNED : GameResult.ResultType.WHITE_RESIGNED;
         
         this.gameResult.setResult(resultType, this.currentTurn + " resigned");
@@ -755,9 +1436,9 @@
     {
         if (this.drawRequestedBy == null) {
             // No draw request yet, set one
-            this.drawRequestedBy = this.currentTurn;
+            this.drawRequestedBy = this.currentTurn.getName();
             return false;
-        } else if (this.drawRequestedBy.equals(this.currentTurn)) {
+        } else if (this.drawRequestedBy.equals(this.currentTurn.getName())) {
             // Same player requesting again - ignore
             return false;
         } else {
@@ -776,7 +1457,7 @@
         if (this.drawRequestedBy == null) {
             throw new GameStateException("No draw request to accept");
         }
-        if (this.drawRequestedBy.equals(this.currentTurn)) {
+        if (this.drawRequestedBy.equals(this.currentTurn.getName())) {
             throw new GameStateException("You cannot accept your own draw request");
         }
         this.gameResult.setResult(GameResult.ResultType.DRAW, "Draw agreed by both players");
@@ -794,4 +1475,14 @@
         this.drawRequestedBy = null;
     }
 
+        // Per-position results that are expensive to compute; filled in on first use
+        private static class PositionStatus
+        {
+            static final byte UNKNOWN = 0;
+            static final byte NO = 1;
+            static final byte YES = 2;
+
+            List<Move> legalMoves;
+            byte inCheck;
+        }
     }
@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import exceptions.*;
+
+/**
+ * One record of an Extended Position Description (EPD) file: a position
+ * (the first four FEN fields) followed by opcodes such as
+ * <pre>
+ *   r1b1k2r/ppppnppp/2n2q2/2b5/3NP3/2P1B3/PP3PPP/RN1QKB1R w KQkq - bm Nb5; id "WAC.xyz";
+ * </pre>
+ */
+public class EPDPosition {
+
+    private final String fen;
+    private final Map<String, List<String>> operations;
+
+    private EPDPosition(String fen, Map<String, List<String>> operations) {
+        this.fen = fen;
+        this.operations = operations;
+    }
+
+    /**
+     * Parses one EPD line.
+     *
+     * @param line The EPD record
+     * @return The parsed record
+     * @throws FENParseException if the line does not start with four position fields
+     */
+    public static EPDPosition parse(String line) throws FENParseException {
+        String trimmed = line.trim();
+        int fieldEnd = 0;
+        for (int field = 0; field < 4; field++) {
+            while (fieldEnd < trimmed.length() && trimmed.charAt(fieldEnd) == ' ') fieldEnd++;
+            if (fieldEnd == trimmed.length()) {
+                throw new FENParseException(line, "EPD record needs four position fields");
+            }
+            while (fieldEnd < trimmed.length() && trimmed.charAt(fieldEnd) != ' ') fieldEnd++;
+        }
+        String position = trimmed.substring(0, fieldEnd);
+
+        Map<String, List<String>> operations = new LinkedHashMap<>();
+        for (String operation : splitOperations(trimmed.substring(fieldEnd))) {
+            List<String> tokens = tokenize(operation);
+            if (tokens.isEmpty()) continue;
+            operations.put(tokens.get(0), new ArrayList<>(tokens.subList(1, tokens.size())));
+        }
+
+        // EPD may carry the move counters as hmvc/fmvn opcodes instead of FEN fields
+        String halfmoves = first(operations.get("hmvc"), "0");
+        String fullmoves = first(operations.get("fmvn"), "1");
+        return new EPDPosition(position + " " + halfmoves + " " + fullmoves, operations);
+    }
+
+    // Split at semicolons that are not inside a quoted string
+    private static List<String> splitOperations(String text) {
+        List<String> operations = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (c == ';' && !quoted) {
+                operations.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            operations.add(current.toString().trim());
+        }
+        return operations;
+    }
+
+    private static List<String> tokenize(String operation) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < operation.length()) {
+            char c = operation.charAt(i);
+            if (c == ' ') {
+                i++;
+            } else if (c == '"') {
+                int end = operation.indexOf('"', i + 1);
+                if (end < 0) end = operation.length();
+                tokens.add(operation.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int end = operation.indexOf(' ', i);
+                if (end < 0) end = operation.length();
+                tokens.add(operation.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static String first(List<String> values, String fallback) {
+        return values == null || values.isEmpty() ? fallback : values.get(0);
+    }
+
+    /**
+     * Get the position as a full FEN (move counters from hmvc/fmvn, or 0 and 1).
+     *
+     * @return The FEN
+     */
+    public String getFen() {
+        return this.fen;
+    }
+
+    /**
+     * Get the operands of an opcode.
+     *
+     * @param opcode The opcode (e.g., "bm", "am", "id")
+     * @return The operands, or an empty list if the opcode is absent
+     */
+    public List<String> getOperands(String opcode) {
+        List<String> operands = this.operations.get(opcode);
+        return operands == null ? new ArrayList<>() : operands;
+    }
+
+    public List<String> getBestMoves() {
+        return getOperands("bm");
+    }
+
+    public List<String> getAvoidMoves() {
+        return getOperands("am");
+    }
+
+    /**
+     * Get the record's id, or the FEN if it has none.
+     *
+     * @return The id
+     */
+    public String getId() {
+        return first(this.operations.get("id"), this.fen);
+    }
+}
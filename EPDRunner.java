@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import exceptions.*;
+
+/**
+ * Runs an EPD test suite: every position is set up on its own ChessEngine and
+ * searched with a per-position time and/or node limit, with positions solved
+ * concurrently on a fixed thread pool. A position counts as solved when the
+ * search's final move is one of its "bm" moves and none of its "am" moves.
+ *
+ * Usage: java EPDRunner suite.epd [threads] [milliseconds per position] [nodes per position]
+ */
+public class EPDRunner {
+
+    /**
+     * Outcome of one position.
+     */
+    public static class Result {
+        private final EPDPosition position;
+        private final String foundMove;
+        private final boolean solved;
+        private final long timeToSolutionMillis;
+        private final SearchResult search;
+        private final String error;
+
+        Result(EPDPosition position, String foundMove, boolean solved, long timeToSolutionMillis,
+               SearchResult search, String error) {
+            this.position = position;
+            this.foundMove = foundMove;
+            this.solved = solved;
+            this.timeToSolutionMillis = timeToSolutionMillis;
+            this.search = search;
+            this.error = error;
+        }
+
+        public EPDPosition getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Get the move the search settled on, in coordinate notation (e.g., "e2e4").
+         *
+         * @return The move, or null if none was found
+         */
+        public String getFoundMove() {
+            return this.foundMove;
+        }
+
+        public boolean isSolved() {
+            return this.solved;
+        }
+
+        /**
+         * Get the time after which the search's best move was correct and stayed correct.
+         *
+         * @return Milliseconds, or -1 if the position was not solved
+         */
+        public long getTimeToSolutionMillis() {
+            return this.timeToSolutionMillis;
+        }
+
+        public long getNodes() {
+            return this.search == null ? 0 : this.search.getNodes();
+        }
+
+        public long getElapsedMillis() {
+            return this.search == null ? 0 : this.search.getElapsedMillis();
+        }
+
+        public int getDepth() {
+            return this.search == null ? 0 : this.search.getDepth();
+        }
+
+        /**
+         * Get the reason the position could not be searched (bad FEN or bad bm/am move).
+         *
+         * @return The error, or null
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        @Override
+        public String toString() {
+            if (this.error != null) {
+                return this.position.getId() + ": ERROR " + this.error;
+            }
+            return String.format("%s: %s found %s (expected %s) depth %d nodes %d time %dms%s",
+                this.position.getId(), this.solved ? "SOLVED" : "failed", this.foundMove,
+                expectation(this.position), getDepth(), getNodes(), getElapsedMillis(),
+                this.solved ? " solved at " + this.timeToSolutionMillis + "ms" : "");
+        }
+    }
+
+    /**
+     * Summary of a suite run.
+     */
+    public static class Report {
+        private final List<Result> results;
+        private final long wallMillis;
+
+        Report(List<Result> results, long wallMillis) {
+            this.results = results;
+            this.wallMillis = wallMillis;
+        }
+
+        public List<Result> getResults() {
+            return this.results;
+        }
+
+        public int getSolvedCount() {
+            int solved = 0;
+            for (Result result : this.results) {
+                if (result.isSolved()) solved++;
+            }
+            return solved;
+        }
+
+        public double getSolveRate() {
+            return this.results.isEmpty() ? 0.0 : (double) getSolvedCount() / this.results.size();
+        }
+
+        public long getTotalNodes() {
+            long nodes = 0;
+            for (Result result : this.results) {
+                nodes += result.getNodes();
+            }
+            return nodes;
+        }
+
+        /**
+         * Get the mean time to solution over the solved positions.
+         *
+         * @return Milliseconds, or 0 if nothing was solved
+         */
+        public long getAverageTimeToSolutionMillis() {
+            long total = 0;
+            int solved = 0;
+            for (Result result : this.results) {
+                if (result.isSolved()) {
+                    total += result.getTimeToSolutionMillis();
+                    solved++;
+                }
+            }
+            return solved == 0 ? 0 : total / solved;
+        }
+
+        /**
+         * Get the aggregate search speed: all nodes of all threads over the wall-clock time.
+         *
+         * @return Nodes per second
+         */
+        public long getNodesPerSecond() {
+            return this.wallMillis == 0 ? 0 : getTotalNodes() * 1000 / this.wallMillis;
+        }
+
+        public long getWallMillis() {
+            return this.wallMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Solved %d/%d (%.1f%%), avg time to solution %dms, %d nodes in %dms (%d nps)",
+                getSolvedCount(), this.results.size(), 100.0 * getSolveRate(), getAverageTimeToSolutionMillis(),
+                getTotalNodes(), this.wallMillis, getNodesPerSecond());
+        }
+    }
+
+    private EPDRunner() {
+    }
+
+    /**
+     * Reads an EPD file. Blank lines and lines starting with '#' are skipped.
+     *
+     * @param filePath Path to the EPD file
+     * @return The records in file order
+     * @throws ChessFileException if the file cannot be read or a record is malformed
+     */
+    public static List<EPDPosition> readEPD(String filePath) throws ChessFileException {
+        List<EPDPosition> positions = new ArrayList<>();
+        try {
+            int lineNumber = 0;
+            for (String line : Files.readAllLines(Path.of(filePath))) {
+                lineNumber++;
+                if (line.isBlank() || line.trim().startsWith("#")) continue;
+                try {
+                    positions.add(EPDPosition.parse(line));
+                } catch (FENParseException e) {
+                    throw new ChessFileException(filePath + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(filePath, "read", e);
+        }
+        return positions;
+    }
+
+    /**
+     * Solves positions concurrently.
+     *
+     * @param positions The positions
+     * @param threads Size of the thread pool
+     * @param timeLimitMillis Time per position in milliseconds, or 0 for no limit
+     * @param nodeLimit Nodes per position, or 0 for no limit
+     * @return Results in input order, with aggregate statistics
+     */
+    public static Report run(List<EPDPosition> positions, int threads, long timeLimitMillis, long nodeLimit) {
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (EPDPosition position : positions) {
+            futures.add(pool.submit(() -> solve(position, timeLimitMillis, nodeLimit)));
+        }
+        List<Result> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new Result(positions.get(i), null, false, -1, null, String.valueOf(e.getCause())));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Report(results, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Solves a single position on a fresh engine.
+     *
+     * @param position The position
+     * @param timeLimitMillis Time limit in milliseconds, or 0 for no limit
+     * @param nodeLimit Node limit, or 0 for no limit
+     * @return The result
+     */
+    public static Result solve(EPDPosition position, long timeLimitMillis, long nodeLimit) {
+        ChessEngine engine;
+        List<Move> bestMoves;
+        List<Move> avoidMoves;
+        try {
+            engine = new ChessEngine(position.getFen());
+            bestMoves = parseMoves(engine, position.getBestMoves());
+            avoidMoves = parseMoves(engine, position.getAvoidMoves());
+        } catch (FENParseException | PGNParseException e) {
+            return new Result(position, null, false, -1, null, e.getMessage());
+        }
+
+        Search search = new Search(engine);
+        if (timeLimitMillis > 0) search.setTimeLimit(timeLimitMillis);
+        if (nodeLimit > 0) search.setNodeLimit(nodeLimit);
+        long[] solvedSince = {-1};
+        search.setIterationListener(iteration -> {
+            if (isCorrect(iteration.getBestMove(), bestMoves, avoidMoves)) {
+                if (solvedSince[0] < 0) solvedSince[0] = iteration.getElapsedMillis();
+            } else {
+                solvedSince[0] = -1;
+            }
+        });
+
+        SearchResult result;
+        try {
+            result = search.search();
+        } catch (GameStateException e) {
+            return new Result(position, null, false, -1, null, e.getMessage());
+        }
+        Move found = result.getBestMove();
+        boolean solved = isCorrect(found, bestMoves, avoidMoves);
+        return new Result(position, found == null ? null : found.toCoordinateNotation(), solved,
+            solved ? Math.max(0, solvedSince[0]) : -1, result, null);
+    }
+
+    private static List<Move> parseMoves(ChessEngine engine, List<String> sanMoves) throws PGNParseException {
+        AlgebraicNotationParser parser = new AlgebraicNotationParser(engine);
+        List<Move> moves = new ArrayList<>();
+        for (String san : sanMoves) {
+            Move move = parser.parseMove(san.replaceAll("[!?]+$", ""));
+            if (move == null) {
+                throw new PGNParseException(san, "No matching legal move found");
+            }
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    private static boolean isCorrect(Move move, List<Move> bestMoves, List<Move> avoidMoves) {
+        if (move == null || (bestMoves.isEmpty() && avoidMoves.isEmpty())) {
+            return false;
+        }
+        for (Move avoid : avoidMoves) {
+            if (Search.sameMove(move, avoid)) return false;
+        }
+        if (bestMoves.isEmpty()) {
+            return true;
+        }
+        for (Move best : bestMoves) {
+            if (Search.sameMove(move, best)) return true;
+        }
+        return false;
+    }
+
+    private static String expectation(EPDPosition position) {
+        String text = "";
+        if (!position.getBestMoves().isEmpty()) text += "bm " + String.join(" ", position.getBestMoves());
+        if (!position.getAvoidMoves().isEmpty()) text += (text.isEmpty() ? "" : ", ") + "am " + String.join(" ", position.getAvoidMoves());
+        return text;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java EPDRunner <suite.epd> [threads] [ms per position] [nodes per position]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        long nodes = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        try {
+            List<EPDPosition> positions = readEPD(args[0]);
+            System.out.println("Running " + positions.size() + " positions on " + threads + " threads...");
+            Report report = run(positions, threads, millis, nodes);
+            for (Result result : report.getResults()) {
+                System.out.println(result);
+            }
+            System.out.println(report);
+        } catch (ChessFileException e) {
+            System.out.println("File error: " + e.getMessage());
+        }
+    }
+}
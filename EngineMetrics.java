@@ -0,0 +1,271 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Instrumentation of move generation, SAN parsing and writing and game replay.
+ *
+ * Two independent switches keep the cost near zero when nobody is looking:
+ * <ul>
+ *   <li>The counters are only updated while {@link #setEnabled(boolean)} is on
+ *       (or the JVM was started with {@code -Dchess.metrics=true}). They are
+ *       {@link LongAdder}s, so engines on many threads do not contend.</li>
+ *   <li>The JDK Flight Recorder events ({@code chess.MoveGeneration},
+ *       {@code chess.LegalityCheck}, {@code chess.SanParse}, {@code chess.SanWrite},
+ *       {@code chess.GameReplay}) are only created while a recording has them
+ *       enabled, e.g. {@code java -XX:StartFlightRecording ...}.</li>
+ * </ul>
+ * When both are off, an instrumented call costs two field reads. While the
+ * counters are on, move generation is also timed into a {@link LatencyHistogram}.
+ * {@link #registerWith(MetricsRegistry)} exposes all of it for export.
+ */
+public final class EngineMetrics {
+
+    public static final String PROPERTY = "chess.metrics";
+
+    /**
+     * The counters, process wide.
+     */
+    public enum Counter {
+        MOVES_MADE("moves_made", "Moves made on an engine"),
+        POSITIONS_GENERATED("positions_generated", "Positions whose legal moves were generated"),
+        MOVES_CHECKED("moves_checked", "Pseudo-legal moves run through the legality filter"),
+        MOVES_REJECTED("moves_rejected", "Pseudo-legal moves rejected because they leave the king in check"),
+        SAN_PARSED("san_parsed", "SAN moves parsed"),
+        SAN_WRITTEN("san_written", "SAN moves written"),
+        PARSE_FAILURES("parse_failures", "SAN moves or FEN tags that could not be parsed"),
+        GAMES_REPLAYED("games_replayed", "PGN games replayed"),
+        GAMES_REJECTED("games_rejected", "PGN games that could not be replayed"),
+        GAMES_WRITTEN("games_written", "PGN games formatted");
+
+        private final String name;
+        private final String description;
+        private final LongAdder adder = new LongAdder();
+
+        Counter(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        /**
+         * Get the metric name, in lower case with underscores.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * Get the current value.
+         *
+         * @return The count since start or the last {@link EngineMetrics#reset()}
+         */
+        public long get() {
+            return this.adder.sum();
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY);
+    private static final LatencyHistogram MOVE_GENERATION_LATENCY = new LatencyHistogram();
+
+    private static final EventType MOVE_GENERATION = EventType.getEventType(MoveGenerationEvent.class);
+    private static final EventType LEGALITY_CHECK = EventType.getEventType(LegalityCheckEvent.class);
+    private static final EventType SAN_PARSE = EventType.getEventType(SanParseEvent.class);
+    private static final EventType SAN_WRITE = EventType.getEventType(SanWriteEvent.class);
+    private static final EventType GAME_REPLAY = EventType.getEventType(GameReplayEvent.class);
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * Turns the counters on or off. Flight Recorder events are controlled by
+     * the recording instead.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get all counters at once.
+     *
+     * @return Counter values in declaration order
+     */
+    public static Map<Counter, Long> snapshot() {
+        Map<Counter, Long> values = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            values.put(counter, counter.get());
+        }
+        return values;
+    }
+
+    /**
+     * Sets all counters and the latency histogram back to zero.
+     */
+    public static void reset() {
+        for (Counter counter : Counter.values()) {
+            counter.adder.reset();
+        }
+        MOVE_GENERATION_LATENCY.reset();
+    }
+
+    /**
+     * Get the time taken by legal move generation, recorded while the counters are on.
+     *
+     * @return Histogram of nanoseconds per position
+     */
+    public static LatencyHistogram getMoveGenerationLatency() {
+        return MOVE_GENERATION_LATENCY;
+    }
+
+    /**
+     * Registers every counter as "chess_&lt;name&gt;_total" and the move generation
+     * latency as "chess_move_generation_seconds". This does not turn the counters on.
+     *
+     * @param registry The registry
+     * @throws IllegalArgumentException if the names are already registered
+     */
+    public static void registerWith(MetricsRegistry registry) {
+        for (Counter counter : Counter.values()) {
+            registry.counter("chess_" + counter.getName() + "_total", counter.getDescription(), counter.adder::sum);
+        }
+        registry.histogram("chess_move_generation_seconds",
+            "Time to generate the legal moves of a position", MOVE_GENERATION_LATENCY);
+    }
+
+    static void count(Counter counter) {
+        if (enabled) {
+            counter.adder.increment();
+        }
+    }
+
+    static void count(Counter counter, long amount) {
+        if (enabled) {
+            counter.adder.add(amount);
+        }
+    }
+
+    static void recordMoveGeneration(long nanos) {
+        MOVE_GENERATION_LATENCY.recordNanos(nanos);
+    }
+
+    // Each start method returns a begun event, or null if no recording wants it
+
+    static MoveGenerationEvent startMoveGeneration() {
+        if (!MOVE_GENERATION.isEnabled()) {
+            return null;
+        }
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        return event;
+    }
+
+    static LegalityCheckEvent startLegalityCheck() {
+        if (!LEGALITY_CHECK.isEnabled()) {
+            return null;
+        }
+        LegalityCheckEvent event = new LegalityCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    static SanParseEvent startSanParse() {
+        if (!SAN_PARSE.isEnabled()) {
+            return null;
+        }
+        SanParseEvent event = new SanParseEvent();
+        event.begin();
+        return event;
+    }
+
+    static SanWriteEvent startSanWrite() {
+        if (!SAN_WRITE.isEnabled()) {
+            return null;
+        }
+        SanWriteEvent event = new SanWriteEvent();
+        event.begin();
+        return event;
+    }
+
+    static GameReplayEvent startGameReplay() {
+        if (!GAME_REPLAY.isEnabled()) {
+            return null;
+        }
+        GameReplayEvent event = new GameReplayEvent();
+        event.begin();
+        return event;
+    }
+
+    @Name("chess.MoveGeneration")
+    @Label("Move Generation")
+    @Category("Chess")
+    @Description("Generation of the legal moves of a position, including the legality check")
+    @StackTrace(false)
+    static final class MoveGenerationEvent extends Event {
+        @Label("Pseudo-legal Moves")
+        int pseudoLegalMoves;
+
+        @Label("Legal Moves")
+        int legalMoves;
+    }
+
+    @Name("chess.LegalityCheck")
+    @Label("Legality Check")
+    @Category("Chess")
+    @Description("Filtering of pseudo-legal moves that leave the king in check")
+    @StackTrace(false)
+    static final class LegalityCheckEvent extends Event {
+        @Label("Moves Checked")
+        int checked;
+
+        @Label("Moves Rejected")
+        int rejected;
+    }
+
+    @Name("chess.SanParse")
+    @Label("SAN Parse")
+    @Category("Chess")
+    @StackTrace(false)
+    static final class SanParseEvent extends Event {
+        @Label("SAN")
+        String san;
+
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("chess.SanWrite")
+    @Label("SAN Write")
+    @Category("Chess")
+    @StackTrace(false)
+    static final class SanWriteEvent extends Event {
+        @Label("SAN")
+        String san;
+    }
+
+    @Name("chess.GameReplay")
+    @Label("Game Replay")
+    @Category("Chess")
+    @Description("Replay of the moves of a PGN game")
+    @StackTrace(false)
+    static final class GameReplayEvent extends Event {
+        @Label("Plies")
+        int plies;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import exceptions.*;
+
+/**
+ * Lets the engine play its own moves in a game on the clock.
+ *
+ * Each call to {@link #playMove(long, long, int)} searches the current
+ * position with a {@link TimeManager} allocation and makes the chosen move. If
+ * pondering is on, the engine then keeps thinking on the opponent's time: it
+ * plays the reply it expects (the second move of its principal variation) on a
+ * copy of the game and searches that position in the background. When the
+ * opponent does play that move (a ponder hit) the running search is handed the
+ * clock and continues, so the work already done counts; otherwise it is stopped
+ * and a normal search starts, still profiting from the shared transposition table.
+ *
+ * The caller keeps making the opponent's moves on the engine as usual. Like
+ * {@link Search}, this is not meant to be used from several threads at once.
+ */
+public class EnginePlayer {
+
+    private final ChessEngine engine;
+    private final TranspositionTable table;
+    private final ExecutorService ponderThread;
+    private boolean pondering;
+    private long overheadMillis = TimeManager.DEFAULT_OVERHEAD_MILLIS;
+
+    // The running ponder search, the position it searches and its time manager
+    private Search ponderSearch;
+    private Future<SearchResult> ponderResult;
+    private TimeManager ponderClock;
+    private long ponderHash;
+    private Move ponderMove;
+    private int ponderHits;
+    private int ponderMisses;
+
+    /**
+     * @param engine The game the engine plays in
+     * @param hashMegabytes Size of the transposition table, kept between moves
+     */
+    public EnginePlayer(ChessEngine engine, int hashMegabytes) {
+        this.engine = engine;
+        this.table = new TranspositionTable(hashMegabytes);
+        this.ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Turns thinking on the opponent's time on or off. Turning it off stops a
+     * running ponder search.
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            stopPondering();
+        }
+    }
+
+    /**
+     * Sets the time reserved per move for communication and move making.
+     */
+    public void setOverheadMillis(long overheadMillis) {
+        this.overheadMillis = overheadMillis;
+    }
+
+    /**
+     * Chooses and makes a move for the side to move.
+     *
+     * @param remainingMillis Time left on the engine's clock
+     * @param incrementMillis Increment per move
+     * @param movesToGo Moves until the next time control, or 0 for sudden death
+     * @return The move made, or null if there is no legal move
+     * @throws GameStateException if the engine is in an inconsistent state
+     */
+    public Move playMove(long remainingMillis, long incrementMillis, int movesToGo) throws GameStateException {
+        SearchResult result = takePonderResult(remainingMillis, incrementMillis, movesToGo);
+        if (result == null) {
+            Search search = new Search(this.engine);
+            search.setTranspositionTable(this.table);
+            search.setTimeManager(TimeManager.forClock(remainingMillis, incrementMillis, movesToGo, this.overheadMillis));
+            result = search.search();
+        }
+        if (result.getBestMove() == null) {
+            return null;
+        }
+        try {
+            Move move = this.engine.findMove(result.getBestMove().toCoordinateNotation());
+            this.engine.makeMove(move);
+            if (this.pondering) {
+                startPondering(result.getPrincipalVariation());
+            }
+            return move;
+        } catch (InvalidSquareException | InvalidMoveException e) {
+            throw new GameStateException("Could not play " + result.getBestMove() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the opponent move the engine is pondering on.
+     *
+     * @return The expected reply (a move of the pondered copy), or null if not pondering
+     */
+    public Move getPonderMove() {
+        return this.ponderResult == null ? null : this.ponderMove;
+    }
+
+    public int getPonderHits() {
+        return this.ponderHits;
+    }
+
+    public int getPonderMisses() {
+        return this.ponderMisses;
+    }
+
+    /**
+     * Stops a running ponder search and discards it.
+     */
+    public void stopPondering() {
+        if (this.ponderResult == null) {
+            return;
+        }
+        this.ponderSearch.stop();
+        try {
+            this.ponderResult.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the result is discarded anyway
+        }
+        this.ponderResult = null;
+        this.ponderSearch = null;
+    }
+
+    /**
+     * Stops pondering and releases the background thread.
+     */
+    public void close() {
+        stopPondering();
+        this.ponderThread.shutdown();
+    }
+
+    // On a ponder hit, gives the running search the clock and waits for its move; on a miss, stops it
+    private SearchResult takePonderResult(long remainingMillis, long incrementMillis, int movesToGo)
+            throws GameStateException {
+        if (this.ponderResult == null) {
+            return null;
+        }
+        if (this.engine.getPositionHash() != this.ponderHash) {
+            this.ponderMisses++;
+            stopPondering();
+            return null;
+        }
+        this.ponderHits++;
+        this.ponderClock.ponderHit(remainingMillis, incrementMillis, movesToGo);
+        try {
+            return this.ponderResult.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.ponderSearch.stop();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GameStateException) {
+                throw (GameStateException) e.getCause();
+            }
+            throw new GameStateException("Ponder search failed: " + e.getCause(), e.getCause());
+        } finally {
+            this.ponderResult = null;
+            this.ponderSearch = null;
+        }
+    }
+
+    private void startPondering(List<Move> principalVariation) throws GameStateException {
+        if (principalVariation.size() < 2) {
+            return;
+        }
+        ChessEngine copy = ChessEngine.fromSnapshot(this.engine.toSnapshot());
+        try {
+            Move expected = copy.findMove(principalVariation.get(1).toCoordinateNotation());
+            if (expected == null) {
+                return;
+            }
+            copy.makeMove(expected);
+            if (!copy.hasLegalMoves()) {
+                return; // the expected reply ends the game
+            }
+            this.ponderMove = expected;
+        } catch (InvalidSquareException | InvalidMoveException e) {
+            return; // nothing to ponder on
+        }
+        this.ponderHash = copy.getPositionHash();
+        this.ponderClock = TimeManager.forPondering(this.overheadMillis);
+        this.ponderSearch = new Search(copy);
+        this.ponderSearch.setTranspositionTable(this.table);
+        this.ponderSearch.setTimeManager(this.ponderClock);
+        Search search = this.ponderSearch;
+        this.ponderResult = this.ponderThread.submit(search::search);
+    }
+}
@@ -0,0 +1,123 @@
+import pieces.Piece;
+import pieces.PieceColor;
+
+/**
+ * Static position evaluation: material plus piece-square bonuses.
+ * Scores are in centipawns from the point of view of the side to move.
+ */
+public class Evaluator {
+
+    public static final int PAWN_VALUE = 100;
+    public static final int KNIGHT_VALUE = 320;
+    public static final int BISHOP_VALUE = 330;
+    public static final int ROOK_VALUE = 500;
+    public static final int QUEEN_VALUE = 900;
+    public static final int KING_VALUE = 20000;
+
+    // Piece-square tables from white's point of view, indexed [row][col] with row 0 = rank 8
+    private static final int[][] PAWN_TABLE = {
+        {  0,  0,  0,  0,  0,  0,  0,  0 },
+        { 50, 50, 50, 50, 50, 50, 50, 50 },
+        { 10, 10, 20, 30, 30, 20, 10, 10 },
+        {  5,  5, 10, 25, 25, 10,  5,  5 },
+        {  0,  0,  0, 20, 20,  0,  0,  0 },
+        {  5, -5,-10,  0,  0,-10, -5,  5 },
+        {  5, 10, 10,-20,-20, 10, 10,  5 },
+        {  0,  0,  0,  0,  0,  0,  0,  0 }
+    };
+    private static final int[][] KNIGHT_TABLE = {
+        {-50,-40,-30,-30,-30,-30,-40,-50 },
+        {-40,-20,  0,  0,  0,  0,-20,-40 },
+        {-30,  0, 10, 15, 15, 10,  0,-30 },
+        {-30,  5, 15, 20, 20, 15,  5,-30 },
+        {-30,  0, 15, 20, 20, 15,  0,-30 },
+        {-30,  5, 10, 15, 15, 10,  5,-30 },
+        {-40,-20,  0,  5,  5,  0,-20,-40 },
+        {-50,-40,-30,-30,-30,-30,-40,-50 }
+    };
+    private static final int[][] BISHOP_TABLE = {
+        {-20,-10,-10,-10,-10,-10,-10,-20 },
+        {-10,  0,  0,  0,  0,  0,  0,-10 },
+        {-10,  0,  5, 10, 10,  5,  0,-10 },
+        {-10,  5,  5, 10, 10,  5,  5,-10 },
+        {-10,  0, 10, 10, 10, 10,  0,-10 },
+        {-10, 10, 10, 10, 10, 10, 10,-10 },
+        {-10,  5,  0,  0,  0,  0,  5,-10 },
+        {-20,-10,-10,-10,-10,-10,-10,-20 }
+    };
+    private static final int[][] ROOK_TABLE = {
+        {  0,  0,  0,  0,  0,  0,  0,  0 },
+        {  5, 10, 10, 10, 10, 10, 10,  5 },
+        { -5,  0,  0,  0,  0,  0,  0, -5 },
+        { -5,  0,  0,  0,  0,  0,  0, -5 },
+        { -5,  0,  0,  0,  0,  0,  0, -5 },
+        { -5,  0,  0,  0,  0,  0,  0, -5 },
+        { -5,  0,  0,  0,  0,  0,  0, -5 },
+        {  0,  0,  0,  5,  5,  0,  0,  0 }
+    };
+    private static final int[][] QUEEN_TABLE = {
+        {-20,-10,-10, -5, -5,-10,-10,-20 },
+        {-10,  0,  0,  0,  0,  0,  0,-10 },
+        {-10,  0,  5,  5,  5,  5,  0,-10 },
+        { -5,  0,  5,  5,  5,  5,  0, -5 },
+        {  0,  0,  5,  5,  5,  5,  0, -5 },
+        {-10,  5,  5,  5,  5,  5,  0,-10 },
+        {-10,  0,  5,  0,  0,  0,  0,-10 },
+        {-20,-10,-10, -5, -5,-10,-10,-20 }
+    };
+    private static final int[][] KING_TABLE = {
+        {-30,-40,-40,-50,-50,-40,-40,-30 },
+        {-30,-40,-40,-50,-50,-40,-40,-30 },
+        {-30,-40,-40,-50,-50,-40,-40,-30 },
+        {-30,-40,-40,-50,-50,-40,-40,-30 },
+        {-20,-30,-30,-40,-40,-30,-30,-20 },
+        {-10,-20,-20,-20,-20,-20,-20,-10 },
+        { 20, 20,  0,  0,  0,  0, 20, 20 },
+        { 20, 30, 10,  0,  0, 10, 30, 20 }
+    };
+
+    // Indexed by PieceKind ordinal
+    private static final int[] PIECE_VALUES = {
+        PAWN_VALUE, KNIGHT_VALUE, BISHOP_VALUE, ROOK_VALUE, QUEEN_VALUE, KING_VALUE
+    };
+    private static final int[][][] SQUARE_TABLES = {
+        PAWN_TABLE, KNIGHT_TABLE, BISHOP_TABLE, ROOK_TABLE, QUEEN_TABLE, KING_TABLE
+    };
+
+    private Evaluator() {
+    }
+
+    /**
+     * Evaluates the engine's current position.
+     *
+     * @param engine The engine
+     * @return Score in centipawns, positive if the side to move is better
+     */
+    public static int evaluate(ChessEngine engine) {
+        Square[][] squares = engine.getBoard().getSquares();
+        int score = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = squares[row][col].getPiece();
+                if (piece == null) continue;
+                boolean white = piece.isWhite();
+                // Black reads the tables mirrored vertically
+                int tableRow = white ? row : 7 - row;
+                int kind = piece.getKind().ordinal();
+                int value = PIECE_VALUES[kind] + SQUARE_TABLES[kind][tableRow][col];
+                score += white ? value : -value;
+            }
+        }
+        return engine.getSideToMove() == PieceColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Get the material value of a piece.
+     *
+     * @param piece The piece
+     * @return Value in centipawns
+     */
+    public static int pieceValue(Piece piece) {
+        return PIECE_VALUES[piece.getKind().ordinal()];
+    }
+}
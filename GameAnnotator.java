@@ -0,0 +1,287 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import pieces.PieceColor;
+import exceptions.*;
+
+/**
+ * Marks the mistakes in PGN games by searching every position with a fixed
+ * node budget and comparing the value of each move played with the value of
+ * the position before it.
+ *
+ * A move that loses at least {@link #BLUNDER_LOSS} centipawns is marked "??",
+ * one that loses at least {@link #MISTAKE_LOSS} is marked "?", and one that is
+ * not the engine's choice yet gains at least {@link #SPECULATIVE_GAIN} over the
+ * engine's value of the position is marked "!?". Values beyond
+ * {@link #SCORE_CAP} count as the cap, so letting a won position stay won is
+ * not a blunder. Every move gets a comment with the value after it, from
+ * white's point of view; marked moves also show the value before it and the
+ * engine's choice. Moves the annotator of the game already assessed keep their
+ * glyph, and existing comments are kept in front of the new ones. Only the
+ * main line is annotated; variations are written back unchanged.
+ *
+ * All positions of a game are searched as separate tasks on a work-stealing
+ * pool, and several games are annotated at once, so idle threads take
+ * positions from other games. Each search uses no transposition table, so the
+ * annotation of a game does not depend on the number of threads.
+ *
+ * Usage: java GameAnnotator in.pgn out.pgn [threads] [nodes per position]
+ */
+public class GameAnnotator implements AutoCloseable {
+
+    public static final long DEFAULT_NODES = 20000;
+    public static final int BLUNDER_LOSS = 300;
+    public static final int MISTAKE_LOSS = 100;
+    public static final int SPECULATIVE_GAIN = 50;
+    public static final int SCORE_CAP = 1000;
+
+    private final ForkJoinPool pool;
+    private final long nodeLimit;
+
+    // The engine's value of one position, for the side to move
+    private static final class Evaluation {
+        final int score;
+        final Move bestMove;
+        final String bestSan;
+
+        Evaluation(int score, Move bestMove, String bestSan) {
+            this.score = score;
+            this.bestMove = bestMove;
+            this.bestSan = bestSan;
+        }
+    }
+
+    /**
+     * @param threads Number of worker threads
+     * @param nodeLimit Nodes searched per position
+     */
+    public GameAnnotator(int threads, long nodeLimit) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.nodeLimit = Math.max(1, nodeLimit);
+    }
+
+    /**
+     * Annotates the main line of one game in place; variations are kept as they are.
+     *
+     * @param game The game
+     * @throws PGNParseException if the game cannot be replayed
+     */
+    public void annotate(PGNTree game) throws PGNParseException {
+        GameTask task = new GameTask(game);
+        this.pool.invoke(task);
+        if (task.error != null) {
+            throw task.error;
+        }
+    }
+
+    /**
+     * Annotates every game of a PGN archive and writes them in the same order.
+     * Games are read, annotated and written as a stream, with a few games per
+     * thread in progress at a time. A game that cannot be replayed is written
+     * without new annotations.
+     *
+     * @param inPath The archive to annotate
+     * @param outPath The file to write, replaced if it exists
+     * @return The number of games annotated
+     * @throws ChessFileException if a file cannot be read or written
+     */
+    public int annotateFile(String inPath, String outPath) throws ChessFileException {
+        int window = 2 * this.pool.getParallelism();
+        ArrayDeque<GameTask> inProgress = new ArrayDeque<>();
+        int[] annotated = {0};
+        ChessFileException[] writeError = {null};
+        try (BufferedWriter out = Files.newBufferedWriter(Path.of(outPath), StandardCharsets.UTF_8)) {
+            PGNReader.forEachTree(inPath, game -> {
+                GameTask task = new GameTask(game);
+                this.pool.execute(task);
+                inProgress.add(task);
+                while (inProgress.size() > window && writeError[0] == null) {
+                    annotated[0] += write(inProgress.poll(), out, outPath, writeError);
+                }
+            });
+            while (!inProgress.isEmpty() && writeError[0] == null) {
+                annotated[0] += write(inProgress.poll(), out, outPath, writeError);
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(outPath, "write", e);
+        } finally {
+            for (GameTask task : inProgress) {
+                task.cancel(false);
+            }
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        return annotated[0];
+    }
+
+    // Waits for a game and writes it; returns 1 if it was annotated
+    private static int write(GameTask task, BufferedWriter out, String outPath, ChessFileException[] writeError) {
+        task.join();
+        try {
+            out.write(PGNWriter.formatGame(task.game));
+            out.write('\n');
+        } catch (IOException e) {
+            writeError[0] = new ChessFileException(outPath, "write", e);
+        }
+        return task.error == null ? 1 : 0;
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    private final class GameTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        final PGNTree game;
+        PGNParseException error;
+
+        GameTask(PGNTree game) {
+            this.game = game;
+        }
+
+        @Override
+        protected Void compute() {
+            ChessEngine engine = new ChessEngine();
+            List<Move> played;
+            byte[][] positions;
+            boolean whiteFirst;
+            try {
+                new PGNReader(engine).replayGame(this.game.toGame());
+                played = new ArrayList<>(engine.getMoveLog());
+                positions = new byte[played.size() + 1][];
+                for (int ply = played.size(); ply >= 0; ply--) {
+                    positions[ply] = engine.toSnapshot();
+                    if (ply > 0) {
+                        engine.undoMove();
+                    }
+                }
+                whiteFirst = engine.getSideToMove() == PieceColor.WHITE;
+            } catch (PGNParseException e) {
+                this.error = e;
+                return null;
+            } catch (GameStateException | InvalidSquareException e) {
+                this.error = new PGNParseException("Cannot take back the game: " + e.getMessage(), e);
+                return null;
+            }
+            List<RecursiveTask<Evaluation>> searches = new ArrayList<>();
+            for (byte[] position : positions) {
+                searches.add(new RecursiveTask<Evaluation>() {
+                    @Override
+                    protected Evaluation compute() {
+                        return evaluate(position);
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(searches);
+            Evaluation[] values = new Evaluation[positions.length];
+            for (int ply = 0; ply < positions.length; ply++) {
+                values[ply] = searches.get(ply).join();
+            }
+            int[] line = this.game.getMainLine();
+            for (int ply = 0; ply < played.size(); ply++) {
+                boolean whiteMoved = (ply % 2 == 0) == whiteFirst;
+                annotateMove(this.game, line[ply], played.get(ply), whiteMoved, values[ply], values[ply + 1]);
+            }
+            this.game.setTag("Annotator", UCIEngine.NAME + ", " + GameAnnotator.this.nodeLimit + " nodes per position");
+            return null;
+        }
+    }
+
+    private Evaluation evaluate(byte[] position) {
+        try {
+            ChessEngine engine = ChessEngine.fromSnapshot(position);
+            if (!engine.hasLegalMoves()) {
+                return new Evaluation(engine.isInCheck(engine.getSideToMove()) ? -Search.MATE_SCORE : 0, null, null);
+            }
+            Search search = new Search(engine);
+            search.setNodeLimit(this.nodeLimit);
+            SearchResult result = search.search();
+            Move best = result.getBestMove();
+            String san = best == null ? null : new AlgebraicNotationParser(engine).toSan(best);
+            return new Evaluation(result.getScore(), best, san);
+        } catch (GameStateException | InvalidSquareException e) {
+            throw new IllegalStateException("Position snapshot is invalid", e);
+        }
+    }
+
+    // Scores are for the side to move; the mover's value after the move is minus the next position's score
+    private static void annotateMove(PGNTree game, int node, Move move, boolean whiteMoved,
+            Evaluation before, Evaluation after) {
+        int loss = cap(before.score) - cap(-after.score);
+        int nag = 0;
+        if (loss >= BLUNDER_LOSS) {
+            nag = PGNGame.NAG_BLUNDER;
+        } else if (loss >= MISTAKE_LOSS) {
+            nag = PGNGame.NAG_MISTAKE;
+        } else if (-loss >= SPECULATIVE_GAIN && before.bestMove != null && !Search.sameMove(move, before.bestMove)) {
+            nag = PGNGame.NAG_SPECULATIVE;
+        }
+        int sign = whiteMoved ? 1 : -1;
+        String comment = formatScore(-sign * after.score);
+        if (nag != 0) {
+            comment = formatScore(sign * before.score) + " -> " + comment
+                + (before.bestSan == null ? "" : ", best " + before.bestSan);
+            if (!hasAssessment(game.getNags(node))) {
+                game.addNag(node, nag);
+            }
+        } else if (after.bestMove == null) {
+            return; // checkmate or stalemate needs no value
+        }
+        String existing = game.getComment(node);
+        game.setComment(node, existing == null ? comment : existing + " " + comment);
+    }
+
+    private static boolean hasAssessment(int[] nags) {
+        for (int nag : nags) {
+            if (nag >= PGNGame.NAG_GOOD && nag <= PGNGame.NAG_DUBIOUS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int cap(int score) {
+        return Math.max(-SCORE_CAP, Math.min(SCORE_CAP, score));
+    }
+
+    /**
+     * Formats a score in pawns ("+0.35", "-1.20") or as a mate ("#3", "#-2"),
+     * from the point of view the score is given in.
+     */
+    static String formatScore(int score) {
+        if (Math.abs(score) >= Search.MATE_SCORE - Search.MAX_MATE_PLY) {
+            int plies = Search.MATE_SCORE - Math.abs(score);
+            int moves = (plies + 1) / 2;
+            return "#" + (score > 0 ? moves : -moves);
+        }
+        return String.format(Locale.ROOT, "%+.2f", score / 100.0);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java GameAnnotator <in.pgn> <out.pgn> [threads] [nodes per position]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long nodes = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_NODES;
+        long start = System.currentTimeMillis();
+        try (GameAnnotator annotator = new GameAnnotator(threads, nodes)) {
+            int games = annotator.annotateFile(args[0], args[1]);
+            System.out.println("Annotated " + games + " games in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (ChessFileException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import exceptions.*;
+
+/**
+ * Removes duplicate games from PGN archives: games with the same moves from
+ * the same start position are duplicates whatever their tags, comments or
+ * variations, and only the first one read is kept.
+ *
+ * Each game is reduced to a 64-bit hash of its main line, folded move by
+ * move, and the hashes seen are kept in a {@link LongHashSet}, so memory is
+ * 11 to 22 bytes per unique game (100 million games fit in 1 GB) and the
+ * archives are read once. Two different games share a hash with probability
+ * of about n^2 / 2^65 for n games, roughly 1 in 4000 for 100 million.
+ *
+ * In {@link Hashing#SAN} mode the hash is taken straight from the packed SAN
+ * tokens of the parsed game, ignoring check marks and writing castling with
+ * zeros as with letters. {@link Hashing#MOVES} replays every game and hashes
+ * the moves themselves, so notation differences such as "Ngf3" for "Nf3" do
+ * not matter; it is slower and a game that cannot be replayed falls back to
+ * its SAN hash. Games are hashed in batches on a work-stealing pool while the
+ * archives are read and the unique games are written, in input order, through
+ * a {@link PGNStreamWriter}, so the output does not depend on the thread count.
+ *
+ * Usage: java GameDeduplicator out.pgn[.gz] san|moves threads in.pgn...
+ */
+public class GameDeduplicator implements AutoCloseable {
+
+    public enum Hashing {
+        SAN,
+        MOVES
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final long SHORT_CASTLING = packed("O-O");
+    private static final long LONG_CASTLING = packed("O-O-O");
+    private static final long SHORT_CASTLING_ZEROS = packed("0-0");
+    private static final long LONG_CASTLING_ZEROS = packed("0-0-0");
+
+    private final ForkJoinPool pool;
+    private final Hashing hashing;
+    private final LongHashSet seen;
+    private List<PGNTree> batch = new ArrayList<>(BATCH_SIZE);
+    private long gamesRead;
+    private long gamesWritten;
+
+    /**
+     * @param threads Number of worker threads hashing games
+     * @param hashing How games are compared
+     * @param expectedGames Number of unique games to make room for up front; the set grows past it
+     */
+    public GameDeduplicator(int threads, Hashing hashing, long expectedGames) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.hashing = hashing;
+        this.seen = new LongHashSet(expectedGames);
+    }
+
+    public long getGamesRead() {
+        return this.gamesRead;
+    }
+
+    public long getGamesWritten() {
+        return this.gamesWritten;
+    }
+
+    /**
+     * Reads archives in order and writes each game not seen before, in this
+     * call or earlier ones on the same deduplicator.
+     *
+     * @param inPaths The archives to read
+     * @param out Where the unique games are written
+     * @return The number of games written by this call
+     * @throws ChessFileException if an archive cannot be read or the output cannot be written
+     */
+    public long deduplicate(List<String> inPaths, PGNStreamWriter out) throws ChessFileException {
+        int window = 2 * this.pool.getParallelism();
+        ArrayDeque<HashTask> inProgress = new ArrayDeque<>();
+        long writtenBefore = this.gamesWritten;
+        ChessFileException[] writeError = {null};
+        try {
+            for (String inPath : inPaths) {
+                PGNReader.forEachTree(inPath, game -> {
+                    if (writeError[0] != null) {
+                        return;
+                    }
+                    this.batch.add(game);
+                    if (this.batch.size() == BATCH_SIZE) {
+                        submit(inProgress);
+                        while (inProgress.size() > window && writeError[0] == null) {
+                            write(inProgress.poll(), out, writeError);
+                        }
+                    }
+                });
+                if (writeError[0] != null) {
+                    break;
+                }
+            }
+            if (writeError[0] == null && !this.batch.isEmpty()) {
+                submit(inProgress);
+            }
+            while (!inProgress.isEmpty() && writeError[0] == null) {
+                write(inProgress.poll(), out, writeError);
+            }
+        } finally {
+            this.batch = new ArrayList<>(BATCH_SIZE);
+            for (HashTask task : inProgress) {
+                task.cancel(false);
+            }
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        return this.gamesWritten - writtenBefore;
+    }
+
+    // Starts hashing the games read so far
+    private void submit(ArrayDeque<HashTask> inProgress) {
+        HashTask task = new HashTask(this.batch);
+        this.batch = new ArrayList<>(BATCH_SIZE);
+        this.pool.execute(task);
+        inProgress.add(task);
+    }
+
+    // Waits for a batch and writes the games whose hash is new; only the reading thread touches the set
+    private void write(HashTask task, PGNStreamWriter out, ChessFileException[] writeError) {
+        long[] hashes = task.join();
+        for (int i = 0; i < hashes.length && writeError[0] == null; i++) {
+            this.gamesRead++;
+            if (this.seen.add(hashes[i])) {
+                try {
+                    out.writeGame(task.games.get(i));
+                    this.gamesWritten++;
+                } catch (ChessFileException e) {
+                    writeError[0] = e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    private final class HashTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        final List<PGNTree> games;
+
+        HashTask(List<PGNTree> games) {
+            this.games = games;
+        }
+
+        @Override
+        protected long[] compute() {
+            long[] hashes = new long[this.games.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                PGNTree game = this.games.get(i);
+                long hash = GameDeduplicator.this.hashing == Hashing.MOVES ? hashMoves(game) : 0;
+                hashes[i] = hash != 0 ? hash : hashSan(game);
+            }
+            return hashes;
+        }
+    }
+
+    /**
+     * Hashes the main line of a game from its SAN tokens, without replaying it.
+     * Check marks are ignored and castling may be written with zeros.
+     */
+    static long hashSan(PGNTree game) {
+        long hash = seed(game);
+        for (int node = game.getFirstChild(PGNTree.ROOT); node != PGNTree.NONE; node = game.getFirstChild(node)) {
+            long packed = game.getPackedMove(node);
+            if (packed < 0) {
+                packed = game.getSan(node).hashCode() | Long.MIN_VALUE;
+            } else {
+                packed = normalize(packed);
+            }
+            hash = fold(hash, packed);
+        }
+        return hash;
+    }
+
+    // Clears trailing '+' and '#' and turns "0-0" / "0-0-0" into "O-O" / "O-O-O"
+    private static long normalize(long packed) {
+        while (packed != 0) {
+            int shift = Long.numberOfTrailingZeros(packed) & ~7;
+            long last = packed >>> shift & 0xFF;
+            if (last != '+' && last != '#') {
+                break;
+            }
+            packed &= ~(0xFFL << shift);
+        }
+        if (packed == SHORT_CASTLING_ZEROS) {
+            return SHORT_CASTLING;
+        }
+        return packed == LONG_CASTLING_ZEROS ? LONG_CASTLING : packed;
+    }
+
+    private static long packed(String san) {
+        return PGNTree.pack(san.getBytes(StandardCharsets.US_ASCII), 0, san.length());
+    }
+
+    /**
+     * Hashes the main line of a game from its moves, replayed from its start position.
+     *
+     * @return The hash, or 0 if the game cannot be replayed
+     */
+    static long hashMoves(PGNTree game) {
+        ChessEngine engine = new ChessEngine();
+        try {
+            new PGNReader(engine).replayGame(game.toGame());
+        } catch (PGNParseException e) {
+            return 0;
+        }
+        long hash = seed(game);
+        for (Move move : engine.getMoveLog()) {
+            hash = fold(hash, move.toCode());
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Games from different start positions are different games
+    private static long seed(PGNTree game) {
+        String fen = game.getTag("FEN");
+        return fen == null ? 0 : mix(fen.trim().hashCode());
+    }
+
+    private static long fold(long hash, long move) {
+        return mix(hash * 31 + move);
+    }
+
+    // The finalizer of SplitMix64: every input bit affects every output bit
+    private static long mix(long z) {
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: java GameDeduplicator <out.pgn[.gz]> <san|moves> <threads> <in.pgn>...");
+            return;
+        }
+        Hashing hashing = args[1].equalsIgnoreCase("moves") ? Hashing.MOVES : Hashing.SAN;
+        int threads = Integer.parseInt(args[2]);
+        List<String> inPaths = List.of(args).subList(3, args.length);
+        long start = System.currentTimeMillis();
+        try (GameDeduplicator deduplicator = new GameDeduplicator(threads, hashing, 1 << 20);
+             PGNStreamWriter out = PGNStreamWriter.open(args[0], false, args[0].endsWith(".gz"))) {
+            deduplicator.deduplicate(inPaths, out);
+            System.out.println("Read " + deduplicator.getGamesRead() + " games, wrote "
+                + deduplicator.getGamesWritten() + " unique in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (ChessFileException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
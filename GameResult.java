@@ -1,3 +1,5 @@
+import pieces.PieceColor;
+
 /**
  * Represents the result and status of a chess game
  */
@@ -6,7 +8,7 @@ public class GameResult {
         ONGOING,      // Game is still in progress
         WHITE_WIN,    // White won (by checkmate or resignation)
         BLACK_WIN,    // Black won (by checkmate or resignation)
-        DRAW,         // Game ended in a draw (agreed or stalemate)
+        DRAW,         // Game ended in a draw (agreed, stalemate, repetition, move rules, insufficient material)
         WHITE_RESIGNED,  // White resigned
         BLACK_RESIGNED   // Black resigned
     }
@@ -37,6 +39,22 @@ public class GameResult {
         this.reason = reason;
     }
 
+    /**
+     * Ends the game with the value an endgame table gives it.
+     *
+     * @param known The tablebase result for the side to move
+     * @param sideToMove The side to move in the probed position
+     */
+    public void adjudicate(Tablebase.Result known, PieceColor sideToMove) {
+        if (known.getWdl() == Tablebase.Wdl.DRAW) {
+            setResult(ResultType.DRAW, "Adjudicated: tablebase draw");
+            return;
+        }
+        PieceColor winner = known.getWdl() == Tablebase.Wdl.WIN ? sideToMove : sideToMove.opposite();
+        setResult(winner == PieceColor.WHITE ? ResultType.WHITE_WIN : ResultType.BLACK_WIN,
+            "Adjudicated: tablebase win for " + winner.name().toLowerCase() + ", mate in " + known.getMovesToMate());
+    }
+
     public boolean isGameOver() {
         return this.resultType != ResultType.ONGOING;
     }
@@ -0,0 +1,497 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import exceptions.*;
+
+/**
+ * Local TCP server hosting many games at once, one ChessEngine per session.
+ *
+ * Every connection is handled by its own (virtual, where the JVM supports them)
+ * thread. A connection creates a session with NEW or joins one with ATTACH, and
+ * then sends one command per line, each answered by one line starting with "OK"
+ * or "ERR":
+ *
+ *   NEW                  start a game, answers "OK <session id>"
+ *   ATTACH <id>          join an existing game
+ *   MOVE <move>          play a move (SAN like "Nf3" or coordinates like "g1f3"), answers "OK <move> <status>"
+ *   UNDO                 take back the last move
+ *   MOVES                list the legal moves in coordinate notation
+ *   FEN                  get the position as FEN
+ *   STATUS               ONGOING, CHECK, CHECKMATE, STALEMATE or the game result
+ *   RESIGN               the side to move resigns
+ *   PING                 answers "OK PONG"
+ *   QUIT                 close the connection (the session stays until it is evicted)
+ *
+ * Sessions live in a concurrent map and are evicted after a period without
+ * commands. If a spill directory is configured, an evicted session is written
+ * there as a snapshot (see {@link ChessEngine#toSnapshot()}) and ATTACH brings
+ * it back, so idle games cost disk space instead of memory. Each session executes its commands one at a time from a bounded
+ * queue; when the queue is full the command is refused with "ERR BUSY", so a
+ * client flooding one game cannot hold up the others.
+ *
+ * With a metrics port, the engine counters, the move generation latency and
+ * the number of active sessions are served in the Prometheus text format at
+ * http://127.0.0.1:&lt;metrics port&gt;/metrics (see {@link MetricsServer}).
+ *
+ * Usage: java GameServer [port] [idle timeout seconds] [spill directory or -] [metrics port]
+ */
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 7878;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    private static final long COMMAND_TIMEOUT_MILLIS = 30_000;
+    private static final int ACCEPT_BACKLOG = 4096;
+
+    private final int requestedPort;
+    private final long idleTimeoutMillis;
+    private final int queueCapacity;
+    private final Path spillDirectory;
+    private final Map<String, Session> sessions;
+    private final AtomicLong nextSessionId;
+
+    private ServerSocket serverSocket;
+    private ExecutorService threads;
+    private ScheduledExecutorService evictor;
+    private volatile boolean running;
+
+    /**
+     * A game and the queue of commands waiting to be applied to it.
+     */
+    public static class Session {
+        private final String id;
+        private final ChessEngine engine;
+        private final AlgebraicNotationParser parser;
+        private final BlockingQueue<Command> queue;
+        private final AtomicBoolean draining;
+        private final Executor executor;
+        private volatile long lastAccess;
+        private boolean evicted; // guarded by this
+
+        Session(String id, ChessEngine engine, int queueCapacity, Executor executor) {
+            this.id = id;
+            this.engine = engine;
+            this.parser = new AlgebraicNotationParser(this.engine);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.draining = new AtomicBoolean();
+            this.executor = executor;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public long getLastAccess() {
+            return this.lastAccess;
+        }
+
+        /**
+         * Queues a command. Commands of one session run in order, never concurrently.
+         *
+         * @param name Upper-case command name
+         * @param argument The rest of the line, or an empty string
+         * @return The future response line; "ERR BUSY" at once if the queue is full
+         */
+        public CompletableFuture<String> submit(String name, String argument) {
+            this.lastAccess = System.currentTimeMillis();
+            Command command = new Command(name, argument);
+            synchronized (this) {
+                if (this.evicted) {
+                    return CompletableFuture.completedFuture("ERR session was idle, ATTACH " + this.id + " again");
+                }
+                if (!this.queue.offer(command)) {
+                    return CompletableFuture.completedFuture("ERR BUSY");
+                }
+            }
+            if (this.draining.compareAndSet(false, true)) {
+                this.executor.execute(this::drain);
+            }
+            return command.response;
+        }
+
+        // Marks the session evicted if it has been idle since the cutoff; no command can be queued afterwards
+        private synchronized boolean evictIfIdle(long cutoff) {
+            if (this.lastAccess < cutoff && this.queue.isEmpty() && !this.draining.get()) {
+                this.evicted = true;
+            }
+            return this.evicted;
+        }
+
+        // Takes the session back after a failed spill; it counts as used now, so the next try waits a full timeout
+        private synchronized void cancelEviction() {
+            this.evicted = false;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        private void drain() {
+            while (true) {
+                Command command;
+                while ((command = this.queue.poll()) != null) {
+                    String response;
+                    try {
+                        response = execute(command.name, command.argument);
+                    } catch (RuntimeException e) {
+                        response = "ERR internal error: " + e;
+                    }
+                    command.response.complete(response);
+                }
+                this.draining.set(false);
+                // A command queued after the last poll but before the flag was cleared needs a new drainer
+                if (this.queue.isEmpty() || !this.draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private String execute(String name, String argument) {
+            try {
+                switch (name) {
+                    case "MOVE":
+                        return move(argument);
+                    case "UNDO":
+                        this.engine.undoMove();
+                        return "OK " + status();
+                    case "MOVES":
+                        StringBuilder sb = new StringBuilder("OK");
+                        for (Move move : this.engine.getAllLegalMoves()) {
+                            sb.append(' ').append(move.toCoordinateNotation());
+                        }
+                        return sb.toString();
+                    case "FEN":
+                        return "OK " + this.engine.toFen();
+                    case "STATUS":
+                        return "OK " + status();
+                    case "RESIGN":
+                        this.engine.resign();
+                        return "OK " + status();
+                    default:
+                        return "ERR unknown command " + name;
+                }
+            } catch (GameStateException | InvalidSquareException e) {
+                return "ERR " + e.getMessage();
+            }
+        }
+
+        private String move(String text) throws GameStateException, InvalidSquareException {
+            if (text.isEmpty()) {
+                return "ERR usage: MOVE <move>";
+            }
+            if (this.engine.getGameResult().isGameOver()) {
+                return "ERR game is over: " + this.engine.getGameResult().getReason();
+            }
+            Move move = this.engine.findMove(text);
+            if (move == null) {
+                try {
+                    move = this.parser.parseMove(text);
+                } catch (PGNParseException e) {
+                    move = null;
+                }
+            }
+            if (move == null) {
+                return "ERR illegal move " + text;
+            }
+            try {
+                this.engine.makeMove(move);
+            } catch (InvalidMoveException e) {
+                return "ERR " + e.getMessage();
+            }
+            return "OK " + move.toCoordinateNotation() + " " + status();
+        }
+
+        private String status() throws GameStateException, InvalidSquareException {
+            GameResult result = this.engine.getGameResult();
+            if (result.isGameOver()) {
+                return result.getResultType().name();
+            }
+            boolean inCheck = this.engine.isInCheck(this.engine.getCurrentTurn());
+            if (!this.engine.hasLegalMoves()) {
+                return inCheck ? "CHECKMATE" : "STALEMATE";
+            }
+            return inCheck ? "CHECK" : "ONGOING";
+        }
+    }
+
+    private static class Command {
+        final String name;
+        final String argument;
+        final CompletableFuture<String> response;
+
+        Command(String name, String argument) {
+            this.name = name;
+            this.argument = argument;
+            this.response = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Creates a server; nothing is bound until {@link #start()}.
+     *
+     * @param port TCP port on the loopback address, or 0 for any free port
+     * @param idleTimeoutMillis Time without commands after which a session is evicted
+     * @param queueCapacity Commands a session may have waiting
+     * @param spillDirectory Directory evicted sessions are written to, or null to discard them
+     */
+    public GameServer(int port, long idleTimeoutMillis, int queueCapacity, Path spillDirectory) {
+        this.requestedPort = port;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.queueCapacity = queueCapacity;
+        this.spillDirectory = spillDirectory;
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextSessionId = new AtomicLong();
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread, or on a
+     * cached pool of platform threads if the JVM has no virtual threads.
+     *
+     * @return The executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Binds to the loopback address and starts accepting connections.
+     *
+     * @throws ChessFileException if the port cannot be bound
+     */
+    public void start() throws ChessFileException {
+        try {
+            if (this.spillDirectory != null) {
+                Files.createDirectories(this.spillDirectory);
+            }
+            this.serverSocket = new ServerSocket(this.requestedPort, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new ChessFileException("Cannot listen on port " + this.requestedPort + ": " + e.getMessage(), e);
+        }
+        this.running = true;
+        this.threads = newThreadPerTaskExecutor();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, this.idleTimeoutMillis / 4);
+        this.evictor.scheduleAtFixedRate(this::evictIdleSessions, period, period, TimeUnit.MILLISECONDS);
+        // A platform thread, so the JVM stays up while the server runs
+        Thread acceptor = new Thread(this::acceptLoop, "game-server-accept");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return this.serverSocket == null ? this.requestedPort : this.serverSocket.getLocalPort();
+    }
+
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Registers the gauge "chess_active_sessions" with the number of sessions in memory.
+     *
+     * @param registry The registry
+     * @throws IllegalArgumentException if the name is already registered
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("chess_active_sessions", "Game sessions held in memory", this::getSessionCount);
+    }
+
+    /**
+     * Removes sessions that have had no commands for longer than the idle timeout,
+     * writing them to the spill directory if there is one. A session that cannot
+     * be written is kept and tried again after another timeout.
+     *
+     * @return Number of sessions removed
+     */
+    public int evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - this.idleTimeoutMillis;
+        int evicted = 0;
+        for (Session session : this.sessions.values()) {
+            if (!session.evictIfIdle(cutoff)) {
+                continue;
+            }
+            if (this.spillDirectory != null) {
+                try {
+                    writeSnapshot(session);
+                } catch (IOException e) {
+                    // Dropping it now would lose the game, so it stays in memory
+                    System.err.println("Could not spill session " + session.getId() + ": " + e.getMessage());
+                    session.cancelEviction();
+                    continue;
+                }
+            }
+            this.sessions.remove(session.getId(), session);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    private void writeSnapshot(Session session) throws IOException {
+        Path file = this.spillDirectory.resolve(session.getId() + ".snap");
+        Path temp = this.spillDirectory.resolve(session.getId() + ".snap.tmp");
+        Files.write(temp, session.engine.toSnapshot());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Finds a live session, or brings a spilled one back into memory
+    private Session findSession(String id) {
+        Session session = this.sessions.get(id);
+        if (session != null || this.spillDirectory == null || !id.matches("[0-9a-z]+")) {
+            return session;
+        }
+        synchronized (this.sessions) {
+            session = this.sessions.get(id);
+            Path file = this.spillDirectory.resolve(id + ".snap");
+            if (session != null || !Files.exists(file)) {
+                return session;
+            }
+            try {
+                ChessEngine engine = ChessEngine.fromSnapshot(Files.readAllBytes(file));
+                session = new Session(id, engine, this.queueCapacity, this.threads);
+                this.sessions.put(id, session);
+                Files.delete(file);
+                return session;
+            } catch (IOException | GameStateException e) {
+                System.err.println("Could not restore session " + id + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the server. Open connections end
+     * when their clients disconnect.
+     */
+    public void stop() {
+        this.running = false;
+        try {
+            if (this.serverSocket != null) this.serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        if (this.evictor != null) this.evictor.shutdownNow();
+        if (this.threads != null) this.threads.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (this.running) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                this.threads.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (this.running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            Session session = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                int space = line.indexOf(' ');
+                String name = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+                String argument = space < 0 ? "" : line.substring(space + 1).trim();
+                String response;
+                if (name.equals("QUIT")) {
+                    break;
+                } else if (name.equals("PING")) {
+                    response = "OK PONG";
+                } else if (name.equals("NEW")) {
+                    String id = Long.toString(this.nextSessionId.incrementAndGet(), 36);
+                    session = new Session(id, new ChessEngine(), this.queueCapacity, this.threads);
+                    this.sessions.put(id, session);
+                    response = "OK " + id;
+                } else if (name.equals("ATTACH")) {
+                    Session found = findSession(argument);
+                    if (found == null) {
+                        response = "ERR no session " + argument;
+                    } else {
+                        session = found;
+                        response = "OK " + argument;
+                    }
+                } else if (session == null) {
+                    response = "ERR no session, send NEW or ATTACH first";
+                } else {
+                    response = await(session.submit(name, argument));
+                }
+                out.write(response);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private static String await(CompletableFuture<String> response) {
+        try {
+            return response.get(COMMAND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return "ERR TIMEOUT";
+        } catch (ExecutionException e) {
+            return "ERR " + e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long idle = args.length > 1 ? Long.parseLong(args[1]) * 1000 : DEFAULT_IDLE_TIMEOUT_MILLIS;
+        Path spill = args.length > 2 && !args[2].equals("-") ? Path.of(args[2]) : null;
+        GameServer server = new GameServer(port, idle, DEFAULT_QUEUE_CAPACITY, spill);
+        try {
+            server.start();
+            System.out.println("Game server listening on 127.0.0.1:" + server.getPort());
+            if (args.length > 3) {
+                MetricsRegistry registry = new MetricsRegistry();
+                EngineMetrics.registerWith(registry);
+                server.registerMetrics(registry);
+                EngineMetrics.setEnabled(true);
+                MetricsServer metrics = new MetricsServer(registry, new PrometheusExporter(), Integer.parseInt(args[3]));
+                metrics.start();
+                System.out.println("Metrics at http://127.0.0.1:" + metrics.getPort() + MetricsServer.PATH);
+            }
+        } catch (ChessFileException e) {
+            System.out.println("Server error: " + e.getMessage());
+        }
+    }
+}
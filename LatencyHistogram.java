@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values below 16 ns have a bucket each. Above that, every power of two is
+ * split into 16 equal buckets, so a recorded value is known to within about
+ * 6% over the whole range up to 2^63 ns. Recording increments one slot of an
+ * {@link AtomicLongArray} and a {@link LongAdder}; there are no locks, and
+ * readers may see a recording that is still in progress.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Records one value.
+     *
+     * @param nanos The latency; negative values count as 0
+     */
+    public void recordNanos(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.totalNanos.add(value);
+    }
+
+    /**
+     * Get the number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the sum of all recorded values.
+     */
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    /**
+     * Counts the values that are certainly at or below a limit, i.e. those in
+     * buckets that end at or below it.
+     *
+     * @param nanos The limit
+     * @return The number of values
+     */
+    public long getCountAtOrBelow(long nanos) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= nanos; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get a percentile of the recorded values.
+     *
+     * @param percentile Between 0 and 100
+     * @return The upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Clears all recorded values. Values recorded at the same time may or may not survive.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.totalNanos.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // at least SUB_BUCKET_BITS
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value that falls into a bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        long upper = lower + (1L << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
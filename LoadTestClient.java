@@ -0,0 +1,180 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for {@link GameServer}: opens many sessions at once, each on
+ * its own connection and (virtual) thread, and plays random legal moves in all
+ * of them, timing every MOVE round trip. Once all connections are open they
+ * start playing together; at the end the per-move latency percentiles are
+ * printed.
+ *
+ * Usage: java LoadTestClient [host] [port] [sessions] [moves per session]
+ */
+public class LoadTestClient {
+
+    private static final int CONNECT_ATTEMPTS = 5;
+
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final int movesPerSession;
+
+    public LoadTestClient(String host, int port, int sessions, int movesPerSession) {
+        this.host = host;
+        this.port = port;
+        this.sessions = sessions;
+        this.movesPerSession = movesPerSession;
+    }
+
+    /**
+     * Runs the test and prints the report.
+     *
+     * @return Move latencies in nanoseconds, sorted
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    public long[] run() throws InterruptedException {
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(this.sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(this.sessions);
+
+        ExecutorService threads = GameServer.newThreadPerTaskExecutor();
+        for (int i = 0; i < this.sessions; i++) {
+            long seed = i;
+            threads.execute(() -> {
+                try {
+                    latencies.add(playSession(seed, connected, go));
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        finished.await();
+        long wallNanos = System.nanoTime() - start;
+        threads.shutdown();
+        threads.awaitTermination(1, TimeUnit.MINUTES);
+
+        int count = 0;
+        for (long[] session : latencies) count += session.length;
+        long[] all = new long[count];
+        int offset = 0;
+        for (long[] session : latencies) {
+            System.arraycopy(session, 0, all, offset, session.length);
+            offset += session.length;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("Sessions: %d ok, %d failed; %d moves in %.1f s (%.0f moves/s)%n",
+            latencies.size(), failures.get(), all.length, wallNanos / 1e9, all.length / (wallNanos / 1e9));
+        if (all.length > 0) {
+            System.out.printf("Move latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                percentile(all, 50) / 1e6, percentile(all, 90) / 1e6, percentile(all, 99) / 1e6,
+                percentile(all, 99.9) / 1e6, all[all.length - 1] / 1e6);
+        }
+        return all;
+    }
+
+    // Every session is counted in "connected" exactly once, even if it fails
+    private long[] playSession(long seed, CountDownLatch connected, CountDownLatch go)
+            throws IOException, InterruptedException {
+        Socket socket;
+        try {
+            socket = connect();
+        } finally {
+            connected.countDown();
+        }
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            go.await();
+            expectOk(send(in, out, "NEW"));
+            Random random = new Random(seed);
+            List<Long> times = new ArrayList<>();
+            for (int i = 0; i < this.movesPerSession; i++) {
+                String[] moves = expectOk(send(in, out, "MOVES")).split(" ");
+                if (moves.length < 2) break; // "OK" alone: no legal moves
+                String move = moves[1 + random.nextInt(moves.length - 1)];
+                long before = System.nanoTime();
+                String response = send(in, out, "MOVE " + move);
+                times.add(System.nanoTime() - before);
+                expectOk(response);
+                if (!response.endsWith("ONGOING") && !response.endsWith("CHECK")) break; // game over
+            }
+            send(in, out, "QUIT");
+            long[] result = new long[times.size()];
+            for (int i = 0; i < result.length; i++) result[i] = times.get(i);
+            return result;
+        }
+    }
+
+    private Socket connect() throws IOException, InterruptedException {
+        IOException last = null;
+        for (int attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++) {
+            try {
+                return new Socket(this.host, this.port);
+            } catch (IOException e) {
+                last = e; // accept backlog full, try again shortly
+                Thread.sleep(50L << attempt);
+            }
+        }
+        throw last;
+    }
+
+    private static String send(BufferedReader in, BufferedWriter out, String command) throws IOException {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        if (command.equals("QUIT")) {
+            return "OK";
+        }
+        String response = in.readLine();
+        if (response == null) {
+            throw new IOException("Server closed the connection");
+        }
+        return response;
+    }
+
+    private static String expectOk(String response) throws IOException {
+        if (!response.startsWith("OK")) {
+            throw new IOException("Server error: " + response);
+        }
+        return response;
+    }
+
+    private static long percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        System.out.println("Playing " + moves + " moves in each of " + sessions + " sessions against " + host + ":" + port);
+        new LoadTestClient(host, port, sessions, moves).run();
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Set of longs in one open-addressing array, without boxing.
+ *
+ * Keys are placed by a mix of their bits and collisions probe the following
+ * slots, so a set of n keys takes about 8 bytes per slot and 1/0.75 slots per
+ * key: 100 million keys fit in 1 GB. The table doubles when it gets fuller
+ * than that. Zero marks an empty slot, so the key 0 is tracked apart. Not
+ * thread-safe.
+ */
+public class LongHashSet {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(1024);
+    }
+
+    /**
+     * @param expected Number of keys to make room for before growing
+     */
+    public LongHashSet(long expected) {
+        this.slots = new long[capacityFor(expected)];
+        this.mask = this.slots.length - 1;
+    }
+
+    private static int capacityFor(long keys) {
+        long capacity = Long.highestOneBit(Math.max(16, keys * 4 / 3 + 1) - 1) << 1;
+        return (int) Math.min(capacity, MAX_CAPACITY);
+    }
+
+    /**
+     * Get the number of keys in the set.
+     */
+    public long size() {
+        return this.size + (this.containsZero ? 1 : 0);
+    }
+
+    /**
+     * Get the number of slots, which bounds the memory used to 8 bytes each.
+     */
+    public int getCapacity() {
+        return this.slots.length;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return this.containsZero;
+        }
+        for (int slot = slotOf(key); this.slots[slot] != 0; slot = (slot + 1) & this.mask) {
+            if (this.slots[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @return True if the key was not in the set yet
+     * @throws IllegalStateException if the set is full at its largest capacity
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            boolean added = !this.containsZero;
+            this.containsZero = true;
+            return added;
+        }
+        int slot = slotOf(key);
+        while (this.slots[slot] != 0) {
+            if (this.slots[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.size + 1 > this.slots.length / 4 * 3) {
+            if (this.slots.length == MAX_CAPACITY) {
+                if (this.size + 1 == MAX_CAPACITY) {
+                    throw new IllegalStateException("Set is full at " + this.size + " keys");
+                }
+            } else {
+                grow();
+                slot = slotOf(key);
+                while (this.slots[slot] != 0) {
+                    slot = (slot + 1) & this.mask;
+                }
+            }
+        }
+        this.slots[slot] = key;
+        this.size++;
+        return true;
+    }
+
+    private void grow() {
+        long[] old = this.slots;
+        this.slots = new long[old.length * 2];
+        this.mask = this.slots.length - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int slot = slotOf(key);
+                while (this.slots[slot] != 0) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.slots[slot] = key;
+            }
+        }
+    }
+
+    // Keys may be poorly distributed (e.g. small counters), so mix all bits into the slot
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & this.mask;
+    }
+}
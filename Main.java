@@ -97,9 +97,12 @@ public class Main {
                 continue;
             }
 
-            // Check for checkmate or stalemate
+            // Check for checkmate or stalemate; both come from the engine's per-position cache
+            boolean inCheck = false;
             try {
-                if (engine.isCheckmate()) {
+                inCheck = engine.isInCheck(engine.getCurrentTurn());
+                boolean noLegalMoves = !engine.hasLegalMoves();
+                if (noLegalMoves && inCheck) {
                     System.out.println("\n" + engine.getCurrentTurn().toUpperCase() + "'s turn:");
                     engine.getBoard().printBoard();
                     String winner = engine.getCurrentTurn().equals("white") ? "BLACK" : "WHITE";
@@ -111,7 +114,7 @@ public class Main {
                     continue;
                 }
                 
-                if (engine.isStalemate()) {
+                if (noLegalMoves) {
                     System.out.println("\n" + engine.getCurrentTurn().toUpperCase() + "'s turn:");
                     engine.getBoard().printBoard();
                     System.out.println("\n=================================");
@@ -136,12 +139,8 @@ public class Main {
             }
             
             // Check if current player is in check
-            try {
-                if (engine.isInCheck(engine.getCurrentTurn())) {
-                    System.out.println("\n*** CHECK! ***");
-                }
-            } catch (InvalidSquareException | GameStateException e) {
-                System.out.println("Internal error checking for check: " + e.getMessage());
+            if (inCheck) {
+                System.out.println("\n*** CHECK! ***");
             }
             
             // Get user input
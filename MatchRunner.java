@@ -0,0 +1,526 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import exceptions.*;
+
+/**
+ * Plays matches between two search configurations to decide whether an engine
+ * change is an improvement.
+ *
+ * Games run concurrently on a fixed thread pool, each on its own ChessEngine.
+ * Every opening is played twice with colours reversed. Games end through the
+ * engine's own {@link GameResult} (repetition, insufficient material, 75-move
+ * rule), by checkmate or stalemate, by the fifty-move rule, by a move limit,
+ * by resign adjudication when the evaluation stays lopsided for both sides, or,
+ * given endgame tables, as soon as a position in them is reached.
+ *
+ * After every game the Elo difference with its 95% error margin and the
+ * log-likelihood ratio of a sequential probability ratio test (SPRT) are
+ * updated; once the SPRT accepts either hypothesis no further games are
+ * started. Finished games are appended to a PGN file in batches.
+ *
+ * Usage: java MatchRunner openings.(epd|fen|pgn) games threads out.pgn playerA playerB [tablebases]
+ * where a player is e.g. "nodes=2000", "depth=3" or "movetime=100", optionally
+ * combined with commas and a hash size: "depth=4,hash=8", and tablebases is a
+ * directory of endgame tables used for adjudication.
+ */
+public class MatchRunner {
+
+    public static final int DEFAULT_MAX_PLIES = 400;
+    public static final int DEFAULT_PGN_BATCH = 50;
+    public static final int RESIGN_SCORE = 1000;
+    public static final int RESIGN_PLIES = 6;
+
+    /**
+     * One side of the match: a name and the limits its searches run with.
+     */
+    public static class Player {
+        private final String name;
+        private int depthLimit;
+        private long nodeLimit;
+        private long timeLimitMillis;
+        private int hashMegabytes = 4;
+
+        public Player(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Parses a player specification like "nodes=2000,hash=8" or "Fast:movetime=50".
+         *
+         * @param spec Optional "name:" followed by comma-separated key=value pairs: depth, nodes, movetime, hash
+         * @return The player, named by the prefix or else after the specification
+         * @throws IllegalArgumentException if the specification is malformed or has no limit
+         */
+        public static Player parse(String spec) {
+            int colon = spec.indexOf(':');
+            Player player = new Player(colon < 0 ? spec : spec.substring(0, colon));
+            for (String part : spec.substring(colon + 1).split(",")) {
+                String[] pair = part.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value in player spec: " + part);
+                }
+                long value = Long.parseLong(pair[1].trim());
+                switch (pair[0].trim()) {
+                    case "depth": player.depthLimit = (int) value; break;
+                    case "nodes": player.nodeLimit = value; break;
+                    case "movetime": player.timeLimitMillis = value; break;
+                    case "hash": player.hashMegabytes = (int) value; break;
+                    default: throw new IllegalArgumentException("Unknown player setting: " + pair[0]);
+                }
+            }
+            if (player.depthLimit <= 0 && player.nodeLimit <= 0 && player.timeLimitMillis <= 0) {
+                throw new IllegalArgumentException("Player needs a depth, nodes or movetime limit: " + spec);
+            }
+            return player;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        Search newSearch(ChessEngine engine, TranspositionTable table) {
+            Search search = new Search(engine);
+            search.setTranspositionTable(table);
+            if (this.depthLimit > 0) search.setDepthLimit(this.depthLimit);
+            if (this.nodeLimit > 0) search.setNodeLimit(this.nodeLimit);
+            if (this.timeLimitMillis > 0) search.setTimeLimit(this.timeLimitMillis);
+            return search;
+        }
+    }
+
+    /**
+     * Match score from the first player's point of view, with Elo and SPRT statistics.
+     */
+    public static class Statistics {
+        private int wins;
+        private int draws;
+        private int losses;
+        private final double elo0;
+        private final double elo1;
+        private final double lowerBound;
+        private final double upperBound;
+
+        /**
+         * @param elo0 Elo difference of the null hypothesis (e.g., 0)
+         * @param elo1 Elo difference of the alternative hypothesis (e.g., 5)
+         * @param alpha False positive rate
+         * @param beta False negative rate
+         */
+        public Statistics(double elo0, double elo1, double alpha, double beta) {
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            this.lowerBound = Math.log(beta / (1 - alpha));
+            this.upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        /**
+         * Records a game.
+         *
+         * @param score 1 for a win of the first player, 0.5 for a draw, 0 for a loss
+         */
+        public synchronized void record(double score) {
+            if (score > 0.75) this.wins++;
+            else if (score < 0.25) this.losses++;
+            else this.draws++;
+        }
+
+        public synchronized int getGames() {
+            return this.wins + this.draws + this.losses;
+        }
+
+        public synchronized int getWins() {
+            return this.wins;
+        }
+
+        public synchronized int getDraws() {
+            return this.draws;
+        }
+
+        public synchronized int getLosses() {
+            return this.losses;
+        }
+
+        public synchronized double getScore() {
+            int games = getGames();
+            return games == 0 ? 0.5 : (this.wins + 0.5 * this.draws) / games;
+        }
+
+        /**
+         * Get the estimated Elo difference of the first player over the second.
+         *
+         * @return Elo difference (infinite if one side scored everything)
+         */
+        public synchronized double getEloDifference() {
+            return eloFromScore(getScore());
+        }
+
+        /**
+         * Get the half-width of the 95% confidence interval of the Elo difference.
+         *
+         * @return Error margin in Elo
+         */
+        public synchronized double getEloErrorMargin() {
+            int games = getGames();
+            if (games == 0) return Double.POSITIVE_INFINITY;
+            double score = getScore();
+            double deviation = Math.sqrt(variance(score) / games);
+            double low = eloFromScore(Math.max(1e-6, score - 1.96 * deviation));
+            double high = eloFromScore(Math.min(1 - 1e-6, score + 1.96 * deviation));
+            return (high - low) / 2;
+        }
+
+        /**
+         * Get the log-likelihood ratio of elo1 against elo0, using the normal
+         * approximation of the trinomial game outcome.
+         *
+         * @return The LLR (0 before the first decisive result)
+         */
+        public synchronized double getLogLikelihoodRatio() {
+            int games = getGames();
+            double score = getScore();
+            double variance = variance(score);
+            if (games == 0 || variance == 0) return 0;
+            double s0 = scoreFromElo(this.elo0);
+            double s1 = scoreFromElo(this.elo1);
+            return games * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+        }
+
+        /**
+         * Get the SPRT verdict.
+         *
+         * @return "H1" if elo1 is accepted, "H0" if elo0 is accepted, null while undecided
+         */
+        public synchronized String getSprtDecision() {
+            double llr = getLogLikelihoodRatio();
+            if (llr >= this.upperBound) return "H1";
+            if (llr <= this.lowerBound) return "H0";
+            return null;
+        }
+
+        private double variance(double score) {
+            int games = getGames();
+            if (games == 0) return 0;
+            return (this.wins * sq(1 - score) + this.draws * sq(0.5 - score) + this.losses * sq(score)) / games;
+        }
+
+        private static double sq(double x) {
+            return x * x;
+        }
+
+        private static double eloFromScore(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        private static double scoreFromElo(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        @Override
+        public synchronized String toString() {
+            String decision = getSprtDecision();
+            return String.format("Games %d: +%d =%d -%d  score %.1f%%  Elo %+.1f +/- %.1f  LLR %.2f [%.2f, %.2f]%s",
+                getGames(), this.wins, this.draws, this.losses, 100 * getScore(), getEloDifference(),
+                getEloErrorMargin(), getLogLikelihoodRatio(), this.lowerBound, this.upperBound,
+                decision == null ? "" : "  SPRT accepts " + decision);
+        }
+    }
+
+    private final Player first;
+    private final Player second;
+    private final List<byte[]> openings;
+    private final Statistics statistics;
+    private int maxPlies = DEFAULT_MAX_PLIES;
+    private int pgnBatchSize = DEFAULT_PGN_BATCH;
+    private boolean sprtStopping = true;
+    private TablebaseProber tablebases;
+    private Consumer<Statistics> progressListener;
+
+    /**
+     * @param first The player whose strength is being tested
+     * @param second The reference player
+     * @param openings Start positions as engine snapshots (see {@link #loadOpenings(String)})
+     * @param statistics Where results are accumulated
+     */
+    public MatchRunner(Player first, Player second, List<byte[]> openings, Statistics statistics) {
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("At least one opening is needed");
+        }
+        this.first = first;
+        this.second = second;
+        this.openings = openings;
+        this.statistics = statistics;
+    }
+
+    public void setMaxPlies(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Adjudicates games as soon as they reach a position in the endgame tables.
+     *
+     * @param tablebases The tables, or null to play such positions out (the default)
+     */
+    public void setTablebases(TablebaseProber tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Registers a callback for every finished game, given the statistics so far.
+     * It is called on the worker thread that played the game, so several calls
+     * may run at the same time.
+     */
+    public void setProgressListener(Consumer<Statistics> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setPgnBatchSize(int pgnBatchSize) {
+        this.pgnBatchSize = Math.max(1, pgnBatchSize);
+    }
+
+    /**
+     * Chooses whether the match ends as soon as the SPRT reaches a decision.
+     *
+     * @param sprtStopping true to stop early (the default)
+     */
+    public void setSprtStopping(boolean sprtStopping) {
+        this.sprtStopping = sprtStopping;
+    }
+
+    /**
+     * Loads opening positions. PGN files give the position after each game's
+     * moves; other files hold one FEN or EPD record per line.
+     *
+     * @param filePath The opening file
+     * @return The openings as engine snapshots, including any opening moves
+     * @throws ChessFileException if the file cannot be read or holds an invalid opening
+     */
+    public static List<byte[]> loadOpenings(String filePath) throws ChessFileException {
+        List<byte[]> openings = new ArrayList<>();
+        if (filePath.toLowerCase().endsWith(".pgn")) {
+            for (PGNGame game : PGNReader.readGames(filePath)) {
+                ChessEngine engine = new ChessEngine();
+                try {
+                    new PGNReader(engine).replayGame(game);
+                } catch (PGNParseException e) {
+                    throw new ChessFileException("Bad opening in " + filePath + ": " + e.getMessage(), e);
+                }
+                openings.add(engine.toSnapshot());
+            }
+            return openings;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Path.of(filePath));
+        } catch (IOException e) {
+            throw new ChessFileException(filePath, "read", e);
+        }
+        for (String line : lines) {
+            if (line.isBlank() || line.trim().startsWith("#")) continue;
+            try {
+                openings.add(new ChessEngine(EPDPosition.parse(line).getFen()).toSnapshot());
+            } catch (FENParseException e) {
+                throw new ChessFileException("Bad opening in " + filePath + ": " + e.getMessage(), e);
+            }
+        }
+        return openings;
+    }
+
+    /**
+     * Plays up to the given number of games.
+     *
+     * @param games Maximum number of games (rounded up to an even number)
+     * @param threads Games played at the same time
+     * @param pgnPath File finished games are appended to, or null
+     * @return The statistics
+     * @throws ChessFileException if the PGN file cannot be written
+     */
+    public Statistics run(int games, int threads, String pgnPath) throws ChessFileException {
+        int total = games + (games & 1);
+        AtomicInteger nextGame = new AtomicInteger();
+        List<String> pending = new ArrayList<>();
+        ChessFileException[] writeError = new ChessFileException[1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                int index;
+                while ((index = nextGame.getAndIncrement()) < total && !isDecided() && writeError[0] == null) {
+                    String pgn = playGame(index);
+                    if (this.progressListener != null) {
+                        this.progressListener.accept(this.statistics);
+                    }
+                    if (pgnPath == null) continue;
+                    List<String> batch = null;
+                    synchronized (pending) {
+                        pending.add(pgn);
+                        if (pending.size() >= this.pgnBatchSize) {
+                            batch = new ArrayList<>(pending);
+                            pending.clear();
+                        }
+                    }
+                    if (batch != null) {
+                        flush(pgnPath, batch, writeError);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (pgnPath != null) {
+            flush(pgnPath, pending, writeError);
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        return this.statistics;
+    }
+
+    private boolean isDecided() {
+        return this.sprtStopping && this.statistics.getSprtDecision() != null;
+    }
+
+    // Batches are appended one at a time so games from different batches do not interleave
+    private synchronized void flush(String pgnPath, List<String> batch, ChessFileException[] writeError) {
+        try {
+            PGNWriter.appendGames(pgnPath, batch);
+        } catch (ChessFileException e) {
+            writeError[0] = e;
+        }
+    }
+
+    /**
+     * Plays one game of the match.
+     *
+     * @param index Game number; opening index / 2, with the first player white in even games
+     * @return The game as PGN
+     */
+    public String playGame(int index) {
+        boolean firstIsWhite = index % 2 == 0;
+        Player white = firstIsWhite ? this.first : this.second;
+        Player black = firstIsWhite ? this.second : this.first;
+        ChessEngine engine;
+        try {
+            engine = ChessEngine.fromSnapshot(this.openings.get((index / 2) % this.openings.size()));
+        } catch (GameStateException e) {
+            throw new IllegalStateException("Opening snapshot is invalid", e);
+        }
+        GameResult result = playOut(engine, white, black, this.maxPlies, this.tablebases);
+
+        String resultText = PGNWriter.resultString(result);
+        double whiteScore = resultText.equals("1-0") ? 1 : resultText.equals("0-1") ? 0 : 0.5;
+        this.statistics.record(firstIsWhite ? whiteScore : 1 - whiteScore);
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "Match " + this.first.getName() + " vs " + this.second.getName());
+        tags.put("Site", "?");
+        tags.put("Round", Integer.toString(index + 1));
+        tags.put("White", white.getName());
+        tags.put("Black", black.getName());
+        tags.put("Result", resultText);
+        tags.put("Termination", result.getReason());
+        return PGNWriter.formatGame(engine, tags, resultText);
+    }
+
+    /**
+     * Plays a game to its end from the engine's current position.
+     *
+     * @param engine The game, which is continued in place
+     * @param white Player of the white pieces
+     * @param black Player of the black pieces
+     * @param maxPlies Plies after which the game is adjudicated a draw
+     * @param tablebases Tables to adjudicate decided endgames by, or null
+     * @return The final result, with the reason the game ended
+     */
+    static GameResult playOut(ChessEngine engine, Player white, Player black, int maxPlies,
+            TablebaseProber tablebases) {
+        TranspositionTable whiteTable = new TranspositionTable(white.hashMegabytes);
+        TranspositionTable blackTable = new TranspositionTable(black.hashMegabytes);
+        GameResult result = engine.getGameResult();
+        int plies = 0;
+        int lopsidedPlies = 0;
+        int lastWhiteScore = 0;
+        try {
+            while (!result.isGameOver()) {
+                boolean whiteToMove = engine.getCurrentTurn().equals("white");
+                if (!engine.hasLegalMoves()) {
+                    if (engine.isInCheck(engine.getCurrentTurn())) {
+                        result.setResult(whiteToMove ? GameResult.ResultType.BLACK_WIN : GameResult.ResultType.WHITE_WIN,
+                            "Checkmate");
+                    } else {
+                        result.setResult(GameResult.ResultType.DRAW, "Stalemate");
+                    }
+                    break;
+                }
+                if (engine.isFiftyMoveRuleReached()) {
+                    result.setResult(GameResult.ResultType.DRAW, "Draw by the fifty-move rule");
+                    break;
+                }
+                Tablebase.Result known = tablebases == null ? null : tablebases.probe(engine);
+                if (known != null) {
+                    result.adjudicate(known, engine.getSideToMove());
+                    break;
+                }
+                if (plies >= maxPlies) {
+                    result.setResult(GameResult.ResultType.DRAW, "Adjudicated: move limit");
+                    break;
+                }
+                Player mover = whiteToMove ? white : black;
+                SearchResult search = mover.newSearch(engine, whiteToMove ? whiteTable : blackTable).search();
+                // Both sides must see the same side winning by a wide margin for several plies in a row
+                int whiteScore = whiteToMove ? search.getScore() : -search.getScore();
+                boolean lopsided = Math.abs(whiteScore) >= RESIGN_SCORE
+                    && (lopsidedPlies == 0 || Integer.signum(whiteScore) == Integer.signum(lastWhiteScore));
+                lopsidedPlies = lopsided ? lopsidedPlies + 1 : 0;
+                lastWhiteScore = whiteScore;
+                if (lopsidedPlies >= RESIGN_PLIES) {
+                    result.setResult(whiteScore > 0 ? GameResult.ResultType.WHITE_WIN : GameResult.ResultType.BLACK_WIN,
+                        "Adjudicated: " + (whiteScore > 0 ? "black" : "white") + " is lost");
+                    break;
+                }
+                engine.makeMove(search.getBestMove());
+                result = engine.getGameResult();
+                plies++;
+            }
+        } catch (GameStateException | InvalidSquareException | InvalidMoveException e) {
+            result.setResult(GameResult.ResultType.DRAW, "Aborted: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws ChessFileException {
+        if (args.length < 6) {
+            System.out.println("Usage: java MatchRunner openings.(epd|fen|pgn) games threads out.pgn playerA playerB"
+                + " [tablebases]");
+            return;
+        }
+        List<byte[]> openings = loadOpenings(args[0]);
+        int games = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        Player first = Player.parse(args[4]);
+        Player second = Player.parse(args[5]);
+        System.out.println("Playing up to " + games + " games of " + first.getName() + " vs " + second.getName()
+            + " from " + openings.size() + " openings on " + threads + " threads");
+        MatchRunner runner = new MatchRunner(first, second, openings, new Statistics(0, 5, 0.05, 0.05));
+        if (args.length > 6) {
+            runner.setTablebases(TablebaseProber.open(Path.of(args[6]), TablebaseProber.DEFAULT_CACHE_SIZE));
+        }
+        runner.setProgressListener(System.out::println);
+        Statistics statistics = runner.run(games, threads, args[3]);
+        System.out.println("Final: " + statistics);
+    }
+}
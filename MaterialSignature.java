@@ -0,0 +1,149 @@
+import pieces.Piece;
+
+/**
+ * Material signatures: the piece counts of a position packed into an int, used
+ * to recognise positions that cannot (or practically cannot) be won.
+ *
+ * Layout, four bits per field from the least significant end: white knights,
+ * white light-squared bishops, white dark-squared bishops, the same three for
+ * black, then white and black "heavy" material (pawns, rooks and queens). Kings
+ * are not counted. Every field stays below 16 in a legal game, so a signature
+ * can be maintained by adding and subtracting {@link #delta(Piece, int, int)}.
+ *
+ * Signatures without heavy material and with at most three of each minor piece
+ * kind are classified through a 4096-entry table built once at class load;
+ * everything else is decisive.
+ */
+public class MaterialSignature {
+
+    public enum Outcome {
+        DRAWN,         // No sequence of legal moves leads to mate (insufficient material)
+        LIKELY_DRAWN,  // Mate is possible but cannot be forced
+        DECISIVE       // Enough material to play for a win
+    }
+
+    private static final int WHITE_KNIGHT = 0;
+    private static final int WHITE_LIGHT_BISHOP = 4;
+    private static final int WHITE_DARK_BISHOP = 8;
+    private static final int BLACK_KNIGHT = 12;
+    private static final int BLACK_LIGHT_BISHOP = 16;
+    private static final int BLACK_DARK_BISHOP = 20;
+    private static final int WHITE_HEAVY = 24;
+    private static final int BLACK_HEAVY = 28;
+
+    // Heavy material, or four or more of some minor piece kind
+    private static final int OUTSIDE_TABLE = 0xFFCCCCCC;
+
+    private static final Outcome[] TABLE = new Outcome[1 << 12];
+
+    static {
+        for (int index = 0; index < TABLE.length; index++) {
+            TABLE[index] = classifyMinors(index & 3, (index >> 2) & 3, (index >> 4) & 3,
+                (index >> 6) & 3, (index >> 8) & 3, (index >> 10) & 3);
+        }
+    }
+
+    private MaterialSignature() {
+    }
+
+    /**
+     * Computes the signature of a board from scratch.
+     *
+     * @param board The board
+     * @return The material signature
+     */
+    public static int of(Board board) {
+        Square[][] squares = board.getSquares();
+        int signature = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = squares[row][col].getPiece();
+                if (piece != null) {
+                    signature += delta(piece, row, col);
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Get the amount a piece standing on a square adds to a signature.
+     *
+     * @param piece The piece
+     * @param row Row (0-7)
+     * @param col Column (0-7)
+     * @return The increment, 0 for kings
+     */
+    public static int delta(Piece piece, int row, int col) {
+        boolean white = piece.isWhite();
+        int shift;
+        switch (piece.getKind()) {
+            case KNIGHT:
+                shift = white ? WHITE_KNIGHT : BLACK_KNIGHT;
+                break;
+            case BISHOP:
+                boolean light = Square.isLight(Square.index(row, col));
+                shift = white ? (light ? WHITE_LIGHT_BISHOP : WHITE_DARK_BISHOP)
+                              : (light ? BLACK_LIGHT_BISHOP : BLACK_DARK_BISHOP);
+                break;
+            case KING:
+                return 0;
+            default:
+                shift = white ? WHITE_HEAVY : BLACK_HEAVY;
+                break;
+        }
+        return 1 << shift;
+    }
+
+    /**
+     * Classifies a signature with a single table read.
+     *
+     * @param signature The material signature
+     * @return The outcome class
+     */
+    public static Outcome classify(int signature) {
+        if ((signature & OUTSIDE_TABLE) != 0) {
+            return Outcome.DECISIVE;
+        }
+        int index = (signature & 0x3) | ((signature >> 2) & 0xC) | ((signature >> 4) & 0x30)
+            | ((signature >> 6) & 0xC0) | ((signature >> 8) & 0x300) | ((signature >> 10) & 0xC00);
+        return TABLE[index];
+    }
+
+    private static Outcome classifyMinors(int whiteKnights, int whiteLight, int whiteDark,
+                                          int blackKnights, int blackLight, int blackDark) {
+        int knights = whiteKnights + blackKnights;
+        int light = whiteLight + blackLight;
+        int dark = whiteDark + blackDark;
+        // Bare kings, a single minor piece, or bishops that all share one square colour
+        if (knights + light + dark <= 1 || (knights == 0 && (light == 0 || dark == 0))) {
+            return Outcome.DRAWN;
+        }
+        int white = whiteKnights + whiteLight + whiteDark;
+        int black = blackKnights + blackLight + blackDark;
+        if (white > 2 || black > 2 || white + black > 3) {
+            return Outcome.DECISIVE;
+        }
+        if (white <= 1 && black <= 1) {
+            return Outcome.LIKELY_DRAWN;
+        }
+        // One side has two minor pieces
+        boolean whiteStronger = white == 2;
+        int strongKnights = whiteStronger ? whiteKnights : blackKnights;
+        int defenders = whiteStronger ? black : white;
+        if (strongKnights == 2) {
+            return Outcome.LIKELY_DRAWN; // two knights cannot force mate
+        }
+        // Bishop and knight or the bishop pair mates a bare king
+        boolean bishopPair = strongKnights == 0
+            && (whiteStronger ? whiteLight == 1 && whiteDark == 1 : blackLight == 1 && blackDark == 1);
+        if (strongKnights == 0 && !bishopPair) {
+            return Outcome.LIKELY_DRAWN; // two bishops on the same colour
+        }
+        if (defenders == 0) {
+            return Outcome.DECISIVE;
+        }
+        int defendingKnights = whiteStronger ? blackKnights : whiteKnights;
+        return bishopPair && defendingKnights == 1 ? Outcome.DECISIVE : Outcome.LIKELY_DRAWN;
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * A set of named metrics for export, e.g. by a {@link MetricsServer}.
+ *
+ * The registry does not hold values itself: a metric reads its value from a
+ * counter, gauge or {@link LatencyHistogram} that the instrumented code
+ * updates without locks, and only at export time. Metrics are exported in
+ * name order by a pluggable {@link Exporter}; {@link PrometheusExporter}
+ * writes the Prometheus text format.
+ */
+public class MetricsRegistry {
+
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /**
+     * Writes the metrics of a registry in some format.
+     */
+    public interface Exporter {
+        /**
+         * Get the media type of the output, for HTTP responses.
+         */
+        String getContentType();
+
+        /**
+         * Writes all metrics.
+         *
+         * @param metrics The metrics, in name order
+         * @param out Where to write
+         * @throws IOException if writing fails
+         */
+        void export(List<Metric> metrics, Appendable out) throws IOException;
+    }
+
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * A registered metric.
+     */
+    public static final class Metric {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final DoubleSupplier value;
+        private final LatencyHistogram histogram;
+
+        private Metric(String name, String help, Type type, DoubleSupplier value, LatencyHistogram histogram) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getHelp() {
+            return this.help;
+        }
+
+        public Type getType() {
+            return this.type;
+        }
+
+        /**
+         * Get the current value of a counter or gauge.
+         *
+         * @return The value, or NaN for a histogram
+         */
+        public double getValue() {
+            return this.value == null ? Double.NaN : this.value.getAsDouble();
+        }
+
+        /**
+         * Get the histogram of a histogram metric; its values are nanoseconds.
+         *
+         * @return The histogram, or null for a counter or gauge
+         */
+        public LatencyHistogram getHistogram() {
+            return this.histogram;
+        }
+    }
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers a counter, a value that only goes up.
+     *
+     * @param name The metric name, e.g. "chess_moves_made_total"
+     * @param help One line describing the metric
+     * @param value Reads the current value
+     * @throws IllegalArgumentException if the name is invalid or taken
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        register(new Metric(name, help, Type.COUNTER, value, null));
+    }
+
+    /**
+     * Registers a new counter owned by the registry.
+     *
+     * @param name The metric name
+     * @param help One line describing the metric
+     * @return The counter to increment
+     * @throws IllegalArgumentException if the name is invalid or taken
+     */
+    public LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        counter(name, help, adder::sum);
+        return adder;
+    }
+
+    /**
+     * Registers a gauge, a value that goes up and down.
+     *
+     * @param name The metric name
+     * @param help One line describing the metric
+     * @param value Reads the current value
+     * @throws IllegalArgumentException if the name is invalid or taken
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(new Metric(name, help, Type.GAUGE, value, null));
+    }
+
+    /**
+     * Registers a latency histogram.
+     *
+     * @param name The metric name, e.g. "chess_move_generation_seconds"
+     * @param help One line describing the metric
+     * @param histogram The histogram, recording nanoseconds
+     * @throws IllegalArgumentException if the name is invalid or taken
+     */
+    public void histogram(String name, String help, LatencyHistogram histogram) {
+        register(new Metric(name, help, Type.HISTOGRAM, null, histogram));
+    }
+
+    /**
+     * Removes a metric, e.g. when the component it measures shuts down.
+     *
+     * @param name The metric name
+     * @return true if it was registered
+     */
+    public boolean unregister(String name) {
+        return this.metrics.remove(name) != null;
+    }
+
+    /**
+     * Get the registered metrics.
+     *
+     * @return The metrics in name order
+     */
+    public List<Metric> getMetrics() {
+        return new ArrayList<>(this.metrics.values());
+    }
+
+    /**
+     * Writes all metrics.
+     *
+     * @param exporter The format
+     * @param out Where to write
+     * @throws IOException if writing fails
+     */
+    public void export(Exporter exporter, Appendable out) throws IOException {
+        exporter.export(getMetrics(), out);
+    }
+
+    private void register(Metric metric) {
+        if (metric.name == null || !NAME.matcher(metric.name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: " + metric.name);
+        }
+        if (this.metrics.putIfAbsent(metric.name, metric) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + metric.name);
+        }
+    }
+}
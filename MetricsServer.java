@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.*;
+
+/**
+ * Embedded HTTP endpoint serving a {@link MetricsRegistry} to scrapers.
+ *
+ * The server binds to the loopback address only, so the metrics are not
+ * visible from other machines; put a proxy in front to expose them. Each
+ * GET of {@link #PATH} exports the registry with the configured exporter,
+ * reading the current values at that moment. Requests are served by one
+ * daemon thread, so a scraper never competes with the engine for more.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 9464;
+    public static final String PATH = "/metrics";
+
+    private final MetricsRegistry registry;
+    private final MetricsRegistry.Exporter exporter;
+    private final int requestedPort;
+
+    private HttpServer server;
+    private ExecutorService thread;
+
+    /**
+     * Creates a server; nothing is bound until {@link #start()}.
+     *
+     * @param registry The metrics to serve
+     * @param exporter The format, e.g. a {@link PrometheusExporter}
+     * @param port TCP port on the loopback address, or 0 for any free port
+     */
+    public MetricsServer(MetricsRegistry registry, MetricsRegistry.Exporter exporter, int port) {
+        this.registry = registry;
+        this.exporter = exporter;
+        this.requestedPort = port;
+    }
+
+    /**
+     * Binds to the loopback address and starts serving.
+     *
+     * @throws ChessFileException if the port cannot be bound
+     */
+    public synchronized void start() throws ChessFileException {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.requestedPort), 0);
+        } catch (IOException e) {
+            throw new ChessFileException("Cannot listen on port " + this.requestedPort + ": " + e.getMessage(), e);
+        }
+        this.thread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-server");
+            t.setDaemon(true);
+            return t;
+        });
+        this.server.setExecutor(this.thread);
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+    }
+
+    public synchronized int getPort() {
+        return this.server == null ? this.requestedPort : this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving; a scrape in progress may finish.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.server = null;
+        }
+        if (this.thread != null) {
+            this.thread.shutdown();
+            this.thread = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (HttpExchange e = exchange) {
+            String method = e.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                e.getResponseHeaders().set("Allow", "GET, HEAD");
+                e.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder body = new StringBuilder(4096);
+            this.registry.export(this.exporter, body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            e.getResponseHeaders().set("Content-Type", this.exporter.getContentType());
+            if (method.equals("HEAD")) {
+                e.sendResponseHeaders(200, -1);
+                return;
+            }
+            e.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = e.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
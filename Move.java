@@ -7,8 +7,8 @@ public class Move {
     private Piece pieceMoved;
     private Piece pieceCaptured;
 
-    //has pieceMoved been moved before this move
-    private boolean hadPieceBeenMoved;
+    //castling rights of the position before this move (restored on undo)
+    private int previousCastlingRights;
 
     //en passant 
     private boolean isEnPassant;
@@ -21,6 +21,9 @@ public class Move {
     //castle
     private boolean kingSideCastle;
     private boolean queenSideCastle;
+
+    //halfmove clock before this move was made (restored on undo)
+    private int previousHalfmoveClock;
     
     
     //normal move 
@@ -30,7 +33,7 @@ public class Move {
         {
             throw new IllegalArgumentException("You can't move from empty square");
         }
-        if(startSquare.getAlgebraicNotation().equals(endSquare.getAlgebraicNotation()))
+        if(startSquare.getIndex() == endSquare.getIndex())
         {
             throw new IllegalArgumentException("Your move end square should be different from you move start square");
         }
@@ -43,7 +46,6 @@ public class Move {
         this.pawnPromotionPiece = null;
         this.kingSideCastle = false;
         this.queenSideCastle = false;
-        this.hadPieceBeenMoved = this.pieceMoved.hasMoved();
         this.enPassantCapturingSquare = null;
     }
     //special moves (en passant, pawn promotion, castle)
@@ -62,9 +64,26 @@ public class Move {
         this.pawnPromotionPiece = pawnPromotionPiece;
         this.kingSideCastle = kingSideCastle;
         this.queenSideCastle = queenSideCastle;
-        this.hadPieceBeenMoved = this.pieceMoved.hasMoved();
         this.enPassantCapturingSquare = null;
     }
+    //move rebuilt from a snapshot; the pieces need not be on the board
+    Move(Square startSquare, Square endSquare, Piece pieceMoved, Piece pieceCaptured, int previousCastlingRights,
+         boolean isEnPassant, Square enPassantCapturingSquare, Piece pawnPromotionPiece,
+         boolean kingSideCastle, boolean queenSideCastle, int previousHalfmoveClock)
+    {
+        this.startSquare = startSquare;
+        this.endSquare = endSquare;
+        this.pieceMoved = pieceMoved;
+        this.pieceCaptured = pieceCaptured;
+        this.previousCastlingRights = previousCastlingRights;
+        this.isEnPassant = isEnPassant;
+        this.enPassantCapturingSquare = enPassantCapturingSquare;
+        this.isPawnPromotion = pawnPromotionPiece != null;
+        this.pawnPromotionPiece = pawnPromotionPiece;
+        this.kingSideCastle = kingSideCastle;
+        this.queenSideCastle = queenSideCastle;
+        this.previousHalfmoveClock = previousHalfmoveClock;
+    }
     //copy constructor
     public Move(Move other)
     {
@@ -77,8 +96,9 @@ public class Move {
         this.pawnPromotionPiece = other.pawnPromotionPiece;
         this.kingSideCastle = other.kingSideCastle;
         this.queenSideCastle = other.queenSideCastle;
-        this.hadPieceBeenMoved = other.hadPieceBeenMoved;
+        this.previousCastlingRights = other.previousCastlingRights;
         this.enPassantCapturingSquare = other.enPassantCapturingSquare;
+        this.previousHalfmoveClock = other.previousHalfmoveClock;
     }
 
 
@@ -120,14 +140,18 @@ public class Move {
     {
         return this.queenSideCastle;
     }
-    public boolean getHadPieceBeenMoved()
+    public int getPreviousCastlingRights()
     {
-        return this.hadPieceBeenMoved;
+        return this.previousCastlingRights;
     }
     public Square getEnPassantCapturingSquare()
     {
         return this.enPassantCapturingSquare;
     }
+    public int getPreviousHalfmoveClock()
+    {
+        return this.previousHalfmoveClock;
+    }
 
     //setters
     public void setEnpassant()
@@ -150,14 +174,18 @@ public class Move {
     {
         this.pieceCaptured = piece;
     }
-    public void setHadPieceBeenMoved(boolean hadPieceBeenMoved)
+    public void setPreviousCastlingRights(int previousCastlingRights)
     {
-        this.hadPieceBeenMoved = hadPieceBeenMoved;
+        this.previousCastlingRights = previousCastlingRights;
     }
     public void setEnPassantCapturingSquare(Square square)
     {
         this.enPassantCapturingSquare = square;
     }
+    public void setPreviousHalfmoveClock(int previousHalfmoveClock)
+    {
+        this.previousHalfmoveClock = previousHalfmoveClock;
+    }
 
     public boolean areTwoMovesEqual(Move other)
     {
@@ -193,6 +221,31 @@ public class Move {
     }
 
 
+    //get move in coordinate notation (e.g., e2e4, e7e8q), as used by UCI
+    public String toCoordinateNotation()
+    {
+        String notation = this.startSquare.getAlgebraicNotation() + this.endSquare.getAlgebraicNotation();
+        if(this.isPawnPromotion)
+        {
+            notation += this.pawnPromotionPiece.getPieceLetter().toLowerCase();
+        }
+        return notation;
+    }
+
+    //get move packed into an int: from (6 bits) | to (6 bits) | promotion (3 bits: 0 none, 1 N, 2 B, 3 R, 4 Q); squares are row * 8 + col
+    public int toCode()
+    {
+        int from = this.startSquare.getIndex();
+        int to = this.endSquare.getIndex();
+        int promotion = 0;
+        if(this.isPawnPromotion)
+        {
+            promotion = this.pawnPromotionPiece.getKind().ordinal();
+        }
+        return from | (to << 6) | (promotion << 12);
+    }
+
+
     @Override
     public String toString() {
         if(this.kingSideCastle)
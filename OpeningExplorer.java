@@ -0,0 +1,444 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import exceptions.*;
+
+/**
+ * Opening explorer: per-position move statistics aggregated from PGN archives.
+ *
+ * Each position is keyed by its Zobrist hash and holds one record per move
+ * played from it (game count, white wins, draws and the summed average rating
+ * of the games). The child of an edge is found by playing the move and
+ * hashing again, so the tree needs no explicit child pointers.
+ *
+ * The file is a flat array of fixed-size records sorted by (hash, move), after
+ * an 8-byte header, and is queried by binary search over a memory mapping:
+ * <pre>
+ *   int magic, int recordCount
+ *   recordCount x (long hash, short move, int games, int whiteWins, int draws,
+ *                  long ratingSum, int ratedGames)
+ * </pre>
+ * New archives are added with a {@link Builder} and merged into an existing
+ * file in one sequential pass, without replaying the games already counted.
+ */
+public class OpeningExplorer {
+
+    private static final int MAGIC = 0x4D4C4F45; // "MLOE"
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 34;
+
+    /**
+     * Aggregated statistics of one move from one position.
+     */
+    public static class MoveStats {
+        private final int move;
+        private final int games;
+        private final int whiteWins;
+        private final int draws;
+        private final long ratingSum;
+        private final int ratedGames;
+
+        MoveStats(int move, int games, int whiteWins, int draws, long ratingSum, int ratedGames) {
+            this.move = move;
+            this.games = games;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.ratingSum = ratingSum;
+            this.ratedGames = ratedGames;
+        }
+
+        /**
+         * Get the move in coordinate notation (e.g., "e2e4", "e7e8q").
+         *
+         * @return The move as a string
+         */
+        public String getMove() {
+            return decodeMove(this.move);
+        }
+
+        /**
+         * Finds the legal move of the engine's current position that these statistics describe.
+         *
+         * @param engine Engine positioned where the statistics were queried
+         * @return The matching legal move, or null if none matches
+         */
+        public Move toMove(ChessEngine engine) throws InvalidSquareException, GameStateException {
+            for (Move legal : engine.getAllLegalMoves()) {
+                if (legal.toCode() == this.move) {
+                    return legal;
+                }
+            }
+            return null;
+        }
+
+        public int getGames() {
+            return this.games;
+        }
+
+        public int getWhiteWins() {
+            return this.whiteWins;
+        }
+
+        public int getDraws() {
+            return this.draws;
+        }
+
+        public int getBlackWins() {
+            return this.games - this.whiteWins - this.draws;
+        }
+
+        /**
+         * Get the score from white's point of view (wins count 1, draws count 0.5).
+         *
+         * @return Score between 0 and 1
+         */
+        public double getWhiteScore() {
+            return this.games == 0 ? 0.0 : (this.whiteWins + 0.5 * this.draws) / this.games;
+        }
+
+        /**
+         * Get the average rating of the games that had both WhiteElo and BlackElo tags.
+         *
+         * @return Average rating, or 0 if no game was rated
+         */
+        public int getAverageRating() {
+            return this.ratedGames == 0 ? 0 : (int) (this.ratingSum / this.ratedGames);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d games, +%d =%d -%d, avg %d", getMove(), this.games,
+                this.whiteWins, this.draws, getBlackWins(), getAverageRating());
+        }
+    }
+
+    /**
+     * Collects statistics in memory while games are replayed. A builder is
+     * safe to feed from several threads at once.
+     */
+    public static class Builder {
+        private final int maxPly;
+        // position hash -> (move code -> {games, whiteWins, draws, ratingSum, ratedGames})
+        private final Map<Long, Map<Integer, long[]>> positions = new ConcurrentHashMap<>();
+        private final AtomicInteger gamesAdded = new AtomicInteger();
+
+        /**
+         * @param maxPly Number of plies replayed from each game
+         */
+        public Builder(int maxPly) {
+            this.maxPly = maxPly;
+        }
+
+        /**
+         * Replays a game up to the ply limit and counts each move played.
+         * A game with a FEN tag is replayed from that position. Games without a
+         * decisive or drawn result ("*") or with an invalid FEN tag are ignored,
+         * and a game with an unparsable move is counted up to that move.
+         *
+         * @param game The game to add
+         * @return true if the game was counted
+         */
+        public boolean addGame(PGNGame game) {
+            String result = game.getResult();
+            int white;
+            int draw;
+            if (result.equals("1-0")) {
+                white = 1;
+                draw = 0;
+            } else if (result.equals("0-1")) {
+                white = 0;
+                draw = 0;
+            } else if (result.equals("1/2-1/2")) {
+                white = 0;
+                draw = 1;
+            } else {
+                return false;
+            }
+            int rating = averageRating(game);
+
+            ChessEngine engine = new ChessEngine();
+            String fen = game.getTag("FEN");
+            if (fen != null) {
+                try {
+                    engine.loadFen(fen);
+                } catch (FENParseException e) {
+                    return false;
+                }
+            }
+            AlgebraicNotationParser parser = new AlgebraicNotationParser(engine);
+            List<String> moves = game.getMoves();
+            for (int ply = 0; ply < Math.min(this.maxPly, moves.size()); ply++) {
+                try {
+                    Move move = parser.parseMove(moves.get(ply));
+                    if (move == null) break;
+                    long hash = engine.getPositionHash();
+                    long[] stats = this.positions
+                        .computeIfAbsent(hash, h -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(move.toCode(), m -> new long[5]);
+                    synchronized (stats) {
+                        stats[0]++;
+                        stats[1] += white;
+                        stats[2] += draw;
+                        if (rating > 0) {
+                            stats[3] += rating;
+                            stats[4]++;
+                        }
+                    }
+                    engine.makeMove(move);
+                } catch (PGNParseException | InvalidMoveException | InvalidSquareException e) {
+                    break;
+                }
+            }
+            this.gamesAdded.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Adds every game of a PGN archive, replaying games on a fixed thread pool.
+         *
+         * @param pgnPath Path to the PGN archive
+         * @param threads Number of worker threads
+         * @return Number of games counted
+         * @throws ChessFileException if the archive cannot be read
+         */
+        public int addArchive(String pgnPath, int threads) throws ChessFileException {
+            int before = this.gamesAdded.get();
+            // Bounded queue: when workers fall behind the reader thread replays games itself
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+            try {
+                PGNReader.forEachGame(pgnPath, game -> pool.execute(() -> addGame(game)));
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ChessFileException("Opening explorer build interrupted", e);
+            } finally {
+                pool.shutdownNow();
+            }
+            return this.gamesAdded.get() - before;
+        }
+
+        /**
+         * Merges the collected statistics into an explorer file, creating it if needed.
+         * Existing records are read sequentially and summed with the new ones; the
+         * result replaces the file atomically.
+         *
+         * @param explorerPath Path of the explorer file
+         * @throws ChessFileException if the file cannot be read or written
+         */
+        public void mergeInto(String explorerPath) throws ChessFileException {
+            // Flatten and sort the new records by (hash, move)
+            int count = 0;
+            for (Map<Integer, long[]> moves : this.positions.values()) {
+                count += moves.size();
+            }
+            long[] hashes = new long[count];
+            int[] moveCodes = new int[count];
+            long[][] stats = new long[count][];
+            Integer[] order = new Integer[count];
+            int i = 0;
+            for (Map.Entry<Long, Map<Integer, long[]>> position : this.positions.entrySet()) {
+                for (Map.Entry<Integer, long[]> move : position.getValue().entrySet()) {
+                    hashes[i] = position.getKey();
+                    moveCodes[i] = move.getKey();
+                    stats[i] = move.getValue();
+                    order[i] = i;
+                    i++;
+                }
+            }
+            Arrays.sort(order, (a, b) -> compareKeys(hashes[a], moveCodes[a], hashes[b], moveCodes[b]));
+
+            Path target = Path.of(explorerPath);
+            Path temp = Path.of(explorerPath + ".tmp");
+            try {
+                OpeningExplorer existing = Files.exists(target) ? open(explorerPath) : null;
+                long existingCount = existing == null ? 0 : existing.recordCount;
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                    buffer.putInt(MAGIC).putInt(0); // record count patched below
+                    int written = 0;
+                    long e = 0;
+                    int n = 0;
+                    while (e < existingCount || n < count) {
+                        if (buffer.remaining() < RECORD_BYTES) {
+                            flush(out, buffer);
+                        }
+                        int cmp;
+                        if (e >= existingCount) {
+                            cmp = 1;
+                        } else if (n >= count) {
+                            cmp = -1;
+                        } else {
+                            cmp = compareKeys(existing.hashAt(e), existing.moveAt(e), hashes[order[n]], moveCodes[order[n]]);
+                        }
+                        if (cmp < 0) {
+                            existing.copyRecord(e++, buffer);
+                        } else {
+                            long[] s = stats[order[n]];
+                            long[] sum = {s[0], s[1], s[2], s[3], s[4]};
+                            if (cmp == 0) {
+                                MoveStats old = existing.statsAt(e++);
+                                sum[0] += old.games;
+                                sum[1] += old.whiteWins;
+                                sum[2] += old.draws;
+                                sum[3] += old.ratingSum;
+                                sum[4] += old.ratedGames;
+                            }
+                            buffer.putLong(hashes[order[n]]).putShort((short) moveCodes[order[n]])
+                                .putInt((int) sum[0]).putInt((int) sum[1]).putInt((int) sum[2])
+                                .putLong(sum[3]).putInt((int) sum[4]);
+                            n++;
+                        }
+                        written++;
+                    }
+                    flush(out, buffer);
+                    out.write(ByteBuffer.allocate(4).putInt(0, written), 4);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new ChessFileException(explorerPath, "write", e);
+            }
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final long recordCount;
+
+    private OpeningExplorer(MappedByteBuffer buffer, long recordCount) {
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Opens an explorer file by memory-mapping it.
+     *
+     * @param explorerPath Path of the explorer file
+     * @return The opened explorer
+     * @throws ChessFileException if the file cannot be read or is not an explorer file
+     */
+    public static OpeningExplorer open(String explorerPath) throws ChessFileException {
+        try (FileChannel channel = FileChannel.open(Path.of(explorerPath), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new ChessFileException("Not an opening explorer file: " + explorerPath);
+            }
+            return new OpeningExplorer(buffer, buffer.getInt(4) & 0xFFFFFFFFL);
+        } catch (IOException e) {
+            throw new ChessFileException(explorerPath, "open", e);
+        }
+    }
+
+    /**
+     * Get the statistics of every move played from a position.
+     *
+     * @param hash Zobrist hash of the position
+     * @return Move statistics sorted by number of games, most played first
+     */
+    public List<MoveStats> query(long hash) {
+        long lo = 0;
+        long hi = this.recordCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (hashAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<MoveStats> moves = new ArrayList<>();
+        for (long record = lo; record < this.recordCount && hashAt(record) == hash; record++) {
+            moves.add(statsAt(record));
+        }
+        moves.sort((a, b) -> Integer.compare(b.getGames(), a.getGames()));
+        return moves;
+    }
+
+    public List<MoveStats> query(ChessEngine engine) {
+        return query(engine.getPositionHash());
+    }
+
+    public List<MoveStats> query(String fen) {
+        return query(Zobrist.hashFen(fen));
+    }
+
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    private int offset(long record) {
+        return (int) (HEADER_BYTES + record * RECORD_BYTES);
+    }
+
+    private long hashAt(long record) {
+        return this.buffer.getLong(offset(record));
+    }
+
+    private int moveAt(long record) {
+        return this.buffer.getShort(offset(record) + 8) & 0xFFFF;
+    }
+
+    private MoveStats statsAt(long record) {
+        int offset = offset(record);
+        return new MoveStats(this.buffer.getShort(offset + 8) & 0xFFFF, this.buffer.getInt(offset + 10),
+            this.buffer.getInt(offset + 14), this.buffer.getInt(offset + 18),
+            this.buffer.getLong(offset + 22), this.buffer.getInt(offset + 30));
+    }
+
+    private void copyRecord(long record, ByteBuffer out) {
+        int offset = offset(record);
+        for (int i = 0; i < RECORD_BYTES; i++) {
+            out.put(this.buffer.get(offset + i));
+        }
+    }
+
+    private static int compareKeys(long hashA, int moveA, long hashB, int moveB) {
+        int byHash = Long.compare(hashA, hashB);
+        return byHash != 0 ? byHash : Integer.compare(moveA, moveB);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // 0 when either rating is missing or not a number
+    private static int averageRating(PGNGame game) {
+        String white = game.getTag("WhiteElo");
+        String black = game.getTag("BlackElo");
+        if (white == null || black == null) {
+            return 0;
+        }
+        try {
+            return (Integer.parseInt(white.trim()) + Integer.parseInt(black.trim())) / 2;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String decodeMove(int code) {
+        int from = code & 63;
+        int to = (code >>> 6) & 63;
+        int promotion = (code >>> 12) & 7;
+        String text = Square.nameOf(from) + Square.nameOf(to);
+        return promotion == 0 ? text : text + " nbrq".charAt(promotion);
+    }
+}
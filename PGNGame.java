@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single game read from a PGN archive: its tag pairs, the SAN move list
+ * with the comments and numeric annotation glyphs (NAGs) of each move, and
+ * the result token. The moves are not validated until the game is replayed
+ * through a ChessEngine (see {@link PGNReader#replayGame(PGNGame)}).
+ */
+public class PGNGame {
+
+    // Move assessment glyphs, written as move suffixes
+    public static final int NAG_GOOD = 1;
+    public static final int NAG_MISTAKE = 2;
+    public static final int NAG_BRILLIANT = 3;
+    public static final int NAG_BLUNDER = 4;
+    public static final int NAG_SPECULATIVE = 5;
+    public static final int NAG_DUBIOUS = 6;
+
+    private static final String[] SUFFIXES = {null, "!", "?", "!!", "??", "!?", "?!"};
+    private static final int[] NO_NAGS = new int[0];
+
+    private Map<String, String> tags;
+    private List<String> moves;
+    private List<String> comments;
+    private List<int[]> nags;
+    private String initialComment;
+    private String result;
+
+    public PGNGame() {
+        this.tags = new LinkedHashMap<>();
+        this.moves = new ArrayList<>();
+        this.comments = new ArrayList<>();
+        this.nags = new ArrayList<>();
+        this.result = "*";
+    }
+
+    /**
+     * Get the value of a tag pair.
+     *
+     * @param name Tag name (e.g., "White", "WhiteElo")
+     * @return The tag value, or null if the tag is not present
+     */
+    public String getTag(String name) {
+        return this.tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        this.tags.put(name, value);
+    }
+
+    /**
+     * Get all tag pairs in the order they appeared in the file.
+     *
+     * @return Map from tag name to value
+     */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    public List<String> getMoves() {
+        return this.moves;
+    }
+
+    public void addMove(String san) {
+        this.moves.add(san);
+        this.comments.add(null);
+        this.nags.add(NO_NAGS);
+    }
+
+    /**
+     * Get the comment that follows a move.
+     *
+     * @param ply Index of the move in {@link #getMoves()}
+     * @return The comment text, or null if there is none
+     */
+    public String getComment(int ply) {
+        return this.comments.get(ply);
+    }
+
+    public void setComment(int ply, String comment) {
+        this.comments.set(ply, comment);
+    }
+
+    /**
+     * Get the comment before the first move, which usually describes the game.
+     *
+     * @return The comment text, or null if there is none
+     */
+    public String getInitialComment() {
+        return this.initialComment;
+    }
+
+    public void setInitialComment(String initialComment) {
+        this.initialComment = initialComment;
+    }
+
+    /**
+     * Get the numeric annotation glyphs of a move, in the order they were added.
+     *
+     * @param ply Index of the move in {@link #getMoves()}
+     * @return The glyphs, e.g. {@link #NAG_BLUNDER}; empty if there are none
+     */
+    public int[] getNags(int ply) {
+        return this.nags.get(ply).clone();
+    }
+
+    /**
+     * Adds a numeric annotation glyph to a move, unless the move already has it.
+     *
+     * @param ply Index of the move in {@link #getMoves()}
+     * @param nag The glyph, 0 to 255
+     */
+    public void addNag(int ply, int nag) {
+        if (nag < 0 || nag > 255) {
+            throw new IllegalArgumentException("NAG out of range: " + nag);
+        }
+        int[] current = this.nags.get(ply);
+        for (int existing : current) {
+            if (existing == nag) {
+                return;
+            }
+        }
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = nag;
+        this.nags.set(ply, extended);
+    }
+
+    /**
+     * Get the move suffix that stands for a glyph, e.g. "??" for {@link #NAG_BLUNDER}.
+     *
+     * @param nag The glyph
+     * @return The suffix, or null if the glyph has none
+     */
+    public static String suffixOf(int nag) {
+        return nag > 0 && nag < SUFFIXES.length ? SUFFIXES[nag] : null;
+    }
+
+    /**
+     * Get the glyph a move suffix stands for.
+     *
+     * @param suffix The suffix, e.g. "!?"
+     * @return The glyph, or 0 if the suffix is not one of "!", "?", "!!", "??", "!?" and "?!"
+     */
+    public static int nagOf(String suffix) {
+        for (int nag = 1; nag < SUFFIXES.length; nag++) {
+            if (SUFFIXES[nag].equals(suffix)) {
+                return nag;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the game result ("1-0", "0-1", "1/2-1/2" or "*").
+     * The movetext termination marker wins over the Result tag.
+     *
+     * @return The result token
+     */
+    public String getResult() {
+        return this.result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public boolean isEmpty() {
+        return this.tags.isEmpty() && this.moves.isEmpty();
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads PGN games from a byte stream into {@link PGNTree}s in one pass.
+ *
+ * The lexer works on the raw bytes of a buffered stream: there are no lines,
+ * regular expressions or intermediate strings, and only tag values and
+ * comments are decoded (as UTF-8). Variations may be nested to any depth.
+ * The parser is lenient, as real archives are: unbalanced parentheses,
+ * unterminated comments and tags, stray text and a byte order mark are
+ * tolerated, and unknown tokens such as null moves ("--") are kept as moves.
+ *
+ * A game ends at its termination marker ("1-0", "0-1", "1/2-1/2", "*"), at a
+ * tag pair after its movetext, or at the end of the input.
+ */
+public class PGNParser {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Bytes that end a move token
+    private static final boolean[] DELIMITERS = new boolean[256];
+
+    private static final boolean[] TAG_NAME_END = new boolean[256];
+    private static final boolean[] TAG_VALUE_END = new boolean[256];
+    private static final boolean[] COMMENT_END = new boolean[256];
+    private static final boolean[] LINE_END = new boolean[256];
+
+    static {
+        for (int c = 0; c <= ' '; c++) {
+            DELIMITERS[c] = true;
+            TAG_NAME_END[c] = true;
+        }
+        for (char c : "{};()[]$".toCharArray()) {
+            DELIMITERS[c] = true;
+        }
+        TAG_NAME_END['"'] = true;
+        TAG_NAME_END[']'] = true;
+        TAG_VALUE_END['"'] = true;
+        TAG_VALUE_END['\\'] = true;
+        TAG_VALUE_END['\n'] = true;
+        COMMENT_END['}'] = true;
+        LINE_END['\n'] = true;
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean started;
+    private boolean lineStart = true; // for '%' escape lines, which start in the first column
+
+    private byte[] text = new byte[256];
+    private int textLength;
+    private int[] variations = new int[16];
+    private int capacity = 64;
+    private final String[] tagNames = new String[64];
+
+    /**
+     * @param in The PGN input; it is buffered by the parser and not closed
+     */
+    public PGNParser(InputStream in) {
+        this.in = in;
+    }
+
+    private boolean fill() throws IOException {
+        this.limit = Math.max(0, this.in.read(this.buffer, 0, BUFFER_SIZE));
+        this.position = 0;
+        return this.limit > 0;
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    // Only called right after read(), so the byte is still in the buffer
+    private void unread() {
+        this.position--;
+    }
+
+    private void append(int c) {
+        if (this.textLength == this.text.length) {
+            this.text = Arrays.copyOf(this.text, this.textLength * 2);
+        }
+        this.text[this.textLength++] = (byte) c;
+    }
+
+    private String decodeText() {
+        return new String(this.text, 0, this.textLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next game.
+     *
+     * @return The game, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public PGNTree next() throws IOException {
+        if (!this.started) {
+            this.started = true;
+            skipByteOrderMark();
+        }
+        PGNTree tree = null;
+        int current = PGNTree.ROOT;
+        int depth = 0;
+        boolean inMovetext = false;
+        boolean variationStart = false;
+        String pendingComment = null;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c <= ' ') {
+                this.lineStart = c == '\n';
+                continue;
+            }
+            if (c == '%' && this.lineStart) {
+                readUntil('\n');
+                continue;
+            }
+            this.lineStart = false;
+            if (tree == null) {
+                // Games in one archive tend to be alike, so size the tree like the last one
+                tree = new PGNTree(this.capacity);
+            }
+            switch (c) {
+                case '[':
+                    if (inMovetext) {
+                        unread();
+                        return tree;
+                    }
+                    readTag(tree);
+                    break;
+                case '{':
+                case ';': {
+                    readUntil(c == '{' ? '}' : '\n');
+                    this.lineStart = c == ';';
+                    String comment = normalizeComment();
+                    if (comment == null) {
+                        break;
+                    }
+                    if (variationStart) {
+                        pendingComment = join(pendingComment, comment);
+                    } else {
+                        tree.setComment(current, join(tree.getComment(current), comment));
+                    }
+                    break;
+                }
+                case '(':
+                    if (depth == this.variations.length) {
+                        this.variations = Arrays.copyOf(this.variations, depth * 2);
+                    }
+                    this.variations[depth++] = current;
+                    if (current != PGNTree.ROOT) {
+                        current = tree.getParent(current);
+                    }
+                    variationStart = true;
+                    inMovetext = true;
+                    break;
+                case ')':
+                    if (depth > 0) {
+                        current = this.variations[--depth];
+                    }
+                    variationStart = false;
+                    pendingComment = null;
+                    break;
+                case '$': {
+                    int nag = readNumber();
+                    if (current != PGNTree.ROOT && !variationStart) {
+                        tree.addNag(current, nag);
+                    }
+                    break;
+                }
+                default: {
+                    readToken(c);
+                    inMovetext = true;
+                    int start = skipMoveNumber();
+                    if (start == this.textLength) {
+                        break;
+                    }
+                    if (start == 0 && isTermination()) {
+                        if (depth == 0) {
+                            tree.setResult(decodeText());
+                            this.capacity = tree.size() + 16;
+                            return tree;
+                        }
+                        break; // a result inside a variation is ignored
+                    }
+                    int end = this.textLength;
+                    while (end > start && (this.text[end - 1] == '!' || this.text[end - 1] == '?')) {
+                        end--;
+                    }
+                    if (end == start) {
+                        break;
+                    }
+                    current = tree.addMove(current, this.text, start, end - start);
+                    if (end < this.textLength) {
+                        tree.addNag(current, PGNGame.nagOf(new String(this.text, end, this.textLength - end,
+                            StandardCharsets.US_ASCII)));
+                    }
+                    if (pendingComment != null) {
+                        tree.setCommentBefore(current, pendingComment);
+                        pendingComment = null;
+                    }
+                    variationStart = false;
+                }
+            }
+        }
+        return tree == null || tree.isEmpty() ? null : tree;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        if (read() < 0) {
+            return;
+        }
+        unread();
+        if (this.limit - this.position >= 3 && this.buffer[this.position] == (byte) 0xEF
+                && this.buffer[this.position + 1] == (byte) 0xBB && this.buffer[this.position + 2] == (byte) 0xBF) {
+            this.position += 3;
+        }
+    }
+
+    // Reads [Name "value"]; the '[' has been read
+    private void readTag(PGNTree tree) throws IOException {
+        int c = read();
+        while (c >= 0 && c <= ' ' && c != '\n') {
+            c = read();
+        }
+        this.textLength = 0;
+        if (c > ' ' && c != '"' && c != ']') {
+            append(c);
+            c = copyUntil(TAG_NAME_END);
+        }
+        String name = tagName();
+        while (c >= 0 && c != '"' && c != ']' && c != '\n') {
+            c = read();
+        }
+        this.textLength = 0;
+        if (c == '"') {
+            while ((c = copyUntil(TAG_VALUE_END)) == '\\') {
+                c = read();
+                if (c < 0) {
+                    break;
+                }
+                append(c);
+            }
+            while (c >= 0 && c != ']' && c != '\n') {
+                c = read();
+            }
+        }
+        if (!name.isEmpty()) {
+            tree.setTag(name, decodeText());
+        }
+    }
+
+    // Tag names repeat in every game, so their strings are kept by hash of the bytes
+    private String tagName() {
+        int hash = 0;
+        for (int i = 0; i < this.textLength; i++) {
+            hash = 31 * hash + this.text[i];
+        }
+        int slot = hash & (this.tagNames.length - 1);
+        String name = this.tagNames[slot];
+        if (name == null || !is(name)) {
+            name = decodeText();
+            this.tagNames[slot] = name;
+        }
+        return name;
+    }
+
+    private void readUntil(int end) throws IOException {
+        this.textLength = 0;
+        copyUntil(end == '}' ? COMMENT_END : LINE_END);
+    }
+
+    /**
+     * Appends bytes to the text until one of the stop bytes, scanning the buffer directly.
+     *
+     * @return The stop byte, which is consumed, or -1 at the end of the input
+     */
+    private int copyUntil(boolean[] stops) throws IOException {
+        do {
+            byte[] bytes = this.buffer;
+            int end = this.position;
+            int limit = this.limit;
+            if (this.textLength + limit - end > this.text.length) {
+                this.text = Arrays.copyOf(this.text, Math.max(this.text.length * 2, this.textLength + limit - end));
+            }
+            byte[] copy = this.text;
+            int length = this.textLength;
+            while (end < limit) {
+                byte b = bytes[end++];
+                if (stops[b & 0xFF]) {
+                    this.textLength = length;
+                    this.position = end;
+                    return b & 0xFF;
+                }
+                copy[length++] = b;
+            }
+            this.textLength = length;
+            this.position = end;
+        } while (fill());
+        return -1;
+    }
+
+    // Collapses the white space of the text read, so that comments can be rewrapped
+    private String normalizeComment() {
+        int length = 0;
+        boolean space = false;
+        for (int i = 0; i < this.textLength; i++) {
+            byte b = this.text[i];
+            if ((b & 0xFF) <= ' ') {
+                space = length > 0;
+            } else {
+                if (space) {
+                    this.text[length++] = ' ';
+                    space = false;
+                }
+                this.text[length++] = b;
+            }
+        }
+        this.textLength = length;
+        return length == 0 ? null : decodeText();
+    }
+
+    private static String join(String first, String second) {
+        return first == null ? second : first + " " + second;
+    }
+
+    // Reads the digits of a glyph; values above 255 come back as 0
+    private int readNumber() throws IOException {
+        int value = 0;
+        int c;
+        while ((c = read()) >= '0' && c <= '9') {
+            value = Math.min(value * 10 + c - '0', 256);
+        }
+        if (c >= 0) {
+            unread();
+        }
+        return value > 255 ? 0 : value;
+    }
+
+    // Reads a token starting with a byte already read; the delimiter after it is left unread
+    private void readToken(int first) throws IOException {
+        this.textLength = 0;
+        append(first);
+        if (copyUntil(DELIMITERS) >= 0) {
+            unread();
+        }
+    }
+
+    // Get the start of the move in a token, past a move number ("12." or "12..."); the length if there is none
+    private int skipMoveNumber() {
+        int digits = 0;
+        while (digits < this.textLength && this.text[digits] >= '0' && this.text[digits] <= '9') {
+            digits++;
+        }
+        int dots = digits;
+        while (dots < this.textLength && this.text[dots] == '.') {
+            dots++;
+        }
+        if (dots == this.textLength) {
+            return this.textLength;
+        }
+        return digits > 0 && dots > digits ? dots : 0;
+    }
+
+    private boolean isTermination() {
+        return is("1-0") || is("0-1") || is("1/2-1/2") || is("*");
+    }
+
+    private boolean is(String token) {
+        if (this.textLength != token.length()) {
+            return false;
+        }
+        for (int i = 0; i < this.textLength; i++) {
+            if (this.text[i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,7 +1,10 @@
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import exceptions.*;
 
 public class PGNReader {
@@ -14,43 +17,129 @@ public class PGNReader {
         this.parser = new AlgebraicNotationParser(engine);
     }
 
+    /**
+     * Reads the first game of a PGN file and replays its main line on this reader's engine.
+     * If the game has a FEN tag, the engine is first set up in that position.
+     *
+     * @param filePath Path to the PGN file
+     * @return The engine's move log
+     * @throws ChessFileException if the file cannot be read
+     * @throws PGNParseException if the FEN tag is invalid or a move does not match any legal move
+     */
     public List<Move> readPGN(String filePath) throws ChessFileException, PGNParseException {
-        List<Move> moveLog = engine.getMoveLog();
+        try (InputStream in = Files.newInputStream(Path.of(filePath))) {
+            PGNTree tree = new PGNParser(in).next();
+            if (tree != null) {
+                replayGame(tree.toGame());
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(filePath, "read", e);
+        }
+        return engine.getMoveLog();
+    }
+
+    /**
+     * Replays the moves of a game read from an archive on this reader's engine.
+     * If the game has a FEN tag, the engine is first set up in that position.
+     *
+     * @param game The game to replay
+     * @throws PGNParseException if the FEN tag is invalid or a move does not match any legal move
+     */
+    public void replayGame(PGNGame game) throws PGNParseException {
+        EngineMetrics.GameReplayEvent event = EngineMetrics.startGameReplay();
+        int plies = 0;
+        boolean succeeded = false;
         try {
-            String content = Files.readString(Path.of(filePath));
-
-            // Remove headers
-            content = content.replaceAll("\\[.*?\\]", "");
-            // Remove comments { ... }
-            content = content.replaceAll("\\{.*?\\}", "");
-            // Remove game result
-            content = content.replaceAll("1-0|0-1|1/2-1/2", "");
-            // Normalize whitespace
-            content = content.replaceAll("\\s+", " ").trim();
-            // Split moves
-            String[] tokens = content.split(" ");
-
-            for (String token : tokens) {
-                if (token.isBlank()) continue;
-                if (token.matches("\\d+\\.")) continue; // skip move numbers
-                if (token.matches("1-0|0-1|1/2-1/2|\\*")) continue; // skip results
-                String san = token.trim();
-                Move move = parser.parseMove(san);
-                if (move != null) {
-                    try {
-                        engine.makeMove(move);
-                    } catch (InvalidMoveException | InvalidSquareException e) {
-                        throw new PGNParseException(san, e.getMessage());
-                    }
-                } else {
-                    throw new PGNParseException(san, "No matching legal move found");
+            String fen = game.getTag("FEN");
+            if (fen != null) {
+                try {
+                    engine.loadFen(fen);
+                } catch (FENParseException e) {
+                    EngineMetrics.count(EngineMetrics.Counter.PARSE_FAILURES);
+                    throw new PGNParseException("Invalid FEN tag: " + e.getMessage(), e);
                 }
             }
+            for (String san : game.getMoves()) {
+                playMove(san);
+                plies++;
+            }
+            succeeded = true;
+        } finally {
+            if (event != null) {
+                event.plies = plies;
+                event.succeeded = succeeded;
+                event.commit();
+            }
+            EngineMetrics.count(EngineMetrics.Counter.GAMES_REPLAYED);
+            if (!succeeded) {
+                EngineMetrics.count(EngineMetrics.Counter.GAMES_REJECTED);
+            }
+        }
+    }
 
+    /**
+     * Parses a single SAN move and makes it on this reader's engine.
+     *
+     * @param san The move in Standard Algebraic Notation
+     * @throws PGNParseException if the move does not match any legal move
+     */
+    public void playMove(String san) throws PGNParseException {
+        Move move = parser.parseMove(san);
+        if (move != null) {
+            try {
+                engine.makeMove(move);
+            } catch (InvalidMoveException | InvalidSquareException e) {
+                throw new PGNParseException(san, e.getMessage());
+            }
+        } else {
+            throw new PGNParseException(san, "No matching legal move found");
+        }
+    }
+
+    /**
+     * Reads every game of a (possibly multi-game) PGN archive.
+     * The whole archive is kept in memory; use {@link #forEachGame} for large files.
+     *
+     * @param filePath Path to the PGN archive
+     * @return Games in file order
+     * @throws ChessFileException if the file cannot be read
+     */
+    public static List<PGNGame> readGames(String filePath) throws ChessFileException {
+        List<PGNGame> games = new ArrayList<>();
+        forEachGame(filePath, games::add);
+        return games;
+    }
+
+    /**
+     * Streams the games of a PGN archive one at a time, so memory use does not
+     * depend on the archive size. Moves are only tokenized, not validated, and
+     * variations are left out (see {@link #forEachTree} to keep them).
+     *
+     * @param filePath Path to the PGN archive
+     * @param consumer Called once per game, in file order
+     * @throws ChessFileException if the file cannot be read
+     */
+    public static void forEachGame(String filePath, Consumer<PGNGame> consumer) throws ChessFileException {
+        forEachTree(filePath, tree -> consumer.accept(tree.toGame()));
+    }
+
+    /**
+     * Streams the games of a PGN archive as trees holding all their variations,
+     * comments and glyphs.
+     *
+     * @param filePath Path to the PGN archive
+     * @param consumer Called once per game, in file order
+     * @throws ChessFileException if the file cannot be read
+     */
+    public static void forEachTree(String filePath, Consumer<PGNTree> consumer) throws ChessFileException {
+        try (InputStream in = Files.newInputStream(Path.of(filePath))) {
+            PGNParser parser = new PGNParser(in);
+            PGNTree tree;
+            while ((tree = parser.next()) != null) {
+                consumer.accept(tree);
+            }
         } catch (IOException e) {
             throw new ChessFileException(filePath, "read", e);
         }
-
-        return moveLog;
     }
 }
@@ -0,0 +1,380 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import exceptions.*;
+
+/**
+ * Writes many PGN games to one file as a stream, for bulk export.
+ *
+ * Games are encoded straight into a fixed byte buffer that is handed to the
+ * output whenever it fills, so memory use does not depend on the size of a
+ * game or of the file. Moves from a {@link PGNTree} are written from their
+ * packed form without creating strings; tag values and comments are written
+ * as UTF-8. The tags are exactly the ones given, so the caller decides the
+ * Date and every other header. The output may be gzip-compressed on the fly.
+ *
+ * The text of each game is the same as {@link PGNWriter#formatGame(PGNTree)}
+ * gives, and games are separated by a blank line as by
+ * {@link PGNWriter#appendGames}. A writer is not thread-safe.
+ */
+public class PGNStreamWriter implements AutoCloseable {
+
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int LINE_LENGTH = 80;
+
+    private final OutputStream out;
+    private final String name;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private int column; // characters on the current line
+    private long games;
+
+    /**
+     * @param out The output; the writer does its own buffering and closes it when closed
+     * @param name Name of the output for error messages
+     */
+    public PGNStreamWriter(OutputStream out, String name) {
+        this.out = out;
+        this.name = name;
+    }
+
+    /**
+     * Opens a file for writing.
+     *
+     * @param filePath The file, created if needed
+     * @param append Whether to add to the end of an existing file instead of replacing it
+     * @param gzip Whether to gzip-compress the output; appending then adds a gzip member,
+     *             which gzip readers treat as a continuation of the file
+     * @return The writer
+     * @throws ChessFileException if the file cannot be opened
+     */
+    public static PGNStreamWriter open(String filePath, boolean append, boolean gzip) throws ChessFileException {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            OutputStream out = Channels.newOutputStream(channel);
+            if (gzip) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            return new PGNStreamWriter(out, filePath);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // already failing
+                }
+            }
+            throw new ChessFileException(filePath, "open", e);
+        }
+    }
+
+    /**
+     * Get the number of games written so far.
+     */
+    public long getGameCount() {
+        return this.games;
+    }
+
+    /**
+     * Writes a game with all its variations, comments and glyphs.
+     *
+     * @param game The game
+     * @throws ChessFileException if the output cannot be written
+     */
+    public void writeGame(PGNTree game) throws ChessFileException {
+        try {
+            writeTags(game.getTags());
+            writeComment("", game.getComment(PGNTree.ROOT));
+            writeLine(game, PGNTree.ROOT, PGNWriter.startPly(game.getTag("FEN")), true);
+            endGame(game.getResult());
+        } catch (IOException e) {
+            throw new ChessFileException(this.name, "write", e);
+        }
+    }
+
+    /**
+     * Writes a game given as tags and moves. The moves are written as they are,
+     * without replaying them.
+     *
+     * @param tags Tag pairs in output order (a "Result" tag should be included)
+     * @param moves The moves in SAN
+     * @param result Game termination marker: "1-0", "0-1", "1/2-1/2" or "*"
+     * @throws ChessFileException if the output cannot be written
+     */
+    public void writeGame(Map<String, String> tags, List<String> moves, String result) throws ChessFileException {
+        try {
+            writeTags(tags);
+            int ply = PGNWriter.startPly(tags.get("FEN"));
+            for (int i = 0; i < moves.size(); i++) {
+                writeMoveNumber("", ply, i == 0, moves.get(i).length());
+                writeText(moves.get(i));
+                ply++;
+            }
+            endGame(result);
+        } catch (IOException e) {
+            throw new ChessFileException(this.name, "write", e);
+        }
+    }
+
+    /**
+     * Writes the game played in an engine, as {@link PGNWriter#formatGame(ChessEngine, Map, String)}
+     * formats it. The engine is not modified.
+     *
+     * @throws ChessFileException if the output cannot be written
+     */
+    public void writeGame(ChessEngine engine, Map<String, String> tags, String result) throws ChessFileException {
+        try {
+            writeText(PGNWriter.formatGame(engine, tags, result));
+            put('\n');
+            this.column = 0;
+            this.games++;
+        } catch (IOException e) {
+            throw new ChessFileException(this.name, "write", e);
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the output and flushes it. With gzip the
+     * compressor may still hold data until the writer is closed.
+     *
+     * @throws ChessFileException if the output cannot be written
+     */
+    public void flush() throws ChessFileException {
+        try {
+            flushBuffer();
+            this.out.flush();
+        } catch (IOException e) {
+            throw new ChessFileException(this.name, "write", e);
+        }
+    }
+
+    /**
+     * Writes what is buffered, finishes the compression if any, and closes the output.
+     *
+     * @throws ChessFileException if the output cannot be written
+     */
+    @Override
+    public void close() throws ChessFileException {
+        try {
+            try {
+                flushBuffer();
+            } finally {
+                this.out.close();
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(this.name, "close", e);
+        }
+    }
+
+    private void writeTags(Map<String, String> tags) throws IOException {
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            put('[');
+            writeText(tag.getKey());
+            put(' ');
+            put('"');
+            String value = tag.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    put('\\');
+                }
+                writeChar(value, i);
+            }
+            put('"');
+            put(']');
+            put('\n');
+        }
+        put('\n');
+        this.column = 0;
+    }
+
+    // Writes the line after a node; each move is followed by the variations to it
+    private void writeLine(PGNTree tree, int node, int ply, boolean numbered) throws IOException {
+        for (int move = tree.getFirstChild(node); move != PGNTree.NONE; move = tree.getFirstChild(move)) {
+            writeNode(tree, move, "", ply, numbered);
+            numbered = tree.getComment(move) != null;
+            for (int variation = tree.getNextSibling(move); variation != PGNTree.NONE;
+                    variation = tree.getNextSibling(variation)) {
+                writeNode(tree, variation, "(", ply, true);
+                writeLine(tree, variation, ply + 1, tree.getComment(variation) != null);
+                if (this.column + 1 > LINE_LENGTH) {
+                    newLine();
+                }
+                put(')');
+                this.column++;
+                numbered = true;
+            }
+            ply++;
+        }
+    }
+
+    private void writeNode(PGNTree tree, int node, String prefix, int ply, boolean numbered) throws IOException {
+        String before = tree.getCommentBefore(node);
+        if (before != null) {
+            writeComment(prefix, before);
+            prefix = "";
+            numbered = true;
+        }
+        long packed = tree.getPackedMove(node);
+        String san = packed < 0 ? tree.getSan(node) : null;
+        int sanLength = san != null ? san.length() : 8 - Long.numberOfTrailingZeros(packed) / 8;
+        int[] nags = tree.getNags(node);
+        String suffix = nags.length > 0 ? PGNGame.suffixOf(nags[0]) : null;
+        writeMoveNumber(prefix, ply, numbered, sanLength + (suffix == null ? 0 : suffix.length()));
+        if (san != null) {
+            writeText(san);
+        } else {
+            for (int i = 0; i < sanLength; i++) {
+                put((int) (packed >>> (56 - 8 * i)) & 0xFF);
+            }
+        }
+        if (suffix != null) {
+            writeText(suffix);
+        }
+        for (int n = suffix == null ? 0 : 1; n < nags.length; n++) {
+            startToken(1 + digits(nags[n]));
+            put('$');
+            writeNumber(nags[n]);
+        }
+        writeComment("", tree.getComment(node));
+    }
+
+    // Starts a move token with its number when needed; the move itself is written by the caller
+    private void writeMoveNumber(String prefix, int ply, boolean numbered, int moveLength) throws IOException {
+        int number = ply / 2 + 1;
+        boolean white = ply % 2 == 0;
+        int numberLength = white ? digits(number) + 2 : numbered ? digits(number) + 4 : 0;
+        startToken(prefix.length() + numberLength + moveLength);
+        writeText(prefix);
+        if (numberLength > 0) {
+            writeNumber(number);
+            put('.');
+            if (!white) {
+                put('.');
+                put('.');
+            }
+            put(' ');
+        }
+    }
+
+    // Writes a comment word by word so that it wraps like the moves; braces cannot be nested
+    private void writeComment(String prefix, String comment) throws IOException {
+        if (comment == null) {
+            return;
+        }
+        String[] words = comment.replace("}", "").trim().split("\\s+");
+        for (int w = 0; w < words.length; w++) {
+            boolean first = w == 0;
+            boolean last = w == words.length - 1;
+            startToken((first ? prefix.length() + 1 : 0) + words[w].length() + (last ? 1 : 0));
+            if (first) {
+                writeText(prefix);
+                put('{');
+            }
+            writeText(words[w]);
+            if (last) {
+                put('}');
+            }
+        }
+    }
+
+    private void endGame(String result) throws IOException {
+        startToken(result.length());
+        writeText(result);
+        put('\n');
+        put('\n');
+        this.column = 0;
+        this.games++;
+        EngineMetrics.count(EngineMetrics.Counter.GAMES_WRITTEN);
+    }
+
+    // Separates a token of the given length from the last one, on a new line if this one would get too long
+    private void startToken(int length) throws IOException {
+        if (this.column > 0) {
+            if (this.column + 1 + length > LINE_LENGTH) {
+                newLine();
+            } else {
+                put(' ');
+                this.column++;
+            }
+        }
+        this.column += length;
+    }
+
+    private void newLine() throws IOException {
+        put('\n');
+        this.column = 0;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void writeNumber(int value) throws IOException {
+        if (value >= 10) {
+            writeNumber(value / 10);
+        }
+        put('0' + value % 10);
+    }
+
+    // Writes text as UTF-8; the column is kept by the caller
+    private void writeText(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeChar(text, i);
+        }
+    }
+
+    private void writeChar(String text, int i) throws IOException {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+            put(c);
+        } else if (c < 0x800) {
+            put(0xC0 | c >> 6);
+            put(0x80 | c & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+            // Written with its pair; a lone surrogate becomes '?' as in String.getBytes
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(i + 1));
+                put(0xF0 | code >> 18);
+                put(0x80 | code >> 12 & 0x3F);
+                put(0x80 | code >> 6 & 0x3F);
+                put(0x80 | code & 0x3F);
+            } else if (!Character.isLowSurrogate(c) || i == 0 || !Character.isHighSurrogate(text.charAt(i - 1))) {
+                put('?');
+            }
+        } else {
+            put(0xE0 | c >> 12);
+            put(0x80 | c >> 6 & 0x3F);
+            put(0x80 | c & 0x3F);
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (this.count == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        this.buffer[this.count++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PGN game with all its variations, comments and numeric annotation glyphs
+ * (NAGs), as read by {@link PGNParser}.
+ *
+ * The game is a tree of nodes held in parallel arrays rather than one object
+ * per move. Node {@link #ROOT} is the start position; every other node is a
+ * move, linked to its parent, its first child and its next sibling. The first
+ * child of a node continues the line and later siblings are the variations
+ * to it. A move is stored as its SAN text packed into a long, one ASCII byte
+ * per character; the rare longer tokens are kept separately. Moves are not
+ * validated; replay them through a ChessEngine to do so.
+ *
+ * Each node holds up to four glyphs, a comment after its move, and for the
+ * first move of a variation a comment before it. The comment after the root
+ * is the comment before the game's first move.
+ */
+public class PGNTree {
+
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+    public static final int MAX_NAGS = 4;
+
+    private static final int PACKED_LENGTH = 8;
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private String result;
+
+    private long[] moves;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int[] nags;
+    private int[] commentsAfter;
+    private int[] commentsBefore;
+    private int size;
+
+    private final List<String> comments = new ArrayList<>();
+    private final List<String> longMoves = new ArrayList<>();
+
+    public PGNTree() {
+        this(64);
+    }
+
+    PGNTree(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.moves = new long[capacity];
+        this.parents = new int[capacity];
+        this.firstChildren = new int[capacity];
+        this.lastChildren = new int[capacity];
+        this.nextSiblings = new int[capacity];
+        this.nags = new int[capacity];
+        this.commentsAfter = new int[capacity];
+        newNode(NONE, 0);
+    }
+
+    public String getTag(String name) {
+        return this.tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        this.tags.put(name, value);
+    }
+
+    /**
+     * Get all tag pairs in the order they appeared in the file.
+     */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    /**
+     * Get the game result: the movetext termination marker if there was one,
+     * otherwise the Result tag, otherwise "*".
+     */
+    public String getResult() {
+        if (this.result != null) {
+            return this.result;
+        }
+        String tag = this.tags.get("Result");
+        return tag == null ? "*" : tag;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    /**
+     * Get the number of nodes, the root included.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 1 && this.tags.isEmpty() && this.commentsAfter[ROOT] == NONE;
+    }
+
+    /**
+     * Get the parent of a node.
+     *
+     * @return The parent, or {@link #NONE} for the root
+     */
+    public int getParent(int node) {
+        return this.parents[node];
+    }
+
+    /**
+     * Get the first child of a node, the move that continues its line.
+     *
+     * @return The child, or {@link #NONE} if the line ends here
+     */
+    public int getFirstChild(int node) {
+        return this.firstChildren[node];
+    }
+
+    /**
+     * Get the next alternative to a move.
+     *
+     * @return The sibling, or {@link #NONE} if there is no further alternative
+     */
+    public int getNextSibling(int node) {
+        return this.nextSiblings[node];
+    }
+
+    /**
+     * Get the number of moves from the start position to a node.
+     */
+    public int getDepth(int node) {
+        int depth = 0;
+        for (int n = node; n != ROOT; n = this.parents[n]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Get the move of a node in SAN, as it was written without suffix annotations.
+     *
+     * @return The move, or null for the root
+     */
+    public String getSan(int node) {
+        if (node == ROOT) {
+            return null;
+        }
+        long packed = this.moves[node];
+        if (packed < 0) {
+            return this.longMoves.get((int) ~packed);
+        }
+        byte[] text = new byte[PACKED_LENGTH];
+        int length = 0;
+        while (length < PACKED_LENGTH && (packed >>> (56 - 8 * length) & 0xFF) != 0) {
+            text[length] = (byte) (packed >>> (56 - 8 * length));
+            length++;
+        }
+        return new String(text, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the move of a node as packed by {@link #pack(byte[], int, int)}. Equal
+     * moves have equal values, so moves can be compared without decoding them.
+     *
+     * @return The packed move; negative for a token of more than eight characters
+     */
+    public long getPackedMove(int node) {
+        return this.moves[node];
+    }
+
+    /**
+     * Get the numeric annotation glyphs of a node in the order they were added.
+     */
+    public int[] getNags(int node) {
+        int packed = this.nags[node];
+        int count = 0;
+        while (count < MAX_NAGS && (packed >>> (8 * count) & 0xFF) != 0) {
+            count++;
+        }
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = packed >>> (8 * i) & 0xFF;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a numeric annotation glyph to a node. Glyphs beyond {@link #MAX_NAGS}
+     * per node, repeated glyphs and the null glyph 0 are ignored.
+     *
+     * @param node The node
+     * @param nag The glyph, 1 to 255
+     */
+    public void addNag(int node, int nag) {
+        if (nag <= 0 || nag > 255) {
+            return;
+        }
+        int packed = this.nags[node];
+        for (int i = 0; i < MAX_NAGS; i++) {
+            int existing = packed >>> (8 * i) & 0xFF;
+            if (existing == nag) {
+                return;
+            }
+            if (existing == 0) {
+                this.nags[node] = packed | nag << (8 * i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the comment after a node's move; for the root, the comment before the first move.
+     *
+     * @return The comment, or null
+     */
+    public String getComment(int node) {
+        int index = this.commentsAfter[node];
+        return index == NONE ? null : this.comments.get(index);
+    }
+
+    /**
+     * Sets the comment after a node's move, replacing any previous one.
+     */
+    public void setComment(int node, String comment) {
+        this.commentsAfter[node] = store(this.commentsAfter[node], comment);
+    }
+
+    /**
+     * Get the comment before a node's move, which only the first move of a variation has.
+     *
+     * @return The comment, or null
+     */
+    public String getCommentBefore(int node) {
+        int index = this.commentsBefore == null ? NONE : this.commentsBefore[node];
+        return index == NONE ? null : this.comments.get(index);
+    }
+
+    public void setCommentBefore(int node, String comment) {
+        if (this.commentsBefore == null) {
+            // Rare, so only allocated when needed
+            this.commentsBefore = new int[this.moves.length];
+            Arrays.fill(this.commentsBefore, NONE);
+        }
+        this.commentsBefore[node] = store(this.commentsBefore[node], comment);
+    }
+
+    private int store(int index, String comment) {
+        if (comment == null) {
+            return NONE;
+        }
+        if (index == NONE) {
+            this.comments.add(comment);
+            return this.comments.size() - 1;
+        }
+        this.comments.set(index, comment);
+        return index;
+    }
+
+    /**
+     * Adds a move after a node, as its last child: the continuation if the node
+     * has none yet, otherwise a variation.
+     *
+     * @param parent The node the move is played from
+     * @param san The move
+     * @return The new node
+     */
+    public int addMove(int parent, String san) {
+        byte[] text = san.getBytes(StandardCharsets.UTF_8);
+        return addMove(parent, text, 0, text.length);
+    }
+
+    int addMove(int parent, byte[] text, int offset, int length) {
+        long packed = pack(text, offset, length);
+        if (packed == NONE) {
+            this.longMoves.add(new String(text, offset, length, StandardCharsets.UTF_8));
+            packed = ~(long) (this.longMoves.size() - 1);
+        }
+        int node = newNode(parent, packed);
+        if (this.lastChildren[parent] == NONE) {
+            this.firstChildren[parent] = node;
+        } else {
+            this.nextSiblings[this.lastChildren[parent]] = node;
+        }
+        this.lastChildren[parent] = node;
+        return node;
+    }
+
+    /**
+     * Packs up to eight ASCII characters into a long, first character in the high byte.
+     *
+     * @return The packed text, or -1 if it is longer or not ASCII
+     */
+    static long pack(byte[] text, int offset, int length) {
+        if (length > PACKED_LENGTH) {
+            return NONE;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            int c = text[offset + i];
+            if (c <= 0) {
+                return NONE;
+            }
+            packed |= (long) c << (56 - 8 * i);
+        }
+        return packed;
+    }
+
+    private int newNode(int parent, long packed) {
+        if (this.size == this.moves.length) {
+            int capacity = this.size * 2;
+            this.moves = Arrays.copyOf(this.moves, capacity);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+            this.lastChildren = Arrays.copyOf(this.lastChildren, capacity);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+            this.nags = Arrays.copyOf(this.nags, capacity);
+            this.commentsAfter = Arrays.copyOf(this.commentsAfter, capacity);
+            if (this.commentsBefore != null) {
+                this.commentsBefore = Arrays.copyOf(this.commentsBefore, capacity);
+                Arrays.fill(this.commentsBefore, this.size, capacity, NONE);
+            }
+        }
+        int node = this.size++;
+        this.moves[node] = packed;
+        this.parents[node] = parent;
+        this.firstChildren[node] = NONE;
+        this.lastChildren[node] = NONE;
+        this.nextSiblings[node] = NONE;
+        this.nags[node] = 0;
+        this.commentsAfter[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Get the main line, following the first child from the root.
+     *
+     * @return The nodes of the main line, without the root
+     */
+    public int[] getMainLine() {
+        int length = 0;
+        for (int node = this.firstChildren[ROOT]; node != NONE; node = this.firstChildren[node]) {
+            length++;
+        }
+        int[] line = new int[length];
+        int i = 0;
+        for (int node = this.firstChildren[ROOT]; node != NONE; node = this.firstChildren[node]) {
+            line[i++] = node;
+        }
+        return line;
+    }
+
+    /**
+     * Get the main line as a {@link PGNGame}, with its tags, comments, glyphs and result.
+     * Variations and the comments before their moves are left out.
+     */
+    public PGNGame toGame() {
+        PGNGame game = new PGNGame();
+        for (Map.Entry<String, String> tag : this.tags.entrySet()) {
+            game.setTag(tag.getKey(), tag.getValue());
+        }
+        game.setResult(getResult());
+        game.setInitialComment(getComment(ROOT));
+        int ply = 0;
+        for (int node : getMainLine()) {
+            game.addMove(getSan(node));
+            for (int nag : getNags(node)) {
+                game.addNag(ply, nag);
+            }
+            game.setComment(ply, getComment(node));
+            ply++;
+        }
+        return game;
+    }
+}
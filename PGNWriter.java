@@ -1,12 +1,18 @@
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import exceptions.*;
 
 public class PGNWriter {
 
+    private static final int LINE_LENGTH = 80;
+
     private ChessEngine engine;
 
     public PGNWriter(ChessEngine engine) {
@@ -14,57 +20,295 @@ public class PGNWriter {
     }
 
     public void writePGN(String filePath, String event, String whitePlayer, String blackPlayer, String result) throws ChessFileException {
-        List<Move> moves = engine.getMoveLog();
-        StringBuilder sb = new StringBuilder();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", event);
+        tags.put("Site", "?");
+        tags.put("Date", LocalDate.now().toString());
+        tags.put("Round", "1");
+        tags.put("White", whitePlayer);
+        tags.put("Black", blackPlayer);
+        tags.put("Result", result);
 
-        // Headers
-        sb.append("[Event \"" + event + "\"]\n");
-        sb.append("[Site \"?\"]\n");
-        sb.append("[Date \"" + LocalDate.now() + "\"]\n");
-        sb.append("[Round \"1\"]\n");
-        sb.append("[White \"" + whitePlayer + "\"]\n");
-        sb.append("[Black \"" + blackPlayer + "\"]\n");
-        sb.append("[Result \"" + result + "\"]\n\n");
+        try {
+            Files.writeString(Path.of(filePath), formatGame(this.engine, tags, result));
+        } catch (IOException e) {
+            throw new ChessFileException(filePath, "write", e);
+        }
+    }
 
-        // Moves - replay game to generate proper notation with check/checkmate symbols
+    /**
+     * Formats a game as PGN text: the given tags, SetUp/FEN tags if the game did not
+     * start from the standard position, and the movetext in SAN with check symbols.
+     * The engine is not modified; the moves are replayed on a copy.
+     *
+     * @param engine Engine holding the game
+     * @param tags Tag pairs in output order (a "Result" tag should be included)
+     * @param result Game termination marker: "1-0", "0-1", "1/2-1/2" or "*"
+     * @return The PGN text of one game, ending with a newline
+     */
+    public static String formatGame(ChessEngine engine, Map<String, String> tags, String result) {
+        List<Move> moves = engine.getMoveLog();
+        StringBuilder sb = new StringBuilder(256 + 8 * moves.size());
+
+        // Walk a copy back to the starting position, then forward again to write each move
+        ChessEngine replay = null;
         try {
-            ChessEngine tempEngine = new ChessEngine();
-            AlgebraicNotationParser parser = new AlgebraicNotationParser(tempEngine);
-            
-            int moveNumber = 1;
+            replay = ChessEngine.fromSnapshot(engine.toSnapshot());
             for (int i = 0; i < moves.size(); i++) {
-                if (i % 2 == 0) {
-                    sb.append(moveNumber++ + ". ");
-                }
-                
-                Move move = moves.get(i);
-                tempEngine.makeMove(new Move(move)); // Make the move on temp engine
-                
-                try {
-                    String notation = parser.toAlgebraicNotation(move);
-                    sb.append(notation + " ");
-                } catch (Exception e) {
-                    // Fallback to basic notation if something goes wrong
-                    sb.append(move.toString() + " ");
-                }
+                replay.undoMove();
             }
-        } catch (Exception e) {
-            // If replay fails, use basic notation
-            int moveNumber = 1;
-            for (int i = 0; i < moves.size(); i++) {
-                if (i % 2 == 0) {
-                    sb.append(moveNumber++ + ". ");
-                }
-                sb.append(moves.get(i).toString() + " ");
+        } catch (GameStateException | InvalidSquareException e) {
+            replay = null;
+        }
+        String startFen = replay == null ? ChessEngine.START_FEN : replay.toFen();
+
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            appendTag(sb, tag.getKey(), tag.getValue());
+        }
+        if (!startFen.equals(ChessEngine.START_FEN) && !tags.containsKey("FEN")) {
+            appendTag(sb, "SetUp", "1");
+            appendTag(sb, "FEN", startFen);
+        }
+        sb.append('\n');
+
+        int lineStart = sb.length();
+        int moveNumber = replay == null ? 1 : replay.getFullmoveNumber();
+        boolean whiteToMove = replay == null || replay.getCurrentTurn().equals("white");
+        AlgebraicNotationParser parser = replay == null ? null : new AlgebraicNotationParser(replay);
+        for (int i = 0; i < moves.size(); i++) {
+            String token = "";
+            if (whiteToMove) {
+                token = moveNumber + ". ";
+            } else if (i == 0) {
+                token = moveNumber + "... ";
+            }
+            token += sanOf(replay, parser, moves.get(i));
+            lineStart = appendToken(sb, lineStart, token);
+            if (!whiteToMove) {
+                moveNumber++;
             }
+            whiteToMove = !whiteToMove;
+        }
+        appendToken(sb, lineStart, result);
+        sb.append('\n');
+        EngineMetrics.count(EngineMetrics.Counter.GAMES_WRITTEN);
+        return sb.toString();
+    }
+
+    /**
+     * Formats a game read from an archive as PGN text: its tags in their original
+     * order, then its moves with their comments and numeric annotation glyphs.
+     * A glyph that has a move suffix ("!", "?", "!!", "??", "!?", "?!") is written
+     * as that suffix if it is the move's first glyph, others as "$n". The moves are
+     * written as they are, without replaying them.
+     *
+     * @param game The game
+     * @return The PGN text of one game, ending with a newline
+     */
+    public static String formatGame(PGNGame game) {
+        List<String> moves = game.getMoves();
+        StringBuilder sb = new StringBuilder(256 + 12 * moves.size());
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            appendTag(sb, tag.getKey(), tag.getValue());
+        }
+        sb.append('\n');
+
+        int lineStart = appendComment(sb, sb.length(), "", game.getInitialComment());
+        int ply = startPly(game.getTag("FEN"));
+        // Black's move needs its number at the start and after a comment
+        boolean numbered = true;
+        for (int i = 0; i < moves.size(); i++) {
+            lineStart = appendMove(sb, lineStart, "", ply++, numbered, moves.get(i), game.getNags(i));
+            String comment = game.getComment(i);
+            lineStart = appendComment(sb, lineStart, "", comment);
+            numbered = comment != null;
+        }
+        appendToken(sb, lineStart, game.getResult());
+        sb.append('\n');
+        EngineMetrics.count(EngineMetrics.Counter.GAMES_WRITTEN);
+        return sb.toString();
+    }
+
+    /**
+     * Formats a game tree as PGN text: its tags in their original order, then the
+     * main line with each variation in parentheses after the move it replaces.
+     * Comments and glyphs are written as by {@link #formatGame(PGNGame)}. Reading
+     * the text with {@link PGNParser} gives the same tree.
+     *
+     * @param tree The game
+     * @return The PGN text of one game, ending with a newline
+     */
+    public static String formatGame(PGNTree tree) {
+        StringBuilder sb = new StringBuilder(256 + 12 * tree.size());
+        for (Map.Entry<String, String> tag : tree.getTags().entrySet()) {
+            appendTag(sb, tag.getKey(), tag.getValue());
+        }
+        sb.append('\n');
+
+        int lineStart = appendComment(sb, sb.length(), "", tree.getComment(PGNTree.ROOT));
+        lineStart = appendLine(sb, lineStart, tree, PGNTree.ROOT, startPly(tree.getTag("FEN")), true);
+        appendToken(sb, lineStart, tree.getResult());
+        sb.append('\n');
+        EngineMetrics.count(EngineMetrics.Counter.GAMES_WRITTEN);
+        return sb.toString();
+    }
+
+    // Writes the line after a node; each move is followed by the variations to it
+    private static int appendLine(StringBuilder sb, int lineStart, PGNTree tree, int node, int ply, boolean numbered) {
+        for (int move = tree.getFirstChild(node); move != PGNTree.NONE; move = tree.getFirstChild(move)) {
+            lineStart = appendNode(sb, lineStart, tree, move, "", ply, numbered);
+            numbered = tree.getComment(move) != null;
+            for (int variation = tree.getNextSibling(move); variation != PGNTree.NONE;
+                    variation = tree.getNextSibling(variation)) {
+                lineStart = appendNode(sb, lineStart, tree, variation, "(", ply, true);
+                lineStart = appendLine(sb, lineStart, tree, variation, ply + 1, tree.getComment(variation) != null);
+                lineStart = appendGlued(sb, lineStart, ")");
+                numbered = true;
+            }
+            ply++;
+        }
+        return lineStart;
+    }
+
+    private static int appendNode(StringBuilder sb, int lineStart, PGNTree tree, int node, String prefix,
+                                  int ply, boolean numbered) {
+        String before = tree.getCommentBefore(node);
+        if (before != null) {
+            lineStart = appendComment(sb, lineStart, prefix, before);
+            prefix = "";
+            numbered = true;
         }
+        lineStart = appendMove(sb, lineStart, prefix, ply, numbered, tree.getSan(node), tree.getNags(node));
+        return appendComment(sb, lineStart, "", tree.getComment(node));
+    }
 
-        sb.append(result);
+    // Half-moves before the first move: 0 from the standard position, odd when black moves first
+    static int startPly(String fen) {
+        if (fen == null) {
+            return 0;
+        }
+        String[] fields = fen.trim().split("\\s+");
+        int ply = fields.length > 1 && fields[1].equals("b") ? 1 : 0;
+        if (fields.length > 5 && fields[5].matches("\\d{1,6}")) {
+            ply += 2 * (Math.max(1, Integer.parseInt(fields[5])) - 1);
+        }
+        return ply;
+    }
+
+    // Writes a move with its number when needed; the first glyph becomes a suffix if it has one
+    private static int appendMove(StringBuilder sb, int lineStart, String prefix, int ply, boolean numbered,
+                                  String san, int[] nags) {
+        String number = ply % 2 == 0 ? (ply / 2 + 1) + ". " : numbered ? (ply / 2 + 1) + "... " : "";
+        String suffix = nags.length > 0 ? PGNGame.suffixOf(nags[0]) : null;
+        lineStart = appendToken(sb, lineStart, prefix + number + (suffix == null ? san : san + suffix));
+        for (int n = suffix == null ? 0 : 1; n < nags.length; n++) {
+            lineStart = appendToken(sb, lineStart, "$" + nags[n]);
+        }
+        return lineStart;
+    }
 
+    /**
+     * Appends games to a file in one write, creating the file if needed.
+     * Games are separated by a blank line.
+     *
+     * @param filePath The PGN file
+     * @param games Game texts from {@link #formatGame(ChessEngine, Map, String)}
+     * @throws ChessFileException if the file cannot be written
+     */
+    public static void appendGames(String filePath, List<String> games) throws ChessFileException {
+        if (games.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String game : games) {
+            sb.append(game).append('\n');
+        }
         try {
-            Files.writeString(Path.of(filePath), sb.toString());
+            Files.write(Path.of(filePath), sb.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
         } catch (IOException e) {
-            throw new ChessFileException(filePath, "write", e);
+            throw new ChessFileException(filePath, "append to", e);
+        }
+    }
+
+    /**
+     * Get the PGN result marker of a game result.
+     *
+     * @param result The game result
+     * @return "1-0", "0-1", "1/2-1/2", or "*" while the game is in progress
+     */
+    public static String resultString(GameResult result) {
+        switch (result.getResultType()) {
+            case WHITE_WIN:
+            case BLACK_RESIGNED:
+                return "1-0";
+            case BLACK_WIN:
+            case WHITE_RESIGNED:
+                return "0-1";
+            case DRAW:
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    // SAN of the move in the replay position, which is then played; falls back to the move's plain text
+    private static String sanOf(ChessEngine replay, AlgebraicNotationParser parser, Move move) {
+        if (replay != null) {
+            try {
+                Move legal = replay.findMove(move.toCoordinateNotation());
+                if (legal != null) {
+                    String san = parser.toSan(legal);
+                    replay.makeMove(legal);
+                    return san;
+                }
+            } catch (InvalidSquareException | GameStateException | InvalidMoveException e) {
+                // fall through to the plain notation
+            }
+        }
+        return move.toString();
+    }
+
+    private static void appendTag(StringBuilder sb, String name, String value) {
+        sb.append('[').append(name).append(" \"")
+          .append(value.replace("\\", "\\\\").replace("\"", "\\\""))
+          .append("\"]\n");
+    }
+
+    // Appends a comment word by word so that it wraps like the moves; braces cannot be nested
+    private static int appendComment(StringBuilder sb, int lineStart, String prefix, String comment) {
+        if (comment == null) {
+            return lineStart;
+        }
+        String[] words = comment.replace("}", "").trim().split("\\s+");
+        for (int w = 0; w < words.length; w++) {
+            String token = (w == 0 ? prefix + "{" : "") + words[w] + (w == words.length - 1 ? "}" : "");
+            lineStart = appendToken(sb, lineStart, token);
+        }
+        return lineStart;
+    }
+
+    // Appends text to the last token without a space, on a new line if this one would get too long
+    private static int appendGlued(StringBuilder sb, int lineStart, String text) {
+        if (sb.length() - lineStart + text.length() > LINE_LENGTH) {
+            sb.append('\n');
+            lineStart = sb.length();
+        }
+        sb.append(text);
+        return lineStart;
+    }
+
+    // Appends a token, starting a new line when the current one would get too long
+    private static int appendToken(StringBuilder sb, int lineStart, String token) {
+        if (sb.length() > lineStart) {
+            if (sb.length() - lineStart + 1 + token.length() > LINE_LENGTH) {
+                sb.append('\n');
+                lineStart = sb.length();
+            } else {
+                sb.append(' ');
+            }
         }
+        sb.append(token);
+        return lineStart;
     }
 }
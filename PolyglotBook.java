@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import exceptions.*;
+
+/**
+ * Reader for Polyglot (.bin) opening books.
+ *
+ * A book is a sequence of 16-byte big-endian entries sorted by key:
+ * <pre>
+ *   long key, short move, short weight, int learn
+ * </pre>
+ * The file is memory-mapped and searched in place, so opening a book costs
+ * no heap regardless of its size and a lookup touches only O(log n) entries.
+ */
+public class PolyglotBook {
+
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * A book move together with its weight.
+     */
+    public static class BookMove {
+        private final Move move;
+        private final int weight;
+
+        BookMove(Move move, int weight) {
+            this.move = move;
+            this.weight = weight;
+        }
+
+        public Move getMove() {
+            return this.move;
+        }
+
+        public int getWeight() {
+            return this.weight;
+        }
+
+        @Override
+        public String toString() {
+            return this.move + " (" + this.weight + ")";
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final long entryCount;
+    private final PolyglotKey keys;
+
+    private PolyglotBook(MappedByteBuffer buffer, long entryCount, PolyglotKey keys) {
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+        this.keys = keys;
+    }
+
+    /**
+     * Opens a Polyglot book by memory-mapping it.
+     *
+     * @param bookPath Path to the .bin file
+     * @param keys Polyglot key generator (see {@link PolyglotKey#load})
+     * @return The opened book
+     * @throws ChessFileException if the file cannot be read or its size is not a multiple of 16 bytes
+     */
+    public static PolyglotBook open(String bookPath, PolyglotKey keys) throws ChessFileException {
+        try (FileChannel channel = FileChannel.open(Path.of(bookPath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_BYTES != 0) {
+                throw new ChessFileException("Not a Polyglot book (size " + size + " is not a multiple of 16): " + bookPath);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new PolyglotBook(buffer, size / ENTRY_BYTES, keys);
+        } catch (IOException e) {
+            throw new ChessFileException(bookPath, "open", e);
+        }
+    }
+
+    /**
+     * Get all book moves for the engine's current position that are legal there.
+     *
+     * @param engine The engine
+     * @return Book moves sorted by weight, heaviest first; empty if the position is not in the book
+     */
+    public List<BookMove> getMoves(ChessEngine engine) throws InvalidSquareException, GameStateException {
+        List<BookMove> moves = new ArrayList<>();
+        long key = this.keys.hash(engine);
+        long first = findFirst(key);
+        if (first == this.entryCount || keyAt(first) != key) {
+            return moves;
+        }
+        List<Move> legalMoves = engine.getAllLegalMoves();
+        for (long entry = first; entry < this.entryCount && keyAt(entry) == key; entry++) {
+            int offset = (int) (entry * ENTRY_BYTES);
+            int bookMove = this.buffer.getShort(offset + 8) & 0xFFFF;
+            int weight = this.buffer.getShort(offset + 10) & 0xFFFF;
+            Move move = toMove(bookMove, legalMoves);
+            if (move != null) {
+                moves.add(new BookMove(move, weight));
+            }
+        }
+        moves.sort((a, b) -> Integer.compare(b.getWeight(), a.getWeight()));
+        return moves;
+    }
+
+    /**
+     * Picks a book move at random, in proportion to the move weights.
+     *
+     * @param engine The engine
+     * @param random Random source
+     * @return A book move, or null if the position is not in the book
+     */
+    public Move pickMove(ChessEngine engine, Random random) throws InvalidSquareException, GameStateException {
+        List<BookMove> moves = getMoves(engine);
+        int total = 0;
+        for (BookMove move : moves) {
+            total += move.getWeight();
+        }
+        if (moves.isEmpty()) {
+            return null;
+        }
+        if (total == 0) {
+            return moves.get(random.nextInt(moves.size())).getMove();
+        }
+        int pick = random.nextInt(total);
+        for (BookMove move : moves) {
+            pick -= move.getWeight();
+            if (pick < 0) {
+                return move.getMove();
+            }
+        }
+        return moves.get(0).getMove();
+    }
+
+    /**
+     * Get the heaviest book move for the current position.
+     *
+     * @param engine The engine
+     * @return The best book move, or null if the position is not in the book
+     */
+    public Move getBestMove(ChessEngine engine) throws InvalidSquareException, GameStateException {
+        List<BookMove> moves = getMoves(engine);
+        return moves.isEmpty() ? null : moves.get(0).getMove();
+    }
+
+    public long getEntryCount() {
+        return this.entryCount;
+    }
+
+    private long keyAt(long entry) {
+        return this.buffer.getLong((int) (entry * ENTRY_BYTES));
+    }
+
+    // Lower bound for an unsigned key
+    private long findFirst(long key) {
+        long lo = 0;
+        long hi = this.entryCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /*
+     * Polyglot move bits: to file (0-2), to rank (3-5), from file (6-8), from rank (9-11),
+     * promotion (12-14: 0 none, 1 knight, 2 bishop, 3 rook, 4 queen). Ranks count from 1 = 0.
+     * Castling is written as the king capturing its own rook (e1h1, e1a1, e8h8, e8a8).
+     */
+    private static Move toMove(int bookMove, List<Move> legalMoves) {
+        int toCol = bookMove & 7;
+        int toRow = 7 - ((bookMove >>> 3) & 7);
+        int fromCol = (bookMove >>> 6) & 7;
+        int fromRow = 7 - ((bookMove >>> 9) & 7);
+        int promotion = (bookMove >>> 12) & 7;
+        String promotionLetter = promotion == 0 ? "" : String.valueOf(" NBRQ".charAt(promotion));
+
+        for (Move move : legalMoves) {
+            if (move.getStartSquare().getRow() != fromRow || move.getStartSquare().getCol() != fromCol) {
+                continue;
+            }
+            if (move.getKingSideCastle() || move.getQueenSideCastle()) {
+                int rookCol = move.getKingSideCastle() ? 7 : 0;
+                if (toRow == fromRow && (toCol == rookCol || toCol == move.getEndSquare().getCol())) {
+                    return move;
+                }
+                continue;
+            }
+            if (move.getEndSquare().getRow() != toRow || move.getEndSquare().getCol() != toCol) {
+                continue;
+            }
+            String movePromotion = move.getIsPawnPromotion() ? move.getPawnPromotionPiece().getPieceLetter() : "";
+            if (movePromotion.equals(promotionLetter)) {
+                return move;
+            }
+        }
+        return null;
+    }
+}
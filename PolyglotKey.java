@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import pieces.Piece;
+import pieces.PieceColor;
+import exceptions.*;
+
+/**
+ * Position hashing compatible with Polyglot opening books.
+ *
+ * Polyglot keys are Zobrist hashes over a fixed table of 781 published 64-bit
+ * constants ("Random64"): 768 piece-square keys, 4 castling keys, 8 en passant
+ * file keys and one side-to-move key. The table is read from a text file with
+ * one hexadecimal constant per line (an optional "0x" prefix and trailing
+ * commas are accepted), in the order of the Polyglot book format specification.
+ */
+public class PolyglotKey {
+
+    public static final int TABLE_SIZE = 781;
+
+    private static final int CASTLE_OFFSET = 768;
+    private static final int EN_PASSANT_OFFSET = 772;
+    private static final int TURN_OFFSET = 780;
+
+    private final long[] random64;
+
+    private PolyglotKey(long[] random64) {
+        this.random64 = random64;
+    }
+
+    /**
+     * Loads the Random64 table.
+     *
+     * @param tablePath Path to the text file holding the 781 constants
+     * @return The key generator
+     * @throws ChessFileException if the file cannot be read or does not hold exactly 781 constants
+     */
+    public static PolyglotKey load(String tablePath) throws ChessFileException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Path.of(tablePath));
+        } catch (IOException e) {
+            throw new ChessFileException(tablePath, "read", e);
+        }
+        long[] table = new long[TABLE_SIZE];
+        int count = 0;
+        for (String line : lines) {
+            for (String token : line.split("[,\\s]+")) {
+                if (token.isEmpty()) continue;
+                if (token.startsWith("0x") || token.startsWith("0X")) {
+                    token = token.substring(2);
+                }
+                token = token.replaceAll("[uUlL]+$", "");
+                if (count == TABLE_SIZE) {
+                    throw new ChessFileException("Random64 table has more than " + TABLE_SIZE + " entries: " + tablePath);
+                }
+                try {
+                    table[count++] = Long.parseUnsignedLong(token, 16);
+                } catch (NumberFormatException e) {
+                    throw new ChessFileException("Invalid Random64 entry '" + token + "' in " + tablePath, e);
+                }
+            }
+        }
+        if (count != TABLE_SIZE) {
+            throw new ChessFileException("Random64 table has " + count + " entries, expected " + TABLE_SIZE + ": " + tablePath);
+        }
+        return new PolyglotKey(table);
+    }
+
+    /**
+     * Computes the Polyglot key of the engine's current position.
+     *
+     * @param engine The engine
+     * @return The 64-bit Polyglot key
+     */
+    public long hash(ChessEngine engine) {
+        Square[][] squares = engine.getBoard().getSquares();
+        long key = 0L;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = squares[row][col].getPiece();
+                if (piece != null) {
+                    key ^= this.random64[64 * pieceKind(piece) + 8 * (7 - row) + col];
+                }
+            }
+        }
+        int castling = engine.getBoard().getCastlingRights();
+        for (int i = 0; i < 4; i++) {
+            if ((castling & (1 << i)) != 0) {
+                key ^= this.random64[CASTLE_OFFSET + i];
+            }
+        }
+        int epFile = Zobrist.enPassantFile(engine);
+        if (epFile >= 0) {
+            key ^= this.random64[EN_PASSANT_OFFSET + epFile];
+        }
+        if (engine.getSideToMove() == PieceColor.WHITE) {
+            key ^= this.random64[TURN_OFFSET];
+        }
+        return key;
+    }
+
+    // black pawn 0, white pawn 1, black knight 2, ..., black king 10, white king 11
+    private static int pieceKind(Piece piece) {
+        int kind = 2 * piece.getKind().ordinal();
+        return piece.isWhite() ? kind + 1 : kind;
+    }
+}
@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import exceptions.*;
+
+/**
+ * On-disk index answering "which games reached this position?".
+ *
+ * The index maps 64-bit Zobrist position hashes to (game id, ply) postings,
+ * where the game id is the 0-based position of the game in the archive and
+ * ply 0 is the starting position. It is stored as a directory of run files.
+ * Each run covers a consecutive batch of games and holds its postings sorted
+ * by (hash, game id, ply), followed by a sparse fence index holding every
+ * {@value #FENCE_INTERVAL}th hash. Runs are memory-mapped when the index is
+ * opened; only the fences are kept on the heap.
+ *
+ * Run file layout (big-endian):
+ * <pre>
+ *   int magic, int version, long entryCount, int fenceInterval, int fenceCount
+ *   entryCount x (long hash, int gameId, int ply)
+ *   fenceCount x long hash
+ * </pre>
+ */
+public class PositionIndex {
+
+    public static final int FENCE_INTERVAL = 128;
+    public static final int GAMES_PER_RUN = 2000;
+
+    private static final int MAGIC = 0x4D4C5049; // "MLPI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int ENTRY_BYTES = 16;
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".pidx";
+
+    /**
+     * One occurrence of a position: the game it occurred in and the ply at which it occurred.
+     */
+    public static class Posting {
+        private final int gameId;
+        private final int ply;
+
+        public Posting(int gameId, int ply) {
+            this.gameId = gameId;
+            this.ply = ply;
+        }
+
+        public int getGameId() {
+            return this.gameId;
+        }
+
+        public int getPly() {
+            return this.ply;
+        }
+
+        @Override
+        public String toString() {
+            return "game " + this.gameId + " ply " + this.ply;
+        }
+    }
+
+    private static class Run {
+        private final MappedByteBuffer buffer;
+        private final long entryCount;
+        private final long[] fences;
+
+        Run(MappedByteBuffer buffer, long entryCount, long[] fences) {
+            this.buffer = buffer;
+            this.entryCount = entryCount;
+            this.fences = fences;
+        }
+
+        long hashAt(long entry) {
+            return this.buffer.getLong((int) (HEADER_BYTES + entry * ENTRY_BYTES));
+        }
+
+        // Postings of this run for a hash, sorted by (gameId, ply)
+        List<Posting> lookup(long hash) {
+            List<Posting> postings = new ArrayList<>();
+            // Last fence strictly below the hash bounds the block holding the first match
+            int lo = 0;
+            int hi = this.fences.length - 1;
+            int block = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.fences[mid] < hash) {
+                    block = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            long first = Math.max(0, (long) block * FENCE_INTERVAL);
+            long last = Math.min(this.entryCount, first + FENCE_INTERVAL + 1);
+            // Lower bound inside the block
+            while (first < last) {
+                long mid = (first + last) >>> 1;
+                if (hashAt(mid) < hash) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            for (long entry = first; entry < this.entryCount && hashAt(entry) == hash; entry++) {
+                int offset = (int) (HEADER_BYTES + entry * ENTRY_BYTES);
+                postings.add(new Posting(this.buffer.getInt(offset + 8), this.buffer.getInt(offset + 12)));
+            }
+            return postings;
+        }
+    }
+
+    private final List<Run> runs;
+
+    private PositionIndex(List<Run> runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * Builds an index over a PGN archive. Games are read sequentially and replayed
+     * in batches of {@value #GAMES_PER_RUN} on a fixed thread pool, each batch
+     * producing one sorted run file. A game with an illegal or unparsable move is
+     * indexed up to the last position reached before the bad move.
+     *
+     * @param pgnPath Path to the PGN archive
+     * @param indexDir Directory to write the run files to (created if missing, existing runs are replaced)
+     * @param threads Number of worker threads
+     * @return Number of games indexed
+     * @throws ChessFileException if the archive cannot be read or a run cannot be written
+     */
+    public static int build(String pgnPath, String indexDir, int threads) throws ChessFileException {
+        Path dir = Path.of(indexDir);
+        try {
+            Files.createDirectories(dir);
+            for (Path run : listRuns(dir)) {
+                Files.delete(run);
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(indexDir, "prepare", e);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> pending = new ArrayList<>();
+        List<PGNGame> batch = new ArrayList<>();
+        int[] gameCount = {0};
+        try {
+            PGNReader.forEachGame(pgnPath, game -> {
+                batch.add(game);
+                gameCount[0]++;
+                if (batch.size() == GAMES_PER_RUN) {
+                    submitRun(pool, pending, new ArrayList<>(batch), gameCount[0] - batch.size(), dir, threads);
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                submitRun(pool, pending, new ArrayList<>(batch), gameCount[0] - batch.size(), dir, threads);
+            }
+            for (Future<Void> future : pending) {
+                awaitRun(future, indexDir);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return gameCount[0];
+    }
+
+    private static void submitRun(ExecutorService pool, List<Future<Void>> pending, List<PGNGame> games,
+                                  int firstGameId, Path dir, int threads) {
+        int runNumber = pending.size();
+        Path runPath = dir.resolve(String.format("%s%05d%s", RUN_PREFIX, runNumber, RUN_SUFFIX));
+        pending.add(pool.submit(() -> {
+            writeRun(games, firstGameId, runPath);
+            return null;
+        }));
+        // Keep the reader from running too far ahead of the workers
+        int oldestActive = pending.size() - 2 * threads;
+        if (oldestActive >= 0) {
+            try {
+                pending.get(oldestActive).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // reported again when all runs are awaited
+            }
+        }
+    }
+
+    private static void awaitRun(Future<Void> future, String indexDir) throws ChessFileException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChessFileException("Index build interrupted", e);
+        } catch (ExecutionException e) {
+            throw new ChessFileException(indexDir, "write", e.getCause());
+        }
+    }
+
+    private static void writeRun(List<PGNGame> games, int firstGameId, Path runPath) throws IOException {
+        long[] hashes = new long[games.size() * 64];
+        long[] postings = new long[hashes.length];
+        int size = 0;
+        for (int i = 0; i < games.size(); i++) {
+            int gameId = firstGameId + i;
+            ChessEngine engine = new ChessEngine();
+            String fen = games.get(i).getTag("FEN");
+            if (fen != null) {
+                try {
+                    engine.loadFen(fen);
+                } catch (FENParseException e) {
+                    continue; // a game whose start position is unknown gets no postings
+                }
+            }
+            PGNReader reader = new PGNReader(engine);
+            List<String> moves = games.get(i).getMoves();
+            for (int ply = 0; ply <= moves.size(); ply++) {
+                if (size == hashes.length) {
+                    hashes = java.util.Arrays.copyOf(hashes, size * 2);
+                    postings = java.util.Arrays.copyOf(postings, size * 2);
+                }
+                hashes[size] = engine.getPositionHash();
+                postings[size] = ((long) gameId << 32) | ply;
+                size++;
+                if (ply == moves.size()) break;
+                try {
+                    reader.playMove(moves.get(ply));
+                } catch (PGNParseException e) {
+                    break;
+                }
+            }
+        }
+        sort(hashes, postings, 0, size - 1);
+
+        int fenceCount = (size + FENCE_INTERVAL - 1) / FENCE_INTERVAL;
+        try (FileChannel channel = FileChannel.open(runPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(size).putInt(FENCE_INTERVAL).putInt(fenceCount);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < ENTRY_BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(hashes[i]).putInt((int) (postings[i] >>> 32)).putInt((int) postings[i]);
+            }
+            for (int i = 0; i < size; i += FENCE_INTERVAL) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(hashes[i]);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Quicksort of two parallel arrays by (hash, posting)
+    private static void sort(long[] hashes, long[] postings, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotHash = hashes[mid];
+            long pivotPosting = postings[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(hashes[i], postings[i], pivotHash, pivotPosting) < 0) i++;
+                while (compare(hashes[j], postings[j], pivotHash, pivotPosting) > 0) j--;
+                if (i <= j) {
+                    swap(hashes, postings, i++, j--);
+                }
+            }
+            // Recurse into the smaller half to bound stack depth
+            if (j - lo < hi - i) {
+                sort(hashes, postings, lo, j);
+                lo = i;
+            } else {
+                sort(hashes, postings, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(hashes[j], postings[j], hashes[j - 1], postings[j - 1]) < 0; j--) {
+                swap(hashes, postings, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(long hashA, long postingA, long hashB, long postingB) {
+        int byHash = Long.compare(hashA, hashB);
+        return byHash != 0 ? byHash : Long.compare(postingA, postingB);
+    }
+
+    private static void swap(long[] hashes, long[] postings, int a, int b) {
+        long hash = hashes[a];
+        hashes[a] = hashes[b];
+        hashes[b] = hash;
+        long posting = postings[a];
+        postings[a] = postings[b];
+        postings[b] = posting;
+    }
+
+    /**
+     * Opens an index directory written by {@link #build}, memory-mapping every run.
+     *
+     * @param indexDir The index directory
+     * @return The opened index
+     * @throws ChessFileException if a run cannot be read or is not a valid run file
+     */
+    public static PositionIndex open(String indexDir) throws ChessFileException {
+        List<Run> runs = new ArrayList<>();
+        try {
+            for (Path runPath : listRuns(Path.of(indexDir))) {
+                try (FileChannel channel = FileChannel.open(runPath, StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                        throw new ChessFileException("Not a position index run: " + runPath);
+                    }
+                    long entryCount = buffer.getLong(8);
+                    int fenceCount = buffer.getInt(20);
+                    long[] fences = new long[fenceCount];
+                    int fenceOffset = (int) (HEADER_BYTES + entryCount * ENTRY_BYTES);
+                    for (int i = 0; i < fenceCount; i++) {
+                        fences[i] = buffer.getLong(fenceOffset + i * Long.BYTES);
+                    }
+                    runs.add(new Run(buffer, entryCount, fences));
+                }
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(indexDir, "open", e);
+        }
+        return new PositionIndex(runs);
+    }
+
+    private static List<Path> listRuns(Path dir) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, RUN_PREFIX + "*" + RUN_SUFFIX)) {
+            for (Path path : stream) {
+                runs.add(path);
+            }
+        }
+        runs.sort(null);
+        return runs;
+    }
+
+    /**
+     * Finds every occurrence of a position hash.
+     *
+     * @param hash Zobrist hash of the position
+     * @return Postings sorted by (game id, ply), merged across all runs
+     */
+    public List<Posting> query(long hash) {
+        List<List<Posting>> perRun = new ArrayList<>();
+        for (Run run : this.runs) {
+            List<Posting> postings = run.lookup(hash);
+            if (!postings.isEmpty()) {
+                perRun.add(postings);
+            }
+        }
+        // k-way merge; each head is {run, position in that run's postings}
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            Posting pa = perRun.get(a[0]).get(a[1]);
+            Posting pb = perRun.get(b[0]).get(b[1]);
+            return pa.getGameId() != pb.getGameId()
+                ? Integer.compare(pa.getGameId(), pb.getGameId())
+                : Integer.compare(pa.getPly(), pb.getPly());
+        });
+        for (int i = 0; i < perRun.size(); i++) {
+            heads.add(new int[]{i, 0});
+        }
+        List<Posting> merged = new ArrayList<>();
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Posting> postings = perRun.get(head[0]);
+            merged.add(postings.get(head[1]));
+            if (++head[1] < postings.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Finds every game that reached the engine's current position.
+     *
+     * @param engine Engine holding the position to look up
+     * @return Postings sorted by (game id, ply)
+     */
+    public List<Posting> query(ChessEngine engine) {
+        return query(engine.getPositionHash());
+    }
+
+    /**
+     * Finds every game that reached a position given as FEN.
+     *
+     * @param fen The position in Forsyth-Edwards Notation
+     * @return Postings sorted by (game id, ply)
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    public List<Posting> query(String fen) {
+        return query(Zobrist.hashFen(fen));
+    }
+
+    public int getRunCount() {
+        return this.runs.size();
+    }
+}
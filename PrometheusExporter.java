@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Writes metrics in the Prometheus text exposition format, version 0.0.4.
+ *
+ * Histograms are converted from nanoseconds to seconds and exported with a
+ * fixed set of cumulative buckets from 1 microsecond to 10 seconds. As the
+ * underlying {@link LatencyHistogram} only knows values to within its bucket
+ * precision, a bucket counts the values that are certainly within its bound.
+ */
+public class PrometheusExporter implements MetricsRegistry.Exporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Upper bounds of the exported buckets in seconds
+    private static final double[] BUCKET_BOUNDS = {
+        0.000001, 0.0000025, 0.000005, 0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void export(List<MetricsRegistry.Metric> metrics, Appendable out) throws IOException {
+        for (MetricsRegistry.Metric metric : metrics) {
+            String name = metric.getName();
+            if (metric.getHelp() != null) {
+                out.append("# HELP ").append(name).append(' ').append(escapeHelp(metric.getHelp())).append('\n');
+            }
+            out.append("# TYPE ").append(name).append(' ')
+                .append(metric.getType().name().toLowerCase()).append('\n');
+            if (metric.getType() == MetricsRegistry.Type.HISTOGRAM) {
+                writeHistogram(name, metric.getHistogram(), out);
+            } else {
+                out.append(name).append(' ').append(format(metric.getValue())).append('\n');
+            }
+        }
+    }
+
+    private static void writeHistogram(String name, LatencyHistogram histogram, Appendable out) throws IOException {
+        // Read the total first so that no bucket exceeds the count
+        long sumNanos = histogram.getTotalNanos();
+        long count = histogram.getCount();
+        for (double bound : BUCKET_BOUNDS) {
+            long below = Math.min(count, histogram.getCountAtOrBelow(Math.round(bound * 1e9)));
+            out.append(name).append("_bucket{le=\"").append(format(bound)).append("\"} ")
+                .append(Long.toString(below)).append('\n');
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(Long.toString(count)).append('\n');
+        out.append(name).append("_sum ").append(format(sumNanos / 1e9)).append('\n');
+        out.append(name).append("_count ").append(Long.toString(count)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,511 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import pieces.Piece;
+import pieces.PieceColor;
+import exceptions.*;
+
+/**
+ * Best-move search on a ChessEngine: iterative deepening negamax with
+ * alpha-beta pruning and a capture-only quiescence search, using
+ * {@link Evaluator} at the leaves.
+ *
+ * With {@link #setMultiPv(int)} above 1 the root moves are searched until the
+ * best few are known with exact scores, each with its own principal variation.
+ *
+ * The search plays moves on the engine it was given and undoes them again, so
+ * the engine must not be used by anything else while {@link #search()} runs.
+ * {@link #stop()} may be called from any thread.
+ */
+public class Search {
+
+    public static final int MATE_SCORE = 100000;
+    public static final int MAX_MATE_PLY = 1000;
+    private static final int INFINITY = 1000000;
+    private static final int MAX_DEPTH = 64;
+
+    private final ChessEngine engine;
+    private int depthLimit;
+    private long nodeLimit;
+    private long timeLimitMillis;
+    private Consumer<SearchResult> iterationListener;
+    private TranspositionTable table;
+    private TablebaseProber tablebases;
+    private int startDepth;
+    private TimeManager timeManager;
+    private int multiPv;
+
+    private volatile boolean stopRequested;
+    private boolean aborted;
+    private long nodes;
+    private long startTime;
+    private List<Move> previousLine;
+    private List<SearchResult> previousLines;
+
+    public Search(ChessEngine engine) {
+        this.engine = engine;
+        this.depthLimit = MAX_DEPTH;
+        this.nodeLimit = Long.MAX_VALUE;
+        this.timeLimitMillis = Long.MAX_VALUE;
+        this.startDepth = 1;
+        this.multiPv = 1;
+    }
+
+    public void setDepthLimit(int depthLimit) {
+        this.depthLimit = Math.max(1, Math.min(depthLimit, MAX_DEPTH));
+    }
+
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Sets how many of the best moves are searched exactly. The result then
+     * lists them in {@link SearchResult#getLines()}. Every extra line costs
+     * search time, since other root moves are only cut against the worst of them.
+     *
+     * @param multiPv Number of lines (1 by default)
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Lets a clock decide when to stop: its hard limit aborts the search, and
+     * after each iteration it may end the search early (see {@link TimeManager}).
+     * This works alongside the other limits.
+     *
+     * @param timeManager The time manager, or null to use only the fixed limits
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    /**
+     * Shares a transposition table with this search. Several searches on different
+     * engines may use the same table concurrently (see {@link TranspositionTable}).
+     *
+     * @param table The table, or null to search without one
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Scores positions in the endgame tables exactly instead of searching them.
+     * The root position is always searched, so a move is still returned.
+     *
+     * @param tablebases The tables, or null to search without them
+     */
+    public void setTablebases(TablebaseProber tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Sets the first depth of iterative deepening. Helper threads searching the
+     * same position start at different depths so they fill the shared table
+     * with different results.
+     *
+     * @param startDepth First iteration depth (1 by default)
+     */
+    public void setStartDepth(int startDepth) {
+        this.startDepth = Math.max(1, startDepth);
+    }
+
+    /**
+     * Registers a callback invoked with the result of every completed iteration.
+     * An iteration cut short by a limit or {@link #stop()} is not reported.
+     *
+     * @param iterationListener The callback, or null to remove it
+     */
+    public void setIterationListener(Consumer<SearchResult> iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Asks a running search to finish as soon as possible. The result of the
+     * last completed iteration is returned by {@link #search()}. A stop requested
+     * just before the search starts ends it after its first iteration.
+     */
+    public void stop() {
+        this.stopRequested = true;
+    }
+
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Searches the engine's current position until the depth, node or time
+     * limit is reached or {@link #stop()} is called. At least one iteration
+     * is always completed so a move is returned even with tiny limits.
+     *
+     * @return The result of the deepest completed iteration
+     * @throws GameStateException if the engine is in an inconsistent state
+     */
+    public SearchResult search() throws GameStateException {
+        this.aborted = false;
+        this.nodes = 0;
+        this.startTime = System.currentTimeMillis();
+        this.previousLine = new ArrayList<>();
+        this.previousLines = new ArrayList<>();
+
+        SearchResult best = new SearchResult(null, 0, 0, 0, 0, new ArrayList<>());
+        for (int depth = Math.min(this.startDepth, this.depthLimit); depth <= this.depthLimit; depth++) {
+            List<Move> line = new ArrayList<>();
+            List<SearchResult> lines = this.multiPv > 1 ? searchLines(depth) : null;
+            int score;
+            if (lines != null) {
+                line = lines.get(0).getPrincipalVariation();
+                score = lines.get(0).getScore();
+            } else {
+                score = negamax(depth, -INFINITY, INFINITY, 0, line);
+            }
+            if (this.aborted && best.getDepth() > 0) {
+                break;
+            }
+            best = new SearchResult(line.isEmpty() ? null : line.get(0), score, depth, this.nodes, elapsed(), line, lines);
+            this.previousLine = line;
+            if (lines != null) {
+                this.previousLines = lines;
+            }
+            if (this.iterationListener != null && !this.aborted) {
+                this.iterationListener.accept(best);
+            }
+            // No legal moves, or a forced mate found: deeper iterations cannot change the best move
+            // (with several lines the others may still improve)
+            if (line.isEmpty() || (this.multiPv == 1 && Math.abs(score) >= MATE_SCORE - MAX_MATE_PLY) || this.aborted) {
+                break;
+            }
+            if (this.timeManager != null && this.timeManager.shouldStop(best)) {
+                break;
+            }
+        }
+        this.stopRequested = false;
+        return new SearchResult(best.getBestMove(), best.getScore(), best.getDepth(), this.nodes, elapsed(),
+            best.getPrincipalVariation(), this.multiPv > 1 ? best.getLines() : null);
+    }
+
+    // Root search for several lines: each root move is searched against the worst of the best lines so far,
+    // so a move that enters them has an exact score. Returns null if there are no legal moves.
+    private List<SearchResult> searchLines(int depth) throws GameStateException {
+        this.nodes++;
+        List<Move> moves;
+        try {
+            moves = this.engine.getAllLegalMoves();
+        } catch (InvalidSquareException e) {
+            throw new GameStateException("Search failed: " + e.getMessage(), e);
+        }
+        if (moves.isEmpty()) {
+            return null;
+        }
+        int tableMove = 0;
+        if (this.table != null) {
+            long entry = this.table.probe(this.engine.getPositionHash());
+            if (entry != 0) {
+                tableMove = TranspositionTable.moveOf(entry);
+            }
+        }
+        // The previous iteration's lines first, in their order
+        List<Move> ordered = orderMoves(moves, null, tableMove);
+        List<Move> first = new ArrayList<>();
+        for (SearchResult previous : this.previousLines) {
+            for (Move move : ordered) {
+                if (Search.sameMove(move, previous.getBestMove())) {
+                    first.add(move);
+                }
+            }
+        }
+        ordered.removeAll(first);
+        ordered.addAll(0, first);
+
+        List<SearchResult> top = new ArrayList<>();
+        List<Move> childLine = new ArrayList<>();
+        for (Move move : ordered) {
+            if (!top.isEmpty() && shouldAbort()) {
+                break;
+            }
+            int alpha = top.size() < this.multiPv ? -INFINITY : top.get(this.multiPv - 1).getScore();
+            this.previousLine = previousLineOf(move);
+            childLine.clear();
+            play(move);
+            int score = -negamax(depth - 1, -INFINITY, -alpha, 1, childLine);
+            undo();
+            if (this.aborted && !top.isEmpty()) {
+                break;
+            }
+            if (score > alpha) {
+                List<Move> line = new ArrayList<>();
+                line.add(move);
+                line.addAll(childLine);
+                int at = 0;
+                while (at < top.size() && top.get(at).getScore() >= score) {
+                    at++;
+                }
+                top.add(at, new SearchResult(move, score, depth, this.nodes, elapsed(), line));
+                if (top.size() > this.multiPv) {
+                    top.remove(top.size() - 1);
+                }
+            }
+        }
+        if (this.table != null && !this.aborted) {
+            this.table.store(this.engine.getPositionHash(), depth, TranspositionTable.EXACT,
+                toTable(top.get(0).getScore(), 0), top.get(0).getBestMove().toCode());
+        }
+        return top;
+    }
+
+    private List<Move> previousLineOf(Move rootMove) {
+        for (SearchResult previous : this.previousLines) {
+            if (Search.sameMove(previous.getBestMove(), rootMove)) {
+                return previous.getPrincipalVariation();
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private long elapsed() {
+        return System.currentTimeMillis() - this.startTime;
+    }
+
+    private boolean shouldAbort() {
+        if (this.stopRequested || this.nodes >= this.nodeLimit || elapsed() >= this.timeLimitMillis
+                || (this.timeManager != null && this.timeManager.isHardLimitReached())) {
+            this.aborted = true;
+        }
+        return this.aborted;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply, List<Move> line) throws GameStateException {
+        this.nodes++;
+        // A repeated position can be repeated again, so score it as the draw it leads to; dead positions likewise
+        if (ply > 0 && (this.engine.getRepetitionCount() >= 2 || this.engine.isFiftyMoveRuleReached()
+                || this.engine.isInsufficientMaterial())) {
+            return 0;
+        }
+        if (ply > 0 && this.tablebases != null) {
+            Tablebase.Result known = this.tablebases.probe(this.engine);
+            if (known != null) {
+                return tablebaseScore(known, ply);
+            }
+        }
+        if (depth <= 0) {
+            return quiescence(alpha, beta, ply);
+        }
+        int originalAlpha = alpha;
+        int tableMove = 0;
+        if (this.table != null) {
+            long entry = this.table.probe(this.engine.getPositionHash());
+            if (entry != 0) {
+                tableMove = TranspositionTable.moveOf(entry);
+                if (ply > 0 && TranspositionTable.depthOf(entry) >= depth) {
+                    int score = fromTable(TranspositionTable.scoreOf(entry), ply);
+                    int bound = TranspositionTable.boundOf(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                            || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+        }
+        List<Move> moves;
+        boolean inCheck;
+        try {
+            moves = this.engine.getAllLegalMoves();
+            inCheck = this.engine.isInCheck(this.engine.getSideToMove());
+        } catch (InvalidSquareException e) {
+            throw new GameStateException("Search failed: " + e.getMessage(), e);
+        }
+        if (moves.isEmpty()) {
+            return inCheck ? -MATE_SCORE + ply : 0;
+        }
+
+        Move pvMove = ply < this.previousLine.size() ? this.previousLine.get(ply) : null;
+        List<Move> childLine = new ArrayList<>();
+        for (Move move : orderMoves(moves, pvMove, tableMove)) {
+            if (ply > 0 && shouldAbort()) {
+                return 0;
+            }
+            childLine.clear();
+            play(move);
+            int score = -negamax(depth - 1, -beta, -alpha, ply + 1, childLine);
+            undo();
+            if (this.aborted && !(ply == 0 && line.isEmpty())) {
+                return 0;
+            }
+            if (score > alpha || line.isEmpty()) {
+                line.clear();
+                line.add(move);
+                line.addAll(childLine);
+                if (score > alpha) {
+                    alpha = score;
+                }
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (this.table != null && !this.aborted) {
+            int bound = alpha >= beta ? TranspositionTable.LOWER_BOUND
+                : alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+            int moveCode = bound == TranspositionTable.UPPER_BOUND ? 0 : line.get(0).toCode();
+            this.table.store(this.engine.getPositionHash(), depth, bound, toTable(alpha, ply), moveCode);
+        }
+        return alpha;
+    }
+
+    // Mate scores are stored relative to the position, not to the root
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_SCORE - MAX_MATE_PLY) return score + ply;
+        if (score <= -MATE_SCORE + MAX_MATE_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_SCORE - MAX_MATE_PLY) return score - ply;
+        if (score <= -MATE_SCORE + MAX_MATE_PLY) return score + ply;
+        return score;
+    }
+
+    // A win in n moves mates 2n - 1 plies later, a loss in n moves is mated 2n plies later
+    private static int tablebaseScore(Tablebase.Result known, int ply) {
+        switch (known.getWdl()) {
+            case WIN:
+                return MATE_SCORE - ply - (2 * known.getMovesToMate() - 1);
+            case LOSS:
+                return -MATE_SCORE + ply + 2 * known.getMovesToMate();
+            default:
+                return 0;
+        }
+    }
+
+    private int quiescence(int alpha, int beta, int ply) throws GameStateException {
+        int standPat = Evaluator.evaluate(this.engine);
+        if (standPat >= beta) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        if (shouldAbort()) {
+            return alpha;
+        }
+        PieceColor mover = this.engine.getSideToMove();
+        List<Move> captures = new ArrayList<>();
+        try {
+            for (Move move : this.engine.getAllPossibleMoves()) {
+                if (move.getPieceCaptured() != null) {
+                    captures.add(move);
+                }
+            }
+            for (Move move : orderMoves(captures, null, 0)) {
+                play(move);
+                this.nodes++;
+                // Captures are pseudo-legal here; skip those that leave the king in check
+                if (this.engine.isInCheck(mover)) {
+                    undo();
+                    continue;
+                }
+                int score = -quiescence(-beta, -alpha, ply + 1);
+                undo();
+                if (score >= beta) {
+                    return score;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                }
+            }
+        } catch (InvalidSquareException e) {
+            throw new GameStateException("Search failed: " + e.getMessage(), e);
+        }
+        return alpha;
+    }
+
+    private void play(Move move) throws GameStateException {
+        try {
+            this.engine.makeMove(move);
+        } catch (InvalidMoveException | InvalidSquareException e) {
+            throw new GameStateException("Search failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void undo() throws GameStateException {
+        try {
+            this.engine.undoMove();
+        } catch (InvalidSquareException e) {
+            throw new GameStateException("Search failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Principal variation move first, then the table move, then captures by most valuable victim / least valuable attacker
+    private static List<Move> orderMoves(List<Move> moves, Move pvMove, int tableMove) {
+        int[] keys = new int[moves.size()];
+        Integer[] order = new Integer[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            order[i] = i;
+            if (pvMove != null && sameMove(move, pvMove)) {
+                keys[i] = INFINITY;
+                continue;
+            }
+            if (tableMove != 0 && move.toCode() == tableMove) {
+                keys[i] = INFINITY - 1;
+                continue;
+            }
+            Piece captured = move.getPieceCaptured();
+            if (captured != null) {
+                keys[i] = 10 * Evaluator.pieceValue(captured) - Evaluator.pieceValue(move.getPieceMoved()) / 100;
+            }
+            if (move.getIsPawnPromotion()) {
+                keys[i] += Evaluator.pieceValue(move.getPawnPromotionPiece());
+            }
+        }
+        java.util.Arrays.sort(order, (a, b) -> Integer.compare(keys[b], keys[a]));
+        List<Move> ordered = new ArrayList<>(moves.size());
+        for (Integer index : order) {
+            ordered.add(moves.get(index));
+        }
+        return ordered;
+    }
+
+    /**
+     * Checks if two moves of the same position are the same move: same start and
+     * end square and, for promotions, the same promotion piece.
+     *
+     * @param a First move
+     * @param b Second move
+     * @return true if both describe the same move
+     */
+    public static boolean sameMove(Move a, Move b) {
+        if (a.getStartSquare().getRow() != b.getStartSquare().getRow()
+                || a.getStartSquare().getCol() != b.getStartSquare().getCol()
+                || a.getEndSquare().getRow() != b.getEndSquare().getRow()
+                || a.getEndSquare().getCol() != b.getEndSquare().getCol()) {
+            return false;
+        }
+        if (a.getIsPawnPromotion() != b.getIsPawnPromotion()) {
+            return false;
+        }
+        return !a.getIsPawnPromotion()
+            || a.getPawnPromotionPiece().getKind() == b.getPawnPromotionPiece().getKind();
+    }
+
+    /**
+     * Convenience wrapper: searches a position with a time limit and returns the best move.
+     *
+     * @param engine The engine to search
+     * @param timeLimitMillis Time limit in milliseconds
+     * @return The best move, or null if there are no legal moves
+     * @throws GameStateException if the engine is in an inconsistent state
+     */
+    public static Move findBestMove(ChessEngine engine, long timeLimitMillis) throws GameStateException {
+        Search search = new Search(engine);
+        search.setTimeLimit(timeLimitMillis);
+        return search.search().getBestMove();
+    }
+}
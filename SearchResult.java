@@ -0,0 +1,91 @@
+import java.util.List;
+
+/**
+ * Outcome of a (possibly still running) search: the best move found, its score
+ * and principal variation, and the effort spent. A multi-PV search also lists
+ * the best few moves, each as a result of its own.
+ */
+public class SearchResult {
+
+    private final Move bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedMillis;
+    private final List<Move> principalVariation;
+    private final List<SearchResult> lines;
+
+    public SearchResult(Move bestMove, int score, int depth, long nodes, long elapsedMillis, List<Move> principalVariation) {
+        this(bestMove, score, depth, nodes, elapsedMillis, principalVariation, null);
+    }
+
+    public SearchResult(Move bestMove, int score, int depth, long nodes, long elapsedMillis, List<Move> principalVariation,
+                        List<SearchResult> lines) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+        this.principalVariation = principalVariation;
+        this.lines = lines;
+    }
+
+    /**
+     * Get the best move found.
+     *
+     * @return The best move, or null if the side to move has no legal moves
+     */
+    public Move getBestMove() {
+        return this.bestMove;
+    }
+
+    /**
+     * Get the score of the best move in centipawns from the side to move's point of view.
+     * Mate scores are within {@link Search#MAX_MATE_PLY} of +/- {@link Search#MATE_SCORE}.
+     *
+     * @return The score
+     */
+    public int getScore() {
+        return this.score;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    public List<Move> getPrincipalVariation() {
+        return this.principalVariation;
+    }
+
+    /**
+     * Get the best moves of a multi-PV search, best first, each with its own
+     * score and principal variation.
+     *
+     * @return The lines; a single-PV search returns just this result
+     */
+    public List<SearchResult> getLines() {
+        return this.lines == null ? List.of(this) : this.lines;
+    }
+
+    public long getNodesPerSecond() {
+        return this.elapsedMillis == 0 ? this.nodes * 1000 : this.nodes * 1000 / this.elapsedMillis;
+    }
+
+    public boolean isMateScore() {
+        return Math.abs(this.score) >= Search.MATE_SCORE - Search.MAX_MATE_PLY;
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + this.depth + " score " + this.score + " nodes " + this.nodes
+            + " time " + this.elapsedMillis + "ms best " + this.bestMove;
+    }
+}
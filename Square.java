@@ -1,8 +1,22 @@
 import pieces.Piece;
 
 public class Square {
-    private int row;
-    private int col;
+    // Per-square tables indexed by row * 8 + col (0 = a8, 63 = h1)
+    private static final String[] NAMES = new String[64];
+    private static final boolean[] LIGHT = new boolean[64];
+    static {
+        for (int index = 0; index < 64; index++) {
+            int row = index >> 3;
+            int col = index & 7;
+            NAMES[index] = String.valueOf(new char[] {(char) ('a' + col), (char) ('8' - row)}).intern();
+            // a1 (row 7, col 0) is dark
+            LIGHT[index] = ((row + col) & 1) == 0;
+        }
+    }
+
+    private final int row;
+    private final int col;
+    private final int index;
     private Piece piece;
     
     /**
@@ -28,6 +42,7 @@ public class Square {
         }
         this.row = row;
         this.col = col;
+        this.index = index(row, col);
         this.piece = piece;
     }
     
@@ -48,6 +63,15 @@ public class Square {
     public int getCol() {
         return col;
     }
+
+    /**
+     * Get the index of this square.
+     *
+     * @return row * 8 + col (0 = a8, 63 = h1)
+     */
+    public int getIndex() {
+        return index;
+    }
     
     /**
      * Get the piece on this square.
@@ -93,9 +117,7 @@ public class Square {
      * @return Algebraic notation string
      */
     public String getAlgebraicNotation() {
-        char[] files = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h'};
-        char[] ranks = {'8', '7', '6', '5', '4', '3', '2', '1'};
-        return "" + files[col] + ranks[row];
+        return NAMES[index];
     }
     
     /**
@@ -104,13 +126,88 @@ public class Square {
      * @return true if light square, false if dark square
      */
     public boolean isLightSquare() {
-        return (row + col) % 2 == 1;
+        return LIGHT[index];
+    }
+
+    /**
+     * Get the index of a square.
+     *
+     * @param row Row position (0-7)
+     * @param col Column position (0-7)
+     * @return row * 8 + col
+     */
+    public static int index(int row, int col) {
+        return (row << 3) | col;
+    }
+
+    /**
+     * Get the row of a square index.
+     *
+     * @param index Square index (0-63)
+     * @return Row position (0-7, where 0 is rank 8)
+     */
+    public static int rowOf(int index) {
+        return index >> 3;
+    }
+
+    /**
+     * Get the column of a square index.
+     *
+     * @param index Square index (0-63)
+     * @return Column position (0-7, where 0 is file a)
+     */
+    public static int colOf(int index) {
+        return index & 7;
+    }
+
+    /**
+     * Get the algebraic name of a square index from a shared table.
+     *
+     * @param index Square index (0-63)
+     * @return The name, e.g. "e4"
+     */
+    public static String nameOf(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * Check if a square index is a light square.
+     *
+     * @param index Square index (0-63)
+     * @return true for light squares (h1, a8, ...)
+     */
+    public static boolean isLight(int index) {
+        return LIGHT[index];
+    }
+
+    /**
+     * Parses an algebraic square name.
+     *
+     * @param name The name, e.g. "e4"; only its first two characters are read
+     * @return The square index, or -1 if the name is not a square
+     */
+    public static int indexOf(CharSequence name) {
+        return name.length() < 2 ? -1 : indexOf(name.charAt(0), name.charAt(1));
+    }
+
+    /**
+     * Get the index of the square with the given file and rank characters.
+     *
+     * @param file 'a' to 'h'
+     * @param rank '1' to '8'
+     * @return The square index, or -1 if the characters are not a square
+     */
+    public static int indexOf(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return index('8' - rank, file - 'a');
     }
     
     @Override
     public String toString() {
         if (piece != null) {
-            String colorCode = piece.getColor().equals("white") ? "\u001B[37m" : "\u001B[30m"; // white or black
+            String colorCode = piece.isWhite() ? "\u001B[37m" : "\u001B[30m"; // white or black
             String reset = "\u001B[0m";
             return colorCode + piece.getSymbol() + reset;
         }
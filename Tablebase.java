@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import pieces.Piece;
+import pieces.PieceColor;
+import pieces.PieceKind;
+import exceptions.*;
+
+/**
+ * An endgame tablebase for one material, memory-mapped from a file written by
+ * {@link TablebaseGenerator}.
+ *
+ * For every position of the material and side to move the table holds one
+ * byte: 0 for a draw, 1 to 127 for a win with mate in that many moves, 128 + n
+ * for a loss with mate in n moves (128 is checkmate), and 255 for an unused
+ * index. Positions are indexed by {@link TablebaseIndex}. The table assumes no
+ * castling rights and no en passant capture; such positions are not answered.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   int magic, int version, int positionCount, 20 bytes material name (ASCII, zero-padded)
+ *   positionCount bytes with white to move
+ *   positionCount bytes with black to move
+ * </pre>
+ */
+public class Tablebase {
+
+    public static final String SUFFIX = ".mltb";
+
+    static final int DRAW = 0;
+    static final int MAX_MOVES = 127;
+    static final int LOSS = 128;
+    static final int UNUSED = 255;
+
+    private static final int MAGIC = 0x4D4C5442; // "MLTB"
+    private static final int VERSION = 1;
+    private static final int NAME_BYTES = 20;
+    private static final int HEADER_BYTES = 12 + NAME_BYTES;
+
+    /**
+     * Game-theoretic value of a position for the side to move.
+     */
+    public enum Wdl {
+        WIN, DRAW, LOSS
+    }
+
+    /**
+     * The tablebase answer for one position.
+     */
+    public static final class Result {
+        private final Wdl wdl;
+        private final int movesToMate;
+
+        Result(Wdl wdl, int movesToMate) {
+            this.wdl = wdl;
+            this.movesToMate = movesToMate;
+        }
+
+        /**
+         * Get the value for the side to move.
+         */
+        public Wdl getWdl() {
+            return this.wdl;
+        }
+
+        /**
+         * Get the distance to mate with best play.
+         *
+         * @return Moves until the winner mates (0 if the side to move is mated), or 0 for a draw
+         */
+        public int getMovesToMate() {
+            return this.movesToMate;
+        }
+
+        @Override
+        public String toString() {
+            return this.wdl == Wdl.DRAW ? "draw" : this.wdl.name().toLowerCase() + " in " + this.movesToMate;
+        }
+    }
+
+    private static final Result[] RESULTS = new Result[256];
+
+    static {
+        RESULTS[DRAW] = new Result(Wdl.DRAW, 0);
+        for (int moves = 1; moves <= MAX_MOVES; moves++) {
+            RESULTS[moves] = new Result(Wdl.WIN, moves);
+        }
+        for (int moves = 0; moves < UNUSED - LOSS; moves++) {
+            RESULTS[LOSS + moves] = new Result(Wdl.LOSS, moves);
+        }
+    }
+
+    private final TablebaseIndex index;
+    private final ByteBuffer buffer;
+
+    private Tablebase(TablebaseIndex index, ByteBuffer buffer) {
+        this.index = index;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Get the file name of a material's table.
+     *
+     * @param material The material, e.g. "KRKP"
+     * @return The file name, e.g. "KRvKP.mltb"
+     * @throws IllegalArgumentException if the material is invalid
+     */
+    public static String fileName(String material) {
+        return TablebaseIndex.of(material).getName() + SUFFIX;
+    }
+
+    /**
+     * Opens a table file by memory-mapping it.
+     *
+     * @param file Path of the table file
+     * @return The opened table
+     * @throws ChessFileException if the file cannot be read or is not a table file
+     */
+    public static Tablebase open(Path file) throws ChessFileException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new ChessFileException("Not a tablebase file: " + file);
+            }
+            byte[] name = new byte[NAME_BYTES];
+            buffer.get(12, name);
+            TablebaseIndex index;
+            try {
+                index = TablebaseIndex.of(new String(name, StandardCharsets.US_ASCII).trim());
+            } catch (IllegalArgumentException e) {
+                throw new ChessFileException("Not a tablebase file: " + file, e);
+            }
+            int count = buffer.getInt(8);
+            if (count != index.getPositionCount() || channel.size() != HEADER_BYTES + 2L * count) {
+                throw new ChessFileException("Truncated or mismatched tablebase file: " + file);
+            }
+            return new Tablebase(index, buffer);
+        } catch (IOException e) {
+            throw new ChessFileException(file.toString(), "open", e);
+        }
+    }
+
+    // Writes a table; codes holds the white-to-move block followed by the black-to-move block
+    static void write(Path file, TablebaseIndex index, byte[] codes) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(index.getPositionCount());
+            header.put(index.getName().getBytes(StandardCharsets.US_ASCII));
+            header.clear();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            ByteBuffer body = ByteBuffer.wrap(codes);
+            while (body.hasRemaining()) {
+                out.write(body);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public TablebaseIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Get the material of this table, e.g. "KRvKP".
+     */
+    public String getMaterial() {
+        return this.index.getName();
+    }
+
+    /**
+     * Get the raw code of a position.
+     *
+     * @param whiteToMove The side to move
+     * @param position The index of the position
+     * @return The code, see the class description
+     */
+    int code(boolean whiteToMove, int position) {
+        long offset = HEADER_BYTES + (whiteToMove ? 0L : this.index.getPositionCount()) + position;
+        return this.buffer.get((int) offset) & 0xFF;
+    }
+
+    /**
+     * Get the result of a position given as the squares of this material's pieces.
+     *
+     * @param squares Square of each piece, in the order of {@link #getIndex()}
+     * @param whiteToMove The side to move
+     * @return The result, or null if the position is illegal
+     */
+    public Result probe(int[] squares, boolean whiteToMove) {
+        int position = this.index.encode(squares);
+        return position < 0 ? null : RESULTS[code(whiteToMove, position)];
+    }
+
+    /**
+     * Looks up the engine's position with one table read.
+     *
+     * @param engine The engine
+     * @return The result for the side to move, or null if the position does not
+     *         have this table's material, has castling rights or en passant, or is illegal
+     */
+    public Result probe(ChessEngine engine) {
+        if (!isProbeable(engine)) {
+            return null;
+        }
+        int count = this.index.getPieceCount();
+        Piece[] pieces = new Piece[count];
+        int[] found = new int[count];
+        if (collect(engine, pieces, found) != count) {
+            return null;
+        }
+        return probe(pieces, found, count, engine.getSideToMove() == PieceColor.WHITE);
+    }
+
+    // Tables assume neither castling rights nor an en passant capture
+    static boolean isProbeable(ChessEngine engine) {
+        return engine.getBoard().getCastlingRights() == 0 && Zobrist.enPassantFile(engine) < 0;
+    }
+
+    /**
+     * Collects the pieces on the board in square order.
+     *
+     * @return The number of pieces, or -1 if there are more than the arrays hold
+     */
+    static int collect(ChessEngine engine, Piece[] pieces, int[] squares) {
+        int total = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = engine.getBoard().getSquare(square).getPiece();
+            if (piece == null) {
+                continue;
+            }
+            if (total == pieces.length) {
+                return -1;
+            }
+            pieces[total] = piece;
+            squares[total++] = square;
+        }
+        return total;
+    }
+
+    /**
+     * Get the table name of a set of pieces, e.g. "KRvKP".
+     */
+    static String materialOf(Piece[] pieces, int count) {
+        StringBuilder white = new StringBuilder();
+        StringBuilder black = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (pieces[i].getKind() != PieceKind.KING) {
+                (pieces[i].isWhite() ? white : black).append(Character.toUpperCase(pieces[i].getFenChar()));
+            }
+        }
+        return TablebaseIndex.nameOf(white.toString(), black.toString());
+    }
+
+    /**
+     * Get the result of collected pieces, swapping colours when the position has
+     * the weaker side as white.
+     *
+     * @return The result for the side to move, or null if the pieces are not this
+     *         table's material or the position is illegal
+     */
+    Result probe(Piece[] pieces, int[] found, int count, boolean whiteToMove) {
+        if (count != this.index.getPieceCount()) {
+            return null;
+        }
+        int[] squares = new int[count];
+        boolean flipped = !assign(pieces, found, false, squares);
+        if (flipped && !assign(pieces, found, true, squares)) {
+            return null;
+        }
+        return probe(squares, whiteToMove != flipped);
+    }
+
+    // Maps each piece to a free slot of the same colour and kind
+    private boolean assign(Piece[] pieces, int[] found, boolean flipped, int[] squares) {
+        int count = squares.length;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            PieceColor color = flipped ? pieces[i].getPieceColor().opposite() : pieces[i].getPieceColor();
+            int slot = 0;
+            while (slot < count && ((used & 1 << slot) != 0
+                    || this.index.getColor(slot) != color || this.index.getKind(slot) != pieces[i].getKind())) {
+                slot++;
+            }
+            if (slot == count) {
+                return false;
+            }
+            used |= 1 << slot;
+            squares[slot] = flipped ? found[i] ^ 56 : found[i];
+        }
+        return true;
+    }
+}
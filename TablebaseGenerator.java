@@ -0,0 +1,644 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import pieces.PieceColor;
+import pieces.PieceKind;
+import exceptions.*;
+
+/**
+ * Generates endgame tablebases of up to {@value TablebaseIndex#MAX_PIECES}
+ * pieces by retrograde analysis.
+ *
+ * Every position of the material (see {@link TablebaseIndex}) is first visited
+ * once: illegal and unused indices are marked, checkmates and stalemates are
+ * scored, moves that capture or promote are looked up in the smaller tables
+ * (generated first, recursively), and the remaining moves are counted. Then
+ * the values spread backwards one ply at a time: every predecessor of a lost
+ * position is won, and a predecessor of a won position is lost once all its
+ * moves are known to lead to won positions. Positions never reached this way
+ * are draws. Each ply is processed in parallel; positions are claimed with
+ * atomic updates, so every position is resolved by exactly one thread.
+ *
+ * Castling and en passant are not part of the tables: a pawn's double step is
+ * treated as a plain move.
+ *
+ * Usage: java TablebaseGenerator directory threads material...  (e.g. KQK KRK KPK KBNK KRKP)
+ */
+public class TablebaseGenerator {
+
+    // Longest distance to mate a table can hold, in plies
+    private static final int MAX_PLIES = 2 * Tablebase.MAX_MOVES - 1;
+    private static final int RESOLVED = -1;
+    private static final int CHUNKS_PER_THREAD = 16;
+
+    private static final long[] KING_MOVES = new long[64];
+    private static final long[] KNIGHT_MOVES = new long[64];
+    // [0 = white, 1 = black][square]
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+    // Squares strictly between two squares on a line, or -1 if they are not on one
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final boolean[][] DIAGONAL = new boolean[64][64];
+    private static final int[][] ROOK_DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final PieceKind[] PROMOTIONS = {PieceKind.QUEEN, PieceKind.ROOK, PieceKind.BISHOP, PieceKind.KNIGHT};
+
+    static {
+        for (int from = 0; from < 64; from++) {
+            int row = from >> 3;
+            int col = from & 7;
+            for (int dr = -2; dr <= 2; dr++) {
+                for (int dc = -2; dc <= 2; dc++) {
+                    int r = row + dr;
+                    int c = col + dc;
+                    if (r < 0 || r > 7 || c < 0 || c > 7 || (dr == 0 && dc == 0)) continue;
+                    if (Math.abs(dr) <= 1 && Math.abs(dc) <= 1) KING_MOVES[from] |= 1L << (r * 8 + c);
+                    if (Math.abs(dr * dc) == 2) KNIGHT_MOVES[from] |= 1L << (r * 8 + c);
+                }
+            }
+            for (int dc = -1; dc <= 1; dc += 2) {
+                int c = col + dc;
+                if (c < 0 || c > 7) continue;
+                if (row > 0) PAWN_ATTACKS[0][from] |= 1L << ((row - 1) * 8 + c);
+                if (row < 7) PAWN_ATTACKS[1][from] |= 1L << ((row + 1) * 8 + c);
+            }
+            java.util.Arrays.fill(BETWEEN[from], -1L);
+            for (int d = 0; d < 8; d++) {
+                int[] direction = d < 4 ? ROOK_DIRECTIONS[d] : BISHOP_DIRECTIONS[d - 4];
+                long between = 0;
+                for (int r = row + direction[0], c = col + direction[1]; r >= 0 && r <= 7 && c >= 0 && c <= 7;
+                     r += direction[0], c += direction[1]) {
+                    BETWEEN[from][r * 8 + c] = between;
+                    DIAGONAL[from][r * 8 + c] = d >= 4;
+                    between |= 1L << (r * 8 + c);
+                }
+            }
+        }
+    }
+
+    private final Path directory;
+    private final int threads;
+    private final Map<String, Tablebase> tables;
+
+    /**
+     * @param directory Directory the tables are written to and read from
+     * @param threads Number of worker threads
+     */
+    public TablebaseGenerator(Path directory, int threads) {
+        this.directory = directory;
+        this.threads = Math.max(1, threads);
+        this.tables = new HashMap<>();
+    }
+
+    /**
+     * Generates the table of a material, and first the tables its captures and
+     * promotions lead to. Tables already in the directory are reused.
+     *
+     * @param material The material, e.g. "KRKP"
+     * @return The opened table
+     * @throws IllegalArgumentException if the material is invalid
+     * @throws ChessFileException if a table cannot be written or read
+     */
+    public Tablebase generate(String material) throws ChessFileException {
+        TablebaseIndex index = TablebaseIndex.of(material);
+        Tablebase table = this.tables.get(index.getName());
+        if (table != null) {
+            return table;
+        }
+        Path file = this.directory.resolve(index.getName() + Tablebase.SUFFIX);
+        if (!Files.exists(file)) {
+            byte[] codes = new Job(index).run();
+            try {
+                Files.createDirectories(this.directory);
+                Tablebase.write(file, index, codes);
+            } catch (IOException e) {
+                throw new ChessFileException(file.toString(), "write", e);
+            }
+        }
+        table = Tablebase.open(file);
+        this.tables.put(index.getName(), table);
+        return table;
+    }
+
+    /**
+     * Where a capture or promotion leads: another table, with the pieces renumbered
+     * and, if that table has the colours the other way round, the board mirrored.
+     */
+    private static final class Link {
+        final Tablebase table; // null for bare kings
+        final boolean flipped;
+        final int[] slots; // slot in the target table of each piece, -1 if captured
+
+        Link(Tablebase table, boolean flipped, int[] slots) {
+            this.table = table;
+            this.flipped = flipped;
+            this.slots = slots;
+        }
+
+        // Code of the position after the move, for the side then to move
+        int code(int[] squares, boolean whiteToMove, int[] target, int[] digits) {
+            if (this.table == null) {
+                return Tablebase.DRAW;
+            }
+            for (int i = 0; i < squares.length; i++) {
+                if (this.slots[i] >= 0) {
+                    target[this.slots[i]] = this.flipped ? squares[i] ^ 56 : squares[i];
+                }
+            }
+            return this.table.code(whiteToMove != this.flipped, this.table.getIndex().encode(target, digits));
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = java.util.Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+    }
+
+    /**
+     * The generation of one table.
+     */
+    private final class Job {
+        private final TablebaseIndex index;
+        private final int count;
+        private final int positions;
+        private final boolean[] white;
+        private final PieceKind[] kinds;
+        // Link per (captured piece + 1, promoted pawn + 1, promotion)
+        private final Link[] links;
+
+        private final byte[] codes;
+        private final byte[] exits;
+        // Distinct successors inside the table not yet known to be won for the opponent, or RESOLVED
+        private final AtomicIntegerArray remaining;
+        // Per ply, positions to expand (>= 0) or to claim as won (~position)
+        private final IntList[] schedule;
+
+        Job(TablebaseIndex index) throws ChessFileException {
+            this.index = index;
+            this.count = index.getPieceCount();
+            this.positions = index.getPositionCount();
+            this.white = new boolean[this.count];
+            this.kinds = new PieceKind[this.count];
+            for (int i = 0; i < this.count; i++) {
+                this.white[i] = index.getColor(i) == PieceColor.WHITE;
+                this.kinds[i] = index.getKind(i);
+            }
+            this.links = new Link[(this.count + 1) * (this.count + 1) * PROMOTIONS.length];
+            for (int captured = -1; captured < this.count; captured++) {
+                for (int promoted = -1; promoted < this.count; promoted++) {
+                    if (captured < 2 && captured != -1 || captured == promoted) continue;
+                    if (promoted >= 0 && this.kinds[promoted] != PieceKind.PAWN) continue;
+                    if (captured < 0 && promoted < 0) continue;
+                    // A pawn promoting with a capture takes a piece of the other side
+                    if (captured >= 0 && promoted >= 0 && this.white[captured] == this.white[promoted]) continue;
+                    for (int p = 0; p < (promoted < 0 ? 1 : PROMOTIONS.length); p++) {
+                        this.links[linkIndex(captured, promoted, p)] = link(captured, promoted, PROMOTIONS[p]);
+                    }
+                }
+            }
+            this.codes = new byte[2 * this.positions];
+            this.exits = new byte[2 * this.positions];
+            this.remaining = new AtomicIntegerArray(2 * this.positions);
+            this.schedule = new IntList[MAX_PLIES + 2];
+        }
+
+        private int linkIndex(int captured, int promoted, int promotion) {
+            return ((captured + 1) * (this.count + 1) + promoted + 1) * PROMOTIONS.length + promotion;
+        }
+
+        private Link link(int captured, int promoted, PieceKind promotion) throws ChessFileException {
+            StringBuilder whitePieces = new StringBuilder();
+            StringBuilder blackPieces = new StringBuilder();
+            PieceKind[] after = new PieceKind[this.count];
+            for (int i = 0; i < this.count; i++) {
+                if (i == captured) continue;
+                after[i] = i == promoted ? promotion : index.getKind(i);
+                if (i >= 2) {
+                    (this.white[i] ? whitePieces : blackPieces).append(after[i] == PieceKind.PAWN ? "P" : after[i].getLetter());
+                }
+            }
+            int[] slots = new int[this.count];
+            java.util.Arrays.fill(slots, -1);
+            if (whitePieces.length() == 0 && blackPieces.length() == 0) {
+                return new Link(null, false, slots);
+            }
+            Tablebase table = generate(TablebaseIndex.nameOf(whitePieces.toString(), blackPieces.toString()));
+            boolean flipped = TablebaseIndex.isFlipped(whitePieces.toString(), blackPieces.toString());
+            TablebaseIndex target = table.getIndex();
+            boolean[] used = new boolean[target.getPieceCount()];
+            for (int i = 0; i < this.count; i++) {
+                if (i == captured) continue;
+                PieceColor color = this.white[i] != flipped ? PieceColor.WHITE : PieceColor.BLACK;
+                int slot = 0;
+                while (used[slot] || target.getColor(slot) != color || target.getKind(slot) != after[i]) {
+                    slot++;
+                }
+                used[slot] = true;
+                slots[i] = slot;
+            }
+            return new Link(table, flipped, slots);
+        }
+
+        byte[] run() throws ChessFileException {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                int total = 2 * this.positions;
+                int chunks = threads * CHUNKS_PER_THREAD;
+                List<Callable<IntList>> tasks = new ArrayList<>();
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int from = (int) ((long) total * chunk / chunks);
+                    int to = (int) ((long) total * (chunk + 1) / chunks);
+                    tasks.add(() -> initialize(from, to));
+                }
+                merge(invokeAll(pool, tasks));
+                for (int ply = 0; ply <= MAX_PLIES; ply++) {
+                    IntList entries = this.schedule[ply];
+                    if (entries == null) continue;
+                    this.schedule[ply] = null;
+                    int current = ply;
+                    tasks.clear();
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        int from = (int) ((long) entries.size * chunk / chunks);
+                        int to = (int) ((long) entries.size * (chunk + 1) / chunks);
+                        if (from < to) {
+                            tasks.add(() -> expand(entries.values, from, to, current));
+                        }
+                    }
+                    merge(invokeAll(pool, tasks));
+                }
+                if (this.schedule[MAX_PLIES + 1] != null) {
+                    throw new IllegalStateException("Distance to mate of " + this.index + " exceeds " + Tablebase.MAX_MOVES + " moves");
+                }
+                return this.codes;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private List<IntList> invokeAll(ExecutorService pool, List<Callable<IntList>> tasks) throws ChessFileException {
+            List<IntList> results = new ArrayList<>();
+            try {
+                for (Future<IntList> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ChessFileException("Generation of " + this.index + " interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ChessFileException("Generation of " + this.index + " failed", e.getCause());
+            }
+            return results;
+        }
+
+        // Adds (ply, entry) pairs found by the workers to the schedule
+        private void merge(List<IntList> results) {
+            for (IntList result : results) {
+                for (int i = 0; i < result.size; i += 2) {
+                    int ply = Math.min(result.values[i], MAX_PLIES + 1);
+                    if (this.schedule[ply] == null) {
+                        this.schedule[ply] = new IntList();
+                    }
+                    this.schedule[ply].add(result.values[i + 1]);
+                }
+            }
+        }
+
+        private IntList initialize(int from, int to) {
+            IntList found = new IntList();
+            int[] squares = new int[this.count];
+            int[] scratch = new int[this.count];
+            int[] digits = new int[this.count];
+            int[] successors = new int[256];
+            for (int entry = from; entry < to; entry++) {
+                boolean whiteToMove = entry < this.positions;
+                int position = whiteToMove ? entry : entry - this.positions;
+                this.index.decode(position, squares);
+                if (!this.index.isCanonical(position, squares) || attacked(squares, whiteToMove ? 1 : 0, whiteToMove)) {
+                    this.codes[entry] = (byte) Tablebase.UNUSED;
+                    this.remaining.set(entry, RESOLVED);
+                    continue;
+                }
+                int best = -1;
+                int distinct = 0;
+                boolean anyMove = false;
+                long occupied = occupancy(squares);
+                for (int piece = 0; piece < this.count; piece++) {
+                    if (this.white[piece] != whiteToMove) continue;
+                    long targets = targets(squares, piece, occupied);
+                    while (targets != 0) {
+                        int target = Long.numberOfTrailingZeros(targets);
+                        targets &= targets - 1;
+                        int origin = squares[piece];
+                        int captured = pieceAt(squares, target);
+                        squares[piece] = target;
+                        if (captured >= 0) squares[captured] = -1;
+                        if (!attacked(squares, whiteToMove ? 0 : 1, !whiteToMove)) {
+                            anyMove = true;
+                            boolean promotes = this.kinds[piece] == PieceKind.PAWN && (target < 8 || target >= 56);
+                            if (captured >= 0 || promotes) {
+                                for (int p = 0; p < (promotes ? PROMOTIONS.length : 1); p++) {
+                                    Link link = this.links[linkIndex(captured, promotes ? piece : -1, p)];
+                                    best = better(best, negate(link.code(squares, !whiteToMove, scratch, digits)));
+                                }
+                            } else {
+                                int successor = this.index.encode(squares, digits) + (whiteToMove ? this.positions : 0);
+                                distinct = addDistinct(successors, distinct, successor);
+                            }
+                        }
+                        squares[piece] = origin;
+                        if (captured >= 0) squares[captured] = target;
+                    }
+                }
+                if (!anyMove) {
+                    boolean inCheck = attacked(squares, whiteToMove ? 0 : 1, !whiteToMove);
+                    this.codes[entry] = (byte) (inCheck ? Tablebase.LOSS : Tablebase.DRAW);
+                    this.remaining.set(entry, RESOLVED);
+                    if (inCheck) {
+                        found.add(0);
+                        found.add(entry);
+                    }
+                } else if (distinct == 0) {
+                    this.codes[entry] = (byte) best;
+                    this.remaining.set(entry, RESOLVED);
+                    if (best != Tablebase.DRAW) {
+                        found.add(plies(best));
+                        found.add(entry);
+                    }
+                } else {
+                    this.remaining.set(entry, distinct);
+                    this.exits[entry] = (byte) (best < 0 ? Tablebase.UNUSED : best);
+                    if (best > Tablebase.DRAW && best < Tablebase.LOSS) {
+                        found.add(plies(best));
+                        found.add(~entry);
+                    }
+                }
+            }
+            return found;
+        }
+
+        // Resolves the predecessors of positions decided at this ply
+        private IntList expand(int[] entries, int from, int to, int ply) {
+            IntList found = new IntList();
+            int[] squares = new int[this.count];
+            int[] digits = new int[this.count];
+            int[] predecessors = new int[256];
+            for (int i = from; i < to; i++) {
+                int entry = entries[i];
+                if (entry < 0) {
+                    entry = ~entry;
+                    if (!claim(entry)) continue;
+                    this.codes[entry] = (byte) code(ply);
+                }
+                boolean whiteToMove = entry < this.positions;
+                this.index.decode(whiteToMove ? entry : entry - this.positions, squares);
+                int distinct = unmoves(squares, !whiteToMove, predecessors, digits);
+                for (int k = 0; k < distinct; k++) {
+                    int predecessor = predecessors[k];
+                    if (ply % 2 == 0) {
+                        // The position is lost, so moving into it wins
+                        if (claim(predecessor)) {
+                            this.codes[predecessor] = (byte) code(ply + 1);
+                            found.add(ply + 1);
+                            found.add(predecessor);
+                        }
+                    } else if (decrement(predecessor)) {
+                        // Every move inside the table leads to a won position
+                        int exit = this.exits[predecessor] & 0xFF;
+                        if (exit == Tablebase.DRAW) {
+                            this.remaining.set(predecessor, RESOLVED);
+                        } else if (exit == Tablebase.UNUSED || exit >= Tablebase.LOSS) {
+                            int lost = Math.max(ply + 1, exit == Tablebase.UNUSED ? 0 : plies(exit));
+                            this.remaining.set(predecessor, RESOLVED);
+                            this.codes[predecessor] = (byte) code(lost);
+                            found.add(lost);
+                            found.add(predecessor);
+                        }
+                        // otherwise a capture or promotion wins, and the position is claimed at that ply
+                    }
+                }
+            }
+            return found;
+        }
+
+        private boolean claim(int entry) {
+            int left;
+            do {
+                left = this.remaining.get(entry);
+                if (left == RESOLVED) return false;
+            } while (!this.remaining.compareAndSet(entry, left, RESOLVED));
+            return true;
+        }
+
+        // Counts one more successor as won for the opponent; true if it was the last
+        private boolean decrement(int entry) {
+            int left;
+            do {
+                left = this.remaining.get(entry);
+                if (left <= 0) return false;
+            } while (!this.remaining.compareAndSet(entry, left, left - 1));
+            return left == 1;
+        }
+
+        // Distinct positions, with the mover to move, that reach this position by a move inside the table
+        private int unmoves(int[] squares, boolean moverWhite, int[] predecessors, int[] digits) {
+            int distinct = 0;
+            long occupied = occupancy(squares);
+            int offset = moverWhite ? 0 : this.positions;
+            for (int piece = 0; piece < this.count; piece++) {
+                if (this.white[piece] != moverWhite) continue;
+                int square = squares[piece];
+                long origins;
+                if (this.kinds[piece] == PieceKind.PAWN) {
+                    int back = moverWhite ? 8 : -8;
+                    int previous = square + back;
+                    origins = 0;
+                    if (previous >= 8 && previous < 56 && (occupied & (1L << previous)) == 0) {
+                        origins |= 1L << previous;
+                        int start = previous + back;
+                        boolean doubleStep = moverWhite ? square >> 3 == 4 : square >> 3 == 3;
+                        if (doubleStep && (occupied & (1L << start)) == 0) {
+                            origins |= 1L << start;
+                        }
+                    }
+                } else {
+                    origins = targets(squares, piece, occupied) & ~occupied;
+                }
+                while (origins != 0) {
+                    int origin = Long.numberOfTrailingZeros(origins);
+                    origins &= origins - 1;
+                    squares[piece] = origin;
+                    int predecessor = this.index.encode(squares, digits);
+                    if (predecessor >= 0) {
+                        distinct = addDistinct(predecessors, distinct, predecessor + offset);
+                    }
+                }
+                squares[piece] = square;
+            }
+            return distinct;
+        }
+
+        // Squares a piece moves to, including captures of the other side but not of its own
+        private long targets(int[] squares, int piece, long occupied) {
+            int from = squares[piece];
+            long own = 0;
+            for (int i = 0; i < this.count; i++) {
+                if (squares[i] >= 0 && this.white[i] == this.white[piece]) own |= 1L << squares[i];
+            }
+            PieceKind kind = this.kinds[piece];
+            switch (kind) {
+                case KING:
+                    return KING_MOVES[from] & ~own;
+                case KNIGHT:
+                    return KNIGHT_MOVES[from] & ~own;
+                case PAWN: {
+                    long moves = 0;
+                    int forward = this.white[piece] ? -8 : 8;
+                    int one = from + forward;
+                    if ((occupied & (1L << one)) == 0) {
+                        moves |= 1L << one;
+                        boolean start = this.white[piece] ? from >> 3 == 6 : from >> 3 == 1;
+                        if (start && (occupied & (1L << (one + forward))) == 0) {
+                            moves |= 1L << (one + forward);
+                        }
+                    }
+                    return moves | (PAWN_ATTACKS[this.white[piece] ? 0 : 1][from] & occupied & ~own);
+                }
+                default: {
+                    long moves = 0;
+                    if (kind != PieceKind.BISHOP) moves |= slide(from, ROOK_DIRECTIONS, occupied);
+                    if (kind != PieceKind.ROOK) moves |= slide(from, BISHOP_DIRECTIONS, occupied);
+                    return moves & ~own;
+                }
+            }
+        }
+
+        // Checks if the king of one side (0 = white) is attacked by the other
+        private boolean attacked(int[] squares, int kingSide, boolean byWhite) {
+            int king = squares[kingSide];
+            long occupied = occupancy(squares);
+            for (int i = 0; i < this.count; i++) {
+                int from = squares[i];
+                if (from < 0 || this.white[i] != byWhite) continue;
+                long bit = 1L << king;
+                switch (this.kinds[i]) {
+                    case KING:
+                        if ((KING_MOVES[from] & bit) != 0) return true;
+                        break;
+                    case KNIGHT:
+                        if ((KNIGHT_MOVES[from] & bit) != 0) return true;
+                        break;
+                    case PAWN:
+                        if ((PAWN_ATTACKS[byWhite ? 0 : 1][from] & bit) != 0) return true;
+                        break;
+                    default:
+                        long between = BETWEEN[from][king];
+                        if (between == -1 || (between & occupied) != 0) break;
+                        boolean diagonal = DIAGONAL[from][king];
+                        PieceKind kind = this.kinds[i];
+                        if (kind == PieceKind.QUEEN || (kind == PieceKind.BISHOP) == diagonal) return true;
+                }
+            }
+            return false;
+        }
+
+        private long occupancy(int[] squares) {
+            long occupied = 0;
+            for (int square : squares) {
+                if (square >= 0) occupied |= 1L << square;
+            }
+            return occupied;
+        }
+
+        private int pieceAt(int[] squares, int square) {
+            for (int i = 0; i < this.count; i++) {
+                if (squares[i] == square) return i;
+            }
+            return -1;
+        }
+    }
+
+    private static long slide(int from, int[][] directions, long occupied) {
+        long moves = 0;
+        for (int[] direction : directions) {
+            int r = (from >> 3) + direction[0];
+            int c = (from & 7) + direction[1];
+            while (r >= 0 && r <= 7 && c >= 0 && c <= 7) {
+                moves |= 1L << (r * 8 + c);
+                if ((occupied & (1L << (r * 8 + c))) != 0) break;
+                r += direction[0];
+                c += direction[1];
+            }
+        }
+        return moves;
+    }
+
+    private static int addDistinct(int[] list, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (list[i] == value) return size;
+        }
+        list[size] = value;
+        return size + 1;
+    }
+
+    // Code of a win (odd plies) or loss (even plies)
+    private static int code(int plies) {
+        return plies % 2 == 1 ? (plies + 1) / 2 : Tablebase.LOSS + plies / 2;
+    }
+
+    private static int plies(int code) {
+        return code < Tablebase.LOSS ? 2 * code - 1 : 2 * (code - Tablebase.LOSS);
+    }
+
+    // The code for the side that just moved, from the code for the side now to move
+    private static int negate(int code) {
+        if (code == Tablebase.DRAW) return Tablebase.DRAW;
+        return code < Tablebase.LOSS ? Tablebase.LOSS + code : code - Tablebase.LOSS + 1;
+    }
+
+    // The better of two codes for the side to move; -1 stands for none
+    private static int better(int a, int b) {
+        return a < 0 || rank(b) > rank(a) ? b : a;
+    }
+
+    private static int rank(int code) {
+        if (code == Tablebase.DRAW) return 0;
+        return code < Tablebase.LOSS ? 1000 - code : -1000 + (code - Tablebase.LOSS);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java TablebaseGenerator <directory> <threads> <material>...  (e.g. KQK KRK KPK KBNK KRKP)");
+            return;
+        }
+        TablebaseGenerator generator = new TablebaseGenerator(Path.of(args[0]), Integer.parseInt(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            long start = System.currentTimeMillis();
+            try {
+                Tablebase table = generator.generate(args[i]);
+                System.out.println(table.getMaterial() + ": " + table.getIndex().getPositionCount() + " positions per side, "
+                    + (System.currentTimeMillis() - start) + " ms");
+            } catch (ChessFileException | IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import pieces.PieceColor;
+import pieces.PieceKind;
+
+/**
+ * Perfect indexing of the positions of one endgame material, such as "KRvKP".
+ *
+ * The pieces of a material have a fixed order: the white king, the black
+ * king, then the other white pieces and the other black pieces, each side
+ * ordered queen, rook, bishop, knight, pawn. A position is the array of their
+ * squares (row * 8 + col, as in {@link Square#getIndex()}).
+ *
+ * Symmetric positions share an index. Without pawns the board can be rotated
+ * and reflected in 8 ways; with pawns only the files can be mirrored. The king
+ * pair is reduced to its canonical placement through a precomputed table (462
+ * pairs without pawns, 1806 with), and each other piece adds a digit of 64
+ * squares, or 48 for a pawn. Of the symmetric images of a position the one
+ * with the smallest index is canonical; indices of other images, of positions
+ * with pieces on the same square and of unsorted identical pieces are unused.
+ *
+ * The material name has the stronger side first. A position whose colours are
+ * the other way round is looked up with colours swapped and the board mirrored
+ * top to bottom, see {@link #isFlipped(String, String)}.
+ */
+public final class TablebaseIndex {
+
+    public static final int MAX_PIECES = 4;
+
+    // Piece letters from strongest to weakest, and their values for deciding the stronger side
+    private static final String ORDER = "QRBNP";
+    private static final int[] VALUES = {9, 5, 3, 3, 1};
+
+    // TRANSFORMS[t][square]; bit 0 mirrors the files, bit 1 the ranks, bit 2 the diagonal
+    private static final int[][] TRANSFORMS = new int[8][64];
+
+    // Per king pair (white king * 64 + black king): dense index of its canonical pair, and the transforms reaching it
+    private static final KingPairs NO_PAWNS;
+    private static final KingPairs WITH_PAWNS;
+
+    static {
+        for (int t = 0; t < 8; t++) {
+            for (int square = 0; square < 64; square++) {
+                int row = square >> 3;
+                int col = square & 7;
+                if ((t & 4) != 0) {
+                    int swap = row;
+                    row = col;
+                    col = swap;
+                }
+                if ((t & 2) != 0) row = 7 - row;
+                if ((t & 1) != 0) col = 7 - col;
+                TRANSFORMS[t][square] = row * 8 + col;
+            }
+        }
+        NO_PAWNS = new KingPairs(8);
+        WITH_PAWNS = new KingPairs(2);
+    }
+
+    private static final class KingPairs {
+        final int[] index = new int[64 * 64];
+        final int[] transforms = new int[64 * 64];
+        final int[] pairs;
+
+        KingPairs(int transformCount) {
+            int[] canonical = new int[64 * 64];
+            boolean[] used = new boolean[64 * 64];
+            for (int pair = 0; pair < 64 * 64; pair++) {
+                int white = pair >> 6;
+                int black = pair & 63;
+                canonical[pair] = -1;
+                if (Math.abs((white >> 3) - (black >> 3)) <= 1 && Math.abs((white & 7) - (black & 7)) <= 1) {
+                    continue; // same or adjacent squares
+                }
+                int best = Integer.MAX_VALUE;
+                int mask = 0;
+                for (int t = 0; t < transformCount; t++) {
+                    int image = TRANSFORMS[t][white] * 64 + TRANSFORMS[t][black];
+                    if (image < best) {
+                        best = image;
+                        mask = 1 << t;
+                    } else if (image == best) {
+                        mask |= 1 << t;
+                    }
+                }
+                canonical[pair] = best;
+                this.transforms[pair] = mask;
+                used[best] = true;
+            }
+            int count = 0;
+            int[] dense = new int[64 * 64];
+            for (int pair = 0; pair < 64 * 64; pair++) {
+                dense[pair] = used[pair] ? count++ : -1;
+            }
+            this.pairs = new int[count];
+            for (int pair = 0; pair < 64 * 64; pair++) {
+                this.index[pair] = canonical[pair] < 0 ? -1 : dense[canonical[pair]];
+                if (used[pair]) {
+                    this.pairs[dense[pair]] = pair;
+                }
+            }
+        }
+    }
+
+    private final String name;
+    private final PieceColor[] colors;
+    private final PieceKind[] kinds;
+    private final boolean hasPawns;
+    private final KingPairs kings;
+    private final int[] multipliers;
+    // First piece of the run of identical pieces each piece belongs to
+    private final int[] groupStart;
+    // Number of placements of the pieces other than the kings
+    private final int restSize;
+    private final int positionCount;
+
+    private TablebaseIndex(String strong, String weak) {
+        this.name = "K" + strong + "vK" + weak;
+        int count = 2 + strong.length() + weak.length();
+        this.colors = new PieceColor[count];
+        this.kinds = new PieceKind[count];
+        this.colors[0] = PieceColor.WHITE;
+        this.kinds[0] = PieceKind.KING;
+        this.colors[1] = PieceColor.BLACK;
+        this.kinds[1] = PieceKind.KING;
+        for (int i = 0; i < strong.length(); i++) {
+            this.colors[2 + i] = PieceColor.WHITE;
+            this.kinds[2 + i] = PieceKind.fromLetter(strong.charAt(i));
+        }
+        for (int i = 0; i < weak.length(); i++) {
+            this.colors[2 + strong.length() + i] = PieceColor.BLACK;
+            this.kinds[2 + strong.length() + i] = PieceKind.fromLetter(weak.charAt(i));
+        }
+        this.hasPawns = strong.indexOf('P') >= 0 || weak.indexOf('P') >= 0;
+        this.kings = this.hasPawns ? WITH_PAWNS : NO_PAWNS;
+        this.multipliers = new int[count];
+        this.groupStart = new int[count];
+        long size = 1;
+        for (int i = count - 1; i >= 2; i--) {
+            this.multipliers[i] = (int) size;
+            size *= this.kinds[i] == PieceKind.PAWN ? 48 : 64;
+        }
+        this.restSize = (int) size;
+        size *= this.kings.pairs.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many positions for " + this.name);
+        }
+        this.positionCount = (int) size;
+        for (int i = 0; i < count; i++) {
+            boolean same = i > 2 && this.colors[i] == this.colors[i - 1] && this.kinds[i] == this.kinds[i - 1];
+            this.groupStart[i] = same ? this.groupStart[i - 1] : i;
+        }
+    }
+
+    /**
+     * Get the index of a material.
+     *
+     * @param material Pieces of both sides starting with their king, e.g. "KRKP", "KRvKP" or "KPK"
+     * @return The index of the canonical material, which may have the sides the other way round
+     * @throws IllegalArgumentException if the material is malformed or has more than {@value #MAX_PIECES} pieces
+     */
+    public static TablebaseIndex of(String material) {
+        String text = material.trim().toUpperCase().replace("V", "");
+        int second = text.indexOf('K', 1);
+        if (!text.startsWith("K") || second < 0 || text.indexOf('K', second + 1) >= 0) {
+            throw new IllegalArgumentException("Material must name both kings: " + material);
+        }
+        if (text.length() > MAX_PIECES) {
+            throw new IllegalArgumentException("At most " + MAX_PIECES + " pieces are supported: " + material);
+        }
+        String white = sortPieces(text.substring(1, second), material);
+        String black = sortPieces(text.substring(second + 1), material);
+        if (white.isEmpty() && black.isEmpty()) {
+            throw new IllegalArgumentException("Bare kings need no table");
+        }
+        return isFlipped(white, black) ? new TablebaseIndex(black, white) : new TablebaseIndex(white, black);
+    }
+
+    /**
+     * Checks if a position whose sides have these pieces must be looked up with
+     * colours swapped, i.e. if black has the stronger material.
+     *
+     * @param white The white pieces other than the king, in any order, e.g. "RP"
+     * @param black The black pieces other than the king, in any order
+     * @return true if black is stronger
+     * @throws IllegalArgumentException if a letter is not a piece
+     */
+    public static boolean isFlipped(String white, String black) {
+        white = sortPieces(white, white);
+        black = sortPieces(black, black);
+        int whiteValue = value(white);
+        int blackValue = value(black);
+        if (whiteValue != blackValue) {
+            return blackValue > whiteValue;
+        }
+        if (white.length() != black.length()) {
+            return black.length() > white.length();
+        }
+        for (int i = 0; i < white.length(); i++) {
+            int w = ORDER.indexOf(white.charAt(i));
+            int b = ORDER.indexOf(black.charAt(i));
+            if (w != b) {
+                return b < w;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the canonical name of a material, with the stronger side first.
+     *
+     * @param white The white pieces other than the king, in any order
+     * @param black The black pieces other than the king, in any order
+     * @return The name, e.g. "KRvKP"
+     * @throws IllegalArgumentException if a letter is not a piece
+     */
+    public static String nameOf(String white, String black) {
+        String w = sortPieces(white, white);
+        String b = sortPieces(black, black);
+        return isFlipped(white, black) ? "K" + b + "vK" + w : "K" + w + "vK" + b;
+    }
+
+    private static String sortPieces(String pieces, String material) {
+        StringBuilder sorted = new StringBuilder(pieces.length());
+        for (int i = 0; i < pieces.length(); i++) {
+            if (ORDER.indexOf(pieces.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Invalid piece '" + pieces.charAt(i) + "' in " + material);
+            }
+        }
+        for (char letter : ORDER.toCharArray()) {
+            for (int i = 0; i < pieces.length(); i++) {
+                if (pieces.charAt(i) == letter) {
+                    sorted.append(letter);
+                }
+            }
+        }
+        return sorted.toString();
+    }
+
+    private static int value(String pieces) {
+        int value = 0;
+        for (int i = 0; i < pieces.length(); i++) {
+            value += VALUES[ORDER.indexOf(pieces.charAt(i))];
+        }
+        return value;
+    }
+
+    /**
+     * Get the canonical name of the material, e.g. "KRvKP".
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public int getPieceCount() {
+        return this.kinds.length;
+    }
+
+    public PieceColor getColor(int piece) {
+        return this.colors[piece];
+    }
+
+    public PieceKind getKind(int piece) {
+        return this.kinds[piece];
+    }
+
+    public boolean hasPawns() {
+        return this.hasPawns;
+    }
+
+    /**
+     * Get the number of indices per side to move, including unused ones.
+     */
+    public int getPositionCount() {
+        return this.positionCount;
+    }
+
+    /**
+     * Computes the index of a position.
+     *
+     * @param squares Square of each piece, in the order of this material
+     * @return The index, or -1 if the kings stand on the same or adjacent squares or a pawn is on a back rank
+     */
+    public int encode(int[] squares) {
+        return encode(squares, new int[this.kinds.length]);
+    }
+
+    // As encode(int[]), with a scratch array of at least getPieceCount() elements
+    int encode(int[] squares, int[] digits) {
+        int pair = this.kings.index[squares[0] * 64 + squares[1]];
+        if (pair < 0) {
+            return -1;
+        }
+        int transforms = this.kings.transforms[squares[0] * 64 + squares[1]];
+        int count = this.kinds.length;
+        int best = Integer.MAX_VALUE;
+        for (int t = 0; transforms != 0; t++, transforms >>>= 1) {
+            if ((transforms & 1) == 0) {
+                continue;
+            }
+            int[] transform = TRANSFORMS[t];
+            int rest = 0;
+            for (int i = 2; i < count; i++) {
+                int digit = digit(i, transform[squares[i]]);
+                if (digit < 0) {
+                    return -1;
+                }
+                // Identical pieces are kept in ascending order
+                int j = i;
+                while (j > this.groupStart[i] && digits[j - 1] > digit) {
+                    digits[j] = digits[j - 1];
+                    j--;
+                }
+                digits[j] = digit;
+            }
+            for (int i = 2; i < count; i++) {
+                rest += digits[i] * this.multipliers[i];
+            }
+            best = Math.min(best, rest);
+        }
+        return pair * this.restSize + best;
+    }
+
+    private int digit(int piece, int square) {
+        if (this.kinds[piece] != PieceKind.PAWN) {
+            return square;
+        }
+        return square < 8 || square >= 56 ? -1 : square - 8;
+    }
+
+    /**
+     * Computes the position of an index. The result may be unused: call
+     * {@link #isCanonical(int, int[])} to find out.
+     *
+     * @param index The index
+     * @param squares Receives the square of each piece
+     */
+    public void decode(int index, int[] squares) {
+        int pair = this.kings.pairs[index / this.restSize];
+        squares[0] = pair >> 6;
+        squares[1] = pair & 63;
+        int rest = index % this.restSize;
+        for (int i = 2; i < this.kinds.length; i++) {
+            int digit = rest / this.multipliers[i];
+            rest %= this.multipliers[i];
+            squares[i] = this.kinds[i] == PieceKind.PAWN ? digit + 8 : digit;
+        }
+    }
+
+    /**
+     * Checks if an index is in use: its pieces stand on different squares and it
+     * is the canonical image of its position.
+     *
+     * @param index The index
+     * @param squares The decoded position, see {@link #decode(int, int[])}
+     * @return true if the index is in use
+     */
+    public boolean isCanonical(int index, int[] squares) {
+        long occupied = 0;
+        for (int i = 0; i < this.kinds.length; i++) {
+            long bit = 1L << squares[i];
+            if ((occupied & bit) != 0) {
+                return false;
+            }
+            occupied |= bit;
+        }
+        return encode(squares) == index;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
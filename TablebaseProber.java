@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import pieces.Piece;
+import pieces.PieceColor;
+import exceptions.*;
+
+/**
+ * Answers positions from a directory of endgame tables.
+ *
+ * Every table file in the directory is memory-mapped when the prober is
+ * opened, so a probe costs a scan of the board, one index computation and one
+ * byte read. Positions with more pieces than the largest table are rejected
+ * after a few squares, so probing on every move of a game or in every search
+ * node is cheap. Recent answers are kept in a small LRU cache keyed by the
+ * position hash; the cache is shared, so a prober may be used by several
+ * threads at once.
+ */
+public class TablebaseProber {
+
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    // Cached for positions of known material that no table answers
+    private static final Tablebase.Result NONE = new Tablebase.Result(Tablebase.Wdl.DRAW, -1);
+
+    private final Map<String, Tablebase> tables;
+    private final int maxPieces;
+    private final Map<Long, Tablebase.Result> cache;
+
+    private TablebaseProber(Map<String, Tablebase> tables, int cacheSize) {
+        this.tables = tables;
+        int largest = 0;
+        for (Tablebase table : tables.values()) {
+            largest = Math.max(largest, table.getIndex().getPieceCount());
+        }
+        this.maxPieces = largest;
+        this.cache = new LinkedHashMap<Long, Tablebase.Result>(cacheSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tablebase.Result> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens all tables in a directory, as written by {@link TablebaseGenerator}.
+     *
+     * @param directory The directory holding the table files
+     * @param cacheSize Number of recent probes to remember, 0 for none
+     * @return The prober
+     * @throws ChessFileException if the directory or a table cannot be read
+     */
+    public static TablebaseProber open(Path directory, int cacheSize) throws ChessFileException {
+        Map<String, Tablebase> tables = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.SUFFIX)) {
+            for (Path file : files) {
+                Tablebase table = Tablebase.open(file);
+                tables.put(table.getMaterial(), table);
+            }
+        } catch (IOException e) {
+            throw new ChessFileException(directory.toString(), "list", e);
+        }
+        return new TablebaseProber(tables, Math.max(0, cacheSize));
+    }
+
+    /**
+     * Get the materials that can be probed, e.g. "KQvK", in name order.
+     */
+    public Set<String> getMaterials() {
+        return Collections.unmodifiableSet(new TreeSet<>(this.tables.keySet()));
+    }
+
+    /**
+     * Get the largest number of pieces, kings included, of any table.
+     */
+    public int getMaxPieces() {
+        return this.maxPieces;
+    }
+
+    /**
+     * Looks up the engine's position.
+     *
+     * @param engine The engine
+     * @return The result for the side to move, or null if no table has the
+     *         position's material or the position has castling rights or en passant
+     */
+    public Tablebase.Result probe(ChessEngine engine) {
+        if (this.maxPieces == 0 || !Tablebase.isProbeable(engine)) {
+            return null;
+        }
+        Piece[] pieces = new Piece[this.maxPieces];
+        int[] squares = new int[this.maxPieces];
+        int count = Tablebase.collect(engine, pieces, squares);
+        if (count < 0) {
+            return null;
+        }
+        Long key = engine.getPositionHash();
+        Tablebase.Result result;
+        synchronized (this.cache) {
+            result = this.cache.get(key);
+        }
+        if (result == null) {
+            Tablebase table = this.tables.get(Tablebase.materialOf(pieces, count));
+            result = table == null ? null
+                : table.probe(pieces, squares, count, engine.getSideToMove() == PieceColor.WHITE);
+            synchronized (this.cache) {
+                this.cache.put(key, result == null ? NONE : result);
+            }
+        }
+        return result == NONE ? null : result;
+    }
+
+    /**
+     * Adjudicates the engine's position by the tables.
+     *
+     * @param engine The engine
+     * @return The result of the game with best play, or null if the position cannot be probed
+     */
+    public GameResult adjudicate(ChessEngine engine) {
+        Tablebase.Result known = probe(engine);
+        if (known == null) {
+            return null;
+        }
+        GameResult result = new GameResult();
+        result.adjudicate(known, engine.getSideToMove());
+        return result;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Decides how long a search may think in a game played on a clock.
+ *
+ * From the remaining time, the increment and the moves left until the next
+ * time control, a soft and a hard limit are derived. The hard limit aborts a
+ * search in the middle of an iteration. The soft limit is checked between
+ * iterations and is scaled by how stable the search is: when the best move
+ * has not changed for a few iterations the search stops early, and when it
+ * keeps changing or the score drops the search may use more time, up to the
+ * hard limit.
+ *
+ * A manager created for pondering does not count time until
+ * {@link #ponderHit(long, long, int)} gives it the clock. The hard limit then
+ * runs from the ponder hit, but the soft limit counts all time spent thinking,
+ * so a search that pondered long enough on a stable move stops at once. The
+ * search thread reads the limits while another thread may call ponderHit.
+ */
+public class TimeManager {
+
+    public static final long DEFAULT_OVERHEAD_MILLIS = 30;
+
+    // Moves the remaining time is spread over in sudden death, and the most ever assumed
+    private static final int SUDDEN_DEATH_HORIZON = 30;
+    private static final int MAX_HORIZON = 40;
+    // A new iteration takes longer than all earlier ones together, so none is started late in the budget
+    private static final double NEW_ITERATION_FRACTION = 0.6;
+    private static final int SCORE_DROP = 50;
+
+    private final long overheadMillis;
+    private volatile boolean adaptive;
+    private final long createdTime;
+    private volatile long startTime;
+    private volatile long softLimit;
+    private volatile long hardLimit;
+    private volatile boolean stopNow;
+
+    // Stability of the search so far, updated by the search thread after each iteration
+    private Move lastBestMove;
+    private int lastScore;
+    private volatile int completedIterations;
+    private volatile int stableIterations;
+    private volatile boolean scoreDropped;
+    private volatile int lastDepth;
+
+    private TimeManager(long overheadMillis, boolean adaptive) {
+        this.overheadMillis = overheadMillis;
+        this.adaptive = adaptive;
+        this.createdTime = System.currentTimeMillis();
+        this.startTime = -1;
+        this.softLimit = Long.MAX_VALUE;
+        this.hardLimit = Long.MAX_VALUE;
+    }
+
+    /**
+     * Creates a manager for a move on the clock; time is counted from now.
+     *
+     * @param remainingMillis Time left on the mover's clock
+     * @param incrementMillis Increment per move
+     * @param movesToGo Moves until the next time control, or 0 for sudden death
+     * @param overheadMillis Time reserved for communication and move making
+     * @return The manager
+     */
+    public static TimeManager forClock(long remainingMillis, long incrementMillis, int movesToGo, long overheadMillis) {
+        TimeManager manager = new TimeManager(overheadMillis, true);
+        manager.allocate(remainingMillis, incrementMillis, movesToGo);
+        manager.startTime = System.currentTimeMillis();
+        return manager;
+    }
+
+    /**
+     * Creates a manager for a fixed time per move, without early stops.
+     *
+     * @param moveTimeMillis Time for the move
+     * @param overheadMillis Time reserved for communication and move making
+     * @return The manager
+     */
+    public static TimeManager forMoveTime(long moveTimeMillis, long overheadMillis) {
+        TimeManager manager = new TimeManager(overheadMillis, false);
+        manager.ponderHit(moveTimeMillis);
+        return manager;
+    }
+
+    /**
+     * Creates a manager for a ponder search: no limits apply until
+     * {@link #ponderHit(long, long, int)} is called.
+     *
+     * @param overheadMillis Time reserved for communication and move making
+     * @return The manager
+     */
+    public static TimeManager forPondering(long overheadMillis) {
+        return new TimeManager(overheadMillis, true);
+    }
+
+    /**
+     * Starts the clock of a ponder search once the expected move has been played.
+     * The search keeps everything it found so far.
+     *
+     * @param remainingMillis Time left on the mover's clock
+     * @param incrementMillis Increment per move
+     * @param movesToGo Moves until the next time control, or 0 for sudden death
+     */
+    public void ponderHit(long remainingMillis, long incrementMillis, int movesToGo) {
+        allocate(remainingMillis, incrementMillis, movesToGo);
+        this.startTime = System.currentTimeMillis();
+        if (this.completedIterations > 0 && getThinkingMillis() >= softBudget() * NEW_ITERATION_FRACTION) {
+            this.stopNow = true;
+        }
+    }
+
+    /**
+     * Starts the clock of a ponder search with a fixed time for the move, without early stops.
+     *
+     * @param moveTimeMillis Time for the move
+     */
+    public void ponderHit(long moveTimeMillis) {
+        this.adaptive = false;
+        this.hardLimit = Math.max(1, moveTimeMillis - this.overheadMillis);
+        this.softLimit = this.hardLimit;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    private void allocate(long remainingMillis, long incrementMillis, int movesToGo) {
+        long usable = Math.max(1, remainingMillis - this.overheadMillis);
+        int horizon = movesToGo > 0 ? Math.min(movesToGo, MAX_HORIZON) : SUDDEN_DEATH_HORIZON;
+        long soft = usable / horizon + incrementMillis * 3 / 4;
+        // Never stake more than a third of the clock on one move, except on the last move of a control
+        long cap = movesToGo == 1 ? usable * 9 / 10 : usable / 3;
+        long hard = Math.max(1, Math.min(soft * 4, cap));
+        this.hardLimit = hard;
+        this.softLimit = Math.max(1, Math.min(soft, hard));
+    }
+
+    /**
+     * Checks if the clock is running, i.e. this is not a ponder search still waiting for its hit.
+     */
+    public boolean isRunning() {
+        return this.startTime >= 0;
+    }
+
+    public long getSoftLimit() {
+        return this.softLimit;
+    }
+
+    public long getHardLimit() {
+        return this.hardLimit;
+    }
+
+    /**
+     * Get the time used since the clock started.
+     *
+     * @return Milliseconds, or 0 while pondering
+     */
+    public long getElapsedMillis() {
+        long start = this.startTime;
+        return start < 0 ? 0 : System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Get the time spent thinking, including time spent pondering before the ponder hit.
+     *
+     * @return Milliseconds since the manager was created
+     */
+    public long getThinkingMillis() {
+        return System.currentTimeMillis() - this.createdTime;
+    }
+
+    /**
+     * Checks if the search must be aborted at once: the hard limit is reached,
+     * or a ponder hit came after the move was already thought through.
+     */
+    public boolean isHardLimitReached() {
+        return this.stopNow || (isRunning() && getElapsedMillis() >= this.hardLimit);
+    }
+
+    /**
+     * Called after every completed iteration. Tracks how stable the best move
+     * is and decides whether another iteration is worth starting.
+     *
+     * @param iteration Result of the iteration just completed
+     * @return true if the search should stop and play the best move
+     */
+    public boolean shouldStop(SearchResult iteration) {
+        Move best = iteration.getBestMove();
+        boolean sameMove = best != null && this.lastBestMove != null && Search.sameMove(best, this.lastBestMove);
+        this.stableIterations = sameMove ? this.stableIterations + 1 : 0;
+        this.scoreDropped = this.lastBestMove != null && this.lastScore - iteration.getScore() >= SCORE_DROP;
+        this.lastBestMove = best;
+        this.lastScore = iteration.getScore();
+        this.lastDepth = iteration.getDepth();
+        this.completedIterations++;
+        if (!this.adaptive || !isRunning()) {
+            return false;
+        }
+        return getThinkingMillis() >= softBudget() * NEW_ITERATION_FRACTION;
+    }
+
+    // The soft limit scaled by stability, never beyond the hard limit
+    private double softBudget() {
+        if (!this.adaptive) {
+            return this.hardLimit;
+        }
+        double scale;
+        if (this.stableIterations >= 4) {
+            scale = 0.5;
+        } else if (this.stableIterations >= 2) {
+            scale = 0.75;
+        } else if (this.stableIterations == 1 || this.lastDepth <= 1) {
+            scale = 1.0;
+        } else {
+            scale = 1.5; // the best move just changed
+        }
+        if (this.scoreDropped) {
+            scale *= 1.5;
+        }
+        return Math.min(this.hardLimit, this.softLimit * scale);
+    }
+}
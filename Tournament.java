@@ -0,0 +1,520 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import exceptions.*;
+
+/**
+ * Runs a round-robin or Swiss tournament between engine configurations.
+ *
+ * The games of a round are played in parallel, each on its own ChessEngine, on
+ * a pool of configurable size. Round-robin pairings do not depend on results,
+ * so all rounds are started at once; Swiss rounds are paired from the standings
+ * after the previous round. Standings are updated and the game is appended to
+ * the PGN file as each game finishes, not at the end of its round.
+ *
+ * Usage: java Tournament (rr|swiss) rounds threads out.pgn player player...
+ * where a player is e.g. "Fast:nodes=500" (see {@link MatchRunner.Player#parse(String)}).
+ */
+public class Tournament {
+
+    public enum Format {
+        ROUND_ROBIN,
+        SWISS
+    }
+
+    /**
+     * A game to be played: the round and board, and the players' entry numbers.
+     * A pairing with a black entry of -1 is a bye for the white entry.
+     */
+    public static class Pairing {
+        private final int round;
+        private final int board;
+        private final int white;
+        private final int black;
+
+        public Pairing(int round, int board, int white, int black) {
+            this.round = round;
+            this.board = board;
+            this.white = white;
+            this.black = black;
+        }
+
+        public int getRound() {
+            return this.round;
+        }
+
+        public int getBoard() {
+            return this.board;
+        }
+
+        public int getWhite() {
+            return this.white;
+        }
+
+        public int getBlack() {
+            return this.black;
+        }
+
+        public boolean isBye() {
+            return this.black < 0;
+        }
+    }
+
+    /**
+     * A finished game.
+     */
+    public static class Game {
+        private final Pairing pairing;
+        private final GameResult result;
+        private final String pgn;
+
+        Game(Pairing pairing, GameResult result, String pgn) {
+            this.pairing = pairing;
+            this.result = result;
+            this.pgn = pgn;
+        }
+
+        public Pairing getPairing() {
+            return this.pairing;
+        }
+
+        public GameResult getResult() {
+            return this.result;
+        }
+
+        public String getPgn() {
+            return this.pgn;
+        }
+    }
+
+    /**
+     * One line of the standings.
+     */
+    public static class Standing {
+        private final int entry;
+        private final String name;
+        private final double points;
+        private final double tiebreak;
+        private final int wins;
+        private final int draws;
+        private final int losses;
+
+        Standing(int entry, String name, double points, double tiebreak, int wins, int draws, int losses) {
+            this.entry = entry;
+            this.name = name;
+            this.points = points;
+            this.tiebreak = tiebreak;
+            this.wins = wins;
+            this.draws = draws;
+            this.losses = losses;
+        }
+
+        public int getEntry() {
+            return this.entry;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public double getPoints() {
+            return this.points;
+        }
+
+        /**
+         * Get the tiebreak score: Sonneborn-Berger in round robins, Buchholz in Swiss events.
+         */
+        public double getTiebreak() {
+            return this.tiebreak;
+        }
+
+        public int getWins() {
+            return this.wins;
+        }
+
+        public int getDraws() {
+            return this.draws;
+        }
+
+        public int getLosses() {
+            return this.losses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s %5.1f  (%5.2f)  +%d =%d -%d", this.name, this.points, this.tiebreak,
+                this.wins, this.draws, this.losses);
+        }
+    }
+
+    // Per-entry record, in half points so that sums stay exact
+    private static class Record {
+        int halfPoints;
+        int wins;
+        int draws;
+        int losses;
+        int colourBalance; // whites minus blacks
+        int lastColour; // 1 white, -1 black, 0 none yet
+        boolean hadBye;
+        final List<Integer> opponents = new ArrayList<>();
+        final List<Integer> opponentHalfPoints = new ArrayList<>(); // half points scored against each opponent
+    }
+
+    private final String name;
+    private final List<MatchRunner.Player> players;
+    private final Format format;
+    private final int rounds;
+    private final int concurrency;
+    private final Record[] records;
+    private List<byte[]> openings = Collections.emptyList();
+    private int maxPlies = MatchRunner.DEFAULT_MAX_PLIES;
+    private Consumer<Game> gameListener;
+    private TablebaseProber tablebases;
+    private int gamesStarted;
+
+    /**
+     * @param name Event name written to the PGN tags
+     * @param players The entries, in seeding order
+     * @param format Round robin or Swiss
+     * @param rounds Number of Swiss rounds; ignored for round robins, which play every pairing once
+     * @param concurrency Games played at the same time
+     */
+    public Tournament(String name, List<MatchRunner.Player> players, Format format, int rounds, int concurrency) {
+        if (players.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two players");
+        }
+        this.name = name;
+        this.players = new ArrayList<>(players);
+        this.format = format;
+        this.rounds = format == Format.ROUND_ROBIN ? players.size() - 1 + (players.size() & 1) : rounds;
+        this.concurrency = Math.max(1, concurrency);
+        this.records = new Record[players.size()];
+        for (int i = 0; i < this.records.length; i++) {
+            this.records[i] = new Record();
+        }
+    }
+
+    /**
+     * Sets start positions (see {@link MatchRunner#loadOpenings(String)}), used in
+     * turn for successive games. By default every game starts from the standard position.
+     */
+    public void setOpenings(List<byte[]> openings) {
+        this.openings = openings;
+    }
+
+    public void setMaxPlies(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Adjudicates games as soon as they reach a position in the endgame tables.
+     *
+     * @param tablebases The tables, or null to play such positions out (the default)
+     */
+    public void setTablebases(TablebaseProber tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Registers a callback for every finished game. It is called on the thread
+     * running the tournament, after the standings have been updated.
+     */
+    public void setGameListener(Consumer<Game> gameListener) {
+        this.gameListener = gameListener;
+    }
+
+    public int getRounds() {
+        return this.rounds;
+    }
+
+    /**
+     * Plays the whole tournament.
+     *
+     * @param pgnPath File each finished game is appended to, or null
+     * @return The final standings
+     * @throws ChessFileException if the PGN file cannot be written
+     * @throws InterruptedException if interrupted while waiting for games
+     */
+    public List<Standing> run(String pgnPath) throws ChessFileException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.concurrency);
+        try {
+            if (this.format == Format.ROUND_ROBIN) {
+                List<Pairing> all = new ArrayList<>();
+                for (int round = 1; round <= this.rounds; round++) {
+                    all.addAll(roundRobinPairings(round));
+                }
+                play(pool, all, pgnPath);
+            } else {
+                for (int round = 1; round <= this.rounds; round++) {
+                    play(pool, swissPairings(round), pgnPath);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return getStandings();
+    }
+
+    /**
+     * Get the current standings, best first, ordered by points and then tiebreak.
+     */
+    public List<Standing> getStandings() {
+        List<Standing> standings = new ArrayList<>();
+        for (int i = 0; i < this.records.length; i++) {
+            Record record = this.records[i];
+            int tiebreak = 0;
+            for (int g = 0; g < record.opponents.size(); g++) {
+                int opponentHalfPoints = this.records[record.opponents.get(g)].halfPoints;
+                tiebreak += this.format == Format.SWISS
+                    ? opponentHalfPoints
+                    : opponentHalfPoints * record.opponentHalfPoints.get(g); // in quarter points
+            }
+            double tiebreakPoints = this.format == Format.SWISS ? tiebreak / 2.0 : tiebreak / 4.0;
+            standings.add(new Standing(i, this.players.get(i).getName(), record.halfPoints / 2.0, tiebreakPoints,
+                record.wins, record.draws, record.losses));
+        }
+        standings.sort(Comparator.comparingDouble(Standing::getPoints).reversed()
+            .thenComparing(Comparator.comparingDouble(Standing::getTiebreak).reversed())
+            .thenComparingInt(Standing::getEntry));
+        return standings;
+    }
+
+    // Plays the pairings in parallel and records each game as it finishes
+    private void play(ExecutorService pool, List<Pairing> pairings, String pgnPath)
+            throws ChessFileException, InterruptedException {
+        CompletionService<Game> games = new ExecutorCompletionService<>(pool);
+        int submitted = 0;
+        for (Pairing pairing : pairings) {
+            if (pairing.isBye()) {
+                recordBye(pairing.getWhite());
+                continue;
+            }
+            int gameNumber = this.gamesStarted++;
+            games.submit(() -> playGame(pairing, gameNumber));
+            submitted++;
+        }
+        for (int i = 0; i < submitted; i++) {
+            Game game;
+            try {
+                game = games.take().get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tournament game failed", e.getCause());
+            }
+            recordGame(game);
+            if (pgnPath != null) {
+                PGNWriter.appendGames(pgnPath, List.of(game.getPgn()));
+            }
+            if (this.gameListener != null) {
+                this.gameListener.accept(game);
+            }
+        }
+    }
+
+    private Game playGame(Pairing pairing, int gameNumber) {
+        MatchRunner.Player white = this.players.get(pairing.getWhite());
+        MatchRunner.Player black = this.players.get(pairing.getBlack());
+        ChessEngine engine;
+        if (this.openings.isEmpty()) {
+            engine = new ChessEngine();
+        } else {
+            try {
+                engine = ChessEngine.fromSnapshot(this.openings.get(gameNumber % this.openings.size()));
+            } catch (GameStateException e) {
+                throw new IllegalStateException("Opening snapshot is invalid", e);
+            }
+        }
+        GameResult result = MatchRunner.playOut(engine, white, black, this.maxPlies, this.tablebases);
+
+        String resultText = PGNWriter.resultString(result);
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", this.name);
+        tags.put("Site", "?");
+        tags.put("Date", LocalDate.now().toString());
+        tags.put("Round", pairing.getRound() + "." + pairing.getBoard());
+        tags.put("White", white.getName());
+        tags.put("Black", black.getName());
+        tags.put("Result", resultText);
+        tags.put("Termination", result.getReason());
+        return new Game(pairing, result, PGNWriter.formatGame(engine, tags, resultText));
+    }
+
+    private void recordGame(Game game) {
+        String resultText = PGNWriter.resultString(game.getResult());
+        int whiteHalfPoints = resultText.equals("1-0") ? 2 : resultText.equals("0-1") ? 0 : 1;
+        Pairing pairing = game.getPairing();
+        recordSide(this.records[pairing.getWhite()], pairing.getBlack(), whiteHalfPoints, 1);
+        recordSide(this.records[pairing.getBlack()], pairing.getWhite(), 2 - whiteHalfPoints, -1);
+    }
+
+    private static void recordSide(Record record, int opponent, int halfPoints, int colour) {
+        record.halfPoints += halfPoints;
+        if (halfPoints == 2) record.wins++;
+        else if (halfPoints == 1) record.draws++;
+        else record.losses++;
+        record.colourBalance += colour;
+        record.lastColour = colour;
+        record.opponents.add(opponent);
+        record.opponentHalfPoints.add(halfPoints);
+    }
+
+    // Swiss byes score a full point; a round-robin bye is just a round off
+    private void recordBye(int entry) {
+        Record record = this.records[entry];
+        record.hadBye = true;
+        if (this.format == Format.SWISS) {
+            record.halfPoints += 2;
+        }
+    }
+
+    /**
+     * Get the pairings of a round robin round, by the circle method: the last
+     * entry stays put while the others rotate one place each round.
+     *
+     * @param round Round number, from 1
+     * @return The round's pairings, including a bye if the number of players is odd
+     */
+    List<Pairing> roundRobinPairings(int round) {
+        int n = this.players.size() + (this.players.size() & 1);
+        int[] seats = new int[n];
+        seats[n - 1] = n - 1;
+        for (int i = 0; i < n - 1; i++) {
+            seats[i] = (i + round - 1) % (n - 1);
+        }
+        List<Pairing> pairings = new ArrayList<>();
+        int board = 1;
+        for (int i = 0; i < n / 2; i++) {
+            int a = seats[i];
+            int b = seats[n - 1 - i];
+            // The fixed seat alternates colours; elsewhere the upper half has white
+            boolean aWhite = i != 0 || round % 2 == 1;
+            int white = aWhite ? a : b;
+            int black = aWhite ? b : a;
+            if (white >= this.players.size()) {
+                pairings.add(new Pairing(round, 0, black, -1));
+            } else if (black >= this.players.size()) {
+                pairings.add(new Pairing(round, 0, white, -1));
+            } else {
+                pairings.add(new Pairing(round, board++, white, black));
+            }
+        }
+        return pairings;
+    }
+
+    /**
+     * Get the pairings of a Swiss round from the current standings. Players are
+     * ranked by score and seed; each is paired with the highest ranked player
+     * below it that it has not met yet, backtracking when the rest of the field
+     * cannot then be paired. With an odd field the lowest ranked player without
+     * a bye sits out.
+     *
+     * @param round Round number, from 1
+     * @return The round's pairings
+     */
+    List<Pairing> swissPairings(int round) {
+        List<Integer> ranked = new ArrayList<>();
+        for (int i = 0; i < this.players.size(); i++) {
+            ranked.add(i);
+        }
+        ranked.sort(Comparator.<Integer>comparingInt(i -> -this.records[i].halfPoints).thenComparingInt(i -> i));
+
+        List<Pairing> pairings = new ArrayList<>();
+        if ((ranked.size() & 1) == 1) {
+            int bye = ranked.get(ranked.size() - 1);
+            for (int i = ranked.size() - 1; i >= 0; i--) {
+                if (!this.records[ranked.get(i)].hadBye) {
+                    bye = ranked.get(i);
+                    break;
+                }
+            }
+            ranked.remove(Integer.valueOf(bye));
+            pairings.add(new Pairing(round, 0, bye, -1));
+        }
+
+        int[] partner = new int[this.players.size()];
+        Arrays.fill(partner, -1);
+        if (!pairRemaining(ranked, partner, false)) {
+            pairRemaining(ranked, partner, true); // everyone has met; allow rematches
+        }
+        int board = 1;
+        boolean[] seated = new boolean[this.players.size()];
+        for (int higher : ranked) {
+            if (seated[higher]) continue;
+            int lower = partner[higher];
+            seated[higher] = true;
+            seated[lower] = true;
+            Record h = this.records[higher];
+            Record l = this.records[lower];
+            // Whoever has had white less often gets it; otherwise the higher ranked player alternates
+            boolean higherWhite = h.colourBalance != l.colourBalance
+                ? h.colourBalance < l.colourBalance
+                : h.lastColour != 1;
+            pairings.add(new Pairing(round, board++, higherWhite ? higher : lower, higherWhite ? lower : higher));
+        }
+        return pairings;
+    }
+
+    private boolean pairRemaining(List<Integer> ranked, int[] partner, boolean allowRematches) {
+        int first = -1;
+        for (int player : ranked) {
+            if (partner[player] < 0) {
+                first = player;
+                break;
+            }
+        }
+        if (first < 0) {
+            return true;
+        }
+        for (int candidate : ranked) {
+            if (candidate == first || partner[candidate] >= 0) continue;
+            if (!allowRematches && this.records[first].opponents.contains(candidate)) continue;
+            partner[first] = candidate;
+            partner[candidate] = first;
+            if (pairRemaining(ranked, partner, allowRematches)) {
+                return true;
+            }
+            partner[first] = -1;
+            partner[candidate] = -1;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws ChessFileException, InterruptedException {
+        if (args.length < 6) {
+            System.out.println("Usage: java Tournament (rr|swiss) rounds threads out.pgn player player...");
+            return;
+        }
+        Format format = args[0].equalsIgnoreCase("swiss") ? Format.SWISS : Format.ROUND_ROBIN;
+        List<MatchRunner.Player> players = new ArrayList<>();
+        for (int i = 4; i < args.length; i++) {
+            players.add(MatchRunner.Player.parse(args[i]));
+        }
+        Tournament tournament = new Tournament("Engine tournament", players, format,
+            Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        tournament.setGameListener(game -> {
+            Pairing p = game.getPairing();
+            System.out.println("Round " + p.getRound() + " board " + p.getBoard() + ": "
+                + players.get(p.getWhite()).getName() + " - " + players.get(p.getBlack()).getName() + "  "
+                + PGNWriter.resultString(game.getResult()) + " (" + game.getResult().getReason() + ")");
+            for (Standing standing : tournament.getStandings()) {
+                System.out.println("    " + standing);
+            }
+        });
+        System.out.println(format + " tournament, " + players.size() + " players, " + tournament.getRounds() + " rounds");
+        List<Standing> standings = tournament.run(args[3]);
+        System.out.println("Final standings:");
+        for (int i = 0; i < standings.size(); i++) {
+            System.out.println((i + 1) + ". " + standings.get(i));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Fixed-size hash table of search results keyed by Zobrist hash, shared by
+ * all threads searching the same game.
+ *
+ * Each entry is two longs: the key XOR the data, and the data itself. A reader
+ * that sees a half-written entry gets a key mismatch and treats it as a miss,
+ * so no locking is needed. Data layout from the least significant bit: move
+ * code (16 bits, see {@link Move#toCode()}), depth (8 bits), bound (2 bits),
+ * then the score in the upper 32 bits.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2; // score is at least the stored value (fail high)
+    public static final int UPPER_BOUND = 3; // score is at most the stored value (fail low)
+
+    private static final int BYTES_PER_ENTRY = 16;
+
+    private long[] keys;
+    private long[] data;
+    private int mask;
+
+    /**
+     * Creates a table using at most the given amount of memory.
+     *
+     * @param megabytes Size in MB (rounded down to a power-of-two entry count)
+     */
+    public TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    /**
+     * Reallocates the table, discarding all entries. Not safe while a search uses it.
+     *
+     * @param megabytes Size in MB
+     */
+    public void resize(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        int entries = Integer.highestOneBit((int) Math.min(bytes / BYTES_PER_ENTRY, 1 << 30));
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.mask = entries - 1;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(this.keys, 0L);
+        java.util.Arrays.fill(this.data, 0L);
+    }
+
+    public int getCapacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash Zobrist hash of the position
+     * @return The packed entry, or 0 if the position is not stored
+     */
+    public long probe(long hash) {
+        int index = (int) hash & this.mask;
+        long entry = this.data[index];
+        return entry != 0 && (this.keys[index] ^ entry) == hash ? entry : 0L;
+    }
+
+    /**
+     * Stores a search result. An entry for another position is always replaced,
+     * an entry for the same position only by a search at least as deep.
+     *
+     * @param hash Zobrist hash of the position
+     * @param depth Remaining depth the score was searched to
+     * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     * @param score The score
+     * @param moveCode Best move code, or 0 for none
+     */
+    public void store(long hash, int depth, int bound, int score, int moveCode) {
+        int index = (int) hash & this.mask;
+        long old = this.data[index];
+        boolean samePosition = old != 0 && (this.keys[index] ^ old) == hash;
+        if (samePosition && depth < depthOf(old)) {
+            return;
+        }
+        if (moveCode == 0 && samePosition) {
+            moveCode = moveOf(old); // keep the best move known for this position
+        }
+        long entry = (moveCode & 0xFFFFL) | ((long) (depth & 0xFF) << 16) | ((long) bound << 24)
+            | ((long) score << 32);
+        this.data[index] = entry;
+        this.keys[index] = hash ^ entry;
+    }
+
+    /**
+     * Estimates how full the table is from its first thousand slots.
+     *
+     * @return Used slots per thousand, as reported in UCI "hashfull"
+     */
+    public int getHashfull() {
+        int sample = Math.min(1000, this.data.length);
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            if (this.data[i] != 0) used++;
+        }
+        return used * 1000 / sample;
+    }
+
+    public static int moveOf(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    public static int depthOf(long entry) {
+        return (int) ((entry >>> 16) & 0xFF);
+    }
+
+    public static int boundOf(long entry) {
+        return (int) ((entry >>> 24) & 3);
+    }
+
+    public static int scoreOf(long entry) {
+        return (int) (entry >> 32);
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import exceptions.*;
+
+/**
+ * Universal Chess Interface front end: reads commands from standard input and
+ * answers on standard output, so the engine can be driven by chess GUIs and
+ * tournament managers.
+ *
+ * Supported commands: uci, isready, ucinewgame, setoption (Hash, Threads, MultiPV, Ponder),
+ * position startpos|fen ... [moves ...], go (depth, nodes, movetime, wtime,
+ * btime, winc, binc, movestogo, infinite, ponder), ponderhit, stop and quit.
+ *
+ * Clock times are turned into soft and hard limits by a {@link TimeManager}.
+ * "go ponder" searches the position after the expected reply without a clock;
+ * on "ponderhit" the same search continues with the time limits of the go
+ * command.
+ *
+ * The search runs on its own thread, so "stop" and "isready" are answered while
+ * it is thinking. A "position" command that extends the previous one (the usual
+ * case during a game) only plays the new moves instead of replaying the game.
+ *
+ * Usage: java UCIEngine
+ */
+public class UCIEngine {
+
+    public static final String NAME = "Mo-Lights Chess";
+
+    private static final int DEFAULT_HASH_MB = 16;
+    private static final int MAX_HASH_MB = 1024;
+    private static final int MAX_THREADS = 64;
+    private static final int MAX_MULTI_PV = 64;
+    private static final long MOVE_OVERHEAD_MILLIS = TimeManager.DEFAULT_OVERHEAD_MILLIS;
+
+    private final PrintStream out;
+    private final ChessEngine engine;
+    private final TranspositionTable table;
+    private int threads;
+    private int multiPv;
+
+    // The position the engine is in: base FEN plus the moves played from it
+    private String baseFen;
+    private final List<String> playedMoves;
+
+    private Thread searchThread;
+    private final List<Search> searches;
+    private volatile boolean infiniteSearch;
+    private volatile boolean stopRequested;
+
+    // While pondering, the clock of the go command waits for "ponderhit"
+    private volatile boolean pondering;
+    private TimeManager clock;
+    private long ponderTime;
+    private long ponderIncrement;
+    private int ponderMovesToGo;
+    private long ponderMoveTime;
+
+    public UCIEngine(PrintStream out) {
+        this.out = out;
+        this.engine = new ChessEngine();
+        this.table = new TranspositionTable(DEFAULT_HASH_MB);
+        this.threads = 1;
+        this.multiPv = 1;
+        this.baseFen = ChessEngine.START_FEN;
+        this.playedMoves = new ArrayList<>();
+        this.searches = new ArrayList<>();
+    }
+
+    public static void main(String[] args) {
+        UCIEngine uci = new UCIEngine(System.out);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!uci.handle(line)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // stdin closed by the GUI
+        }
+        uci.stopSearch();
+    }
+
+    /**
+     * Processes one command line.
+     *
+     * @param line The command
+     * @return false if the engine should exit ("quit")
+     */
+    public boolean handle(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author Mo-Lights");
+                send("option name Hash type spin default " + DEFAULT_HASH_MB + " min 1 max " + MAX_HASH_MB);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name MultiPV type spin default 1 min 1 max " + MAX_MULTI_PV);
+                send("option name Ponder type check default false");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "ucinewgame":
+                waitForSearch();
+                this.table.clear();
+                break;
+            case "setoption":
+                waitForSearch();
+                setOption(tokens);
+                break;
+            case "position":
+                waitForSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                waitForSearch();
+                go(tokens);
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                // Unknown commands are ignored, as the protocol requires
+                break;
+        }
+        return true;
+    }
+
+    private void setOption(String[] tokens) {
+        String name = null;
+        String value = null;
+        for (int i = 1; i < tokens.length - 1; i++) {
+            if (tokens[i].equals("name")) name = tokens[i + 1];
+            if (tokens[i].equals("value")) value = tokens[i + 1];
+        }
+        if (name == null || value == null) {
+            return;
+        }
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                this.table.resize(clamp(Integer.parseInt(value), 1, MAX_HASH_MB));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                this.threads = clamp(Integer.parseInt(value), 1, MAX_THREADS);
+            } else if (name.equalsIgnoreCase("MultiPV")) {
+                this.multiPv = clamp(Integer.parseInt(value), 1, MAX_MULTI_PV);
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value for " + name + ": " + value);
+        }
+    }
+
+    private void setPosition(String[] tokens) {
+        String fen;
+        int index = 1;
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            fen = ChessEngine.START_FEN;
+            index = 2;
+        } else if (tokens.length > 1 && tokens[1].equals("fen")) {
+            StringBuilder sb = new StringBuilder();
+            for (index = 2; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(tokens[index]);
+            }
+            fen = sb.toString();
+        } else {
+            return;
+        }
+        List<String> moves = new ArrayList<>();
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                moves.add(tokens[index]);
+            }
+        }
+
+        try {
+            // Keep the moves both positions share, undo the rest
+            int common = 0;
+            if (fen.equals(this.baseFen)) {
+                while (common < moves.size() && common < this.playedMoves.size()
+                        && moves.get(common).equals(this.playedMoves.get(common))) {
+                    common++;
+                }
+                while (this.playedMoves.size() > common) {
+                    this.engine.undoMove();
+                    this.playedMoves.remove(this.playedMoves.size() - 1);
+                }
+            } else {
+                this.engine.loadFen(fen);
+                this.baseFen = fen;
+                this.playedMoves.clear();
+            }
+            for (int i = common; i < moves.size(); i++) {
+                Move move = this.engine.findMove(moves.get(i));
+                if (move == null) {
+                    send("info string illegal move " + moves.get(i));
+                    return;
+                }
+                this.engine.makeMove(move);
+                this.playedMoves.add(moves.get(i));
+            }
+        } catch (FENParseException e) {
+            send("info string " + e.getMessage());
+            resetToStart();
+        } catch (GameStateException | InvalidMoveException | InvalidSquareException e) {
+            send("info string position error: " + e.getMessage());
+            resetToStart();
+        }
+    }
+
+    private void resetToStart() {
+        try {
+            this.engine.loadFen(ChessEngine.START_FEN);
+        } catch (FENParseException e) {
+            throw new IllegalStateException(e);
+        }
+        this.baseFen = ChessEngine.START_FEN;
+        this.playedMoves.clear();
+    }
+
+    private void go(String[] tokens) {
+        int depth = 0;
+        long nodes = 0;
+        long moveTime = 0;
+        long time = 0;
+        long increment = 0;
+        int movesToGo = 0;
+        boolean infinite = false;
+        boolean ponder = false;
+        boolean white = this.engine.getCurrentTurn().equals("white");
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            try {
+                switch (tokens[i]) {
+                    case "depth": depth = Integer.parseInt(value); i++; break;
+                    case "nodes": nodes = Long.parseLong(value); i++; break;
+                    case "movetime": moveTime = Long.parseLong(value); i++; break;
+                    case "wtime": if (white) time = Long.parseLong(value); i++; break;
+                    case "btime": if (!white) time = Long.parseLong(value); i++; break;
+                    case "winc": if (white) increment = Long.parseLong(value); i++; break;
+                    case "binc": if (!white) increment = Long.parseLong(value); i++; break;
+                    case "movestogo": movesToGo = Integer.parseInt(value); i++; break;
+                    case "infinite": infinite = true; break;
+                    case "ponder": ponder = true; break;
+                    default: break;
+                }
+            } catch (NumberFormatException e) {
+                send("info string invalid go parameter " + tokens[i] + " " + value);
+            }
+        }
+
+        this.clock = null;
+        if (ponder && (moveTime > 0 || time > 0)) {
+            this.clock = TimeManager.forPondering(MOVE_OVERHEAD_MILLIS);
+            this.ponderTime = time;
+            this.ponderIncrement = increment;
+            this.ponderMovesToGo = movesToGo;
+            this.ponderMoveTime = moveTime;
+        } else if (moveTime > 0) {
+            this.clock = TimeManager.forMoveTime(moveTime, MOVE_OVERHEAD_MILLIS);
+        } else if (time > 0) {
+            this.clock = TimeManager.forClock(time, increment, movesToGo, MOVE_OVERHEAD_MILLIS);
+        }
+
+        this.searches.clear();
+        this.stopRequested = false;
+        this.infiniteSearch = infinite;
+        this.pondering = ponder;
+        // Only the main search watches the clock; the helpers are stopped when it finishes
+        Search main = createSearch(this.engine, depth, nodes, 1);
+        main.setTimeManager(this.clock);
+        main.setMultiPv(this.multiPv);
+        main.setIterationListener(this::sendInfo);
+        for (int i = 1; i < this.threads; i++) {
+            ChessEngine copy = copyEngine();
+            if (copy == null) break;
+            this.searches.add(createSearch(copy, depth, nodes, 1 + (i & 1)));
+        }
+        this.searches.add(0, main);
+        final List<Search> running = new ArrayList<>(this.searches);
+
+        this.searchThread = new Thread(() -> runSearch(running), "uci-search");
+        this.searchThread.start();
+    }
+
+    private Search createSearch(ChessEngine target, int depth, long nodes, int startDepth) {
+        Search search = new Search(target);
+        search.setTranspositionTable(this.table);
+        search.setStartDepth(startDepth);
+        if (depth > 0) search.setDepthLimit(depth);
+        if (nodes > 0) search.setNodeLimit(nodes);
+        return search;
+    }
+
+    // Helper threads need their own engine in the same position, including the game history for repetitions
+    private ChessEngine copyEngine() {
+        try {
+            ChessEngine copy = new ChessEngine(this.baseFen);
+            for (String move : this.playedMoves) {
+                copy.makeMove(copy.findMove(move));
+            }
+            return copy;
+        } catch (FENParseException | GameStateException | InvalidMoveException | InvalidSquareException e) {
+            return null;
+        }
+    }
+
+    private void runSearch(List<Search> running) {
+        List<Thread> helpers = new ArrayList<>();
+        for (int i = 1; i < running.size(); i++) {
+            Search helper = running.get(i);
+            Thread thread = new Thread(() -> {
+                try {
+                    helper.search();
+                } catch (GameStateException e) {
+                    // a failed helper only costs speed
+                }
+            }, "uci-helper-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            helpers.add(thread);
+        }
+
+        SearchResult result = null;
+        try {
+            result = running.get(0).search();
+        } catch (GameStateException e) {
+            send("info string search failed: " + e.getMessage());
+        }
+        for (int i = 1; i < running.size(); i++) {
+            running.get(i).stop();
+        }
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // With "go infinite" the best move may only be sent after "stop", and while pondering after "ponderhit" too
+        synchronized (this) {
+            while ((this.infiniteSearch || this.pondering) && !this.stopRequested) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        Move best = result == null ? null : result.getBestMove();
+        StringBuilder sb = new StringBuilder("bestmove ").append(best == null ? "0000" : best.toCoordinateNotation());
+        if (best != null && result.getPrincipalVariation().size() > 1) {
+            sb.append(" ponder ").append(result.getPrincipalVariation().get(1).toCoordinateNotation());
+        }
+        send(sb.toString());
+    }
+
+    // The expected move was played: the ponder search goes on, now against the clock
+    private void ponderHit() {
+        synchronized (this) {
+            if (!this.pondering) {
+                return;
+            }
+            if (this.clock != null) {
+                if (this.ponderTime > 0) {
+                    this.clock.ponderHit(this.ponderTime, this.ponderIncrement, this.ponderMovesToGo);
+                } else {
+                    this.clock.ponderHit(this.ponderMoveTime);
+                }
+            }
+            this.pondering = false;
+            notifyAll();
+        }
+    }
+
+    private void sendInfo(SearchResult iteration) {
+        long nodes = iteration.getNodes();
+        for (int i = 1; i < this.searches.size(); i++) {
+            nodes += this.searches.get(i).getNodes();
+        }
+        long millis = iteration.getElapsedMillis();
+        List<SearchResult> lines = iteration.getLines();
+        for (int k = 0; k < lines.size(); k++) {
+            SearchResult line = lines.get(k);
+            StringBuilder sb = new StringBuilder("info depth ").append(iteration.getDepth());
+            if (this.multiPv > 1) {
+                sb.append(" multipv ").append(k + 1);
+            }
+            if (line.isMateScore()) {
+                int plies = Search.MATE_SCORE - Math.abs(line.getScore());
+                int moves = (plies + 1) / 2;
+                sb.append(" score mate ").append(line.getScore() > 0 ? moves : -moves);
+            } else {
+                sb.append(" score cp ").append(line.getScore());
+            }
+            sb.append(" nodes ").append(nodes)
+              .append(" nps ").append(millis == 0 ? nodes * 1000 : nodes * 1000 / millis)
+              .append(" time ").append(millis)
+              .append(" hashfull ").append(this.table.getHashfull());
+            if (!line.getPrincipalVariation().isEmpty()) {
+                sb.append(" pv");
+                for (Move move : line.getPrincipalVariation()) {
+                    sb.append(' ').append(move.toCoordinateNotation());
+                }
+            }
+            send(sb.toString());
+        }
+    }
+
+    private void stopSearch() {
+        synchronized (this) {
+            this.stopRequested = true;
+            notifyAll();
+        }
+        for (Search search : new ArrayList<>(this.searches)) {
+            search.stop();
+        }
+        waitForSearch();
+    }
+
+    private void waitForSearch() {
+        if (this.searchThread == null) {
+            return;
+        }
+        if (this.infiniteSearch || this.pondering) {
+            // a new command ends an infinite or ponder search like "stop" would
+            synchronized (this) {
+                this.stopRequested = true;
+                notifyAll();
+            }
+            for (Search search : new ArrayList<>(this.searches)) {
+                search.stop();
+            }
+        }
+        try {
+            this.searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.searchThread = null;
+    }
+
+    private synchronized void send(String message) {
+        this.out.println(message);
+        this.out.flush();
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
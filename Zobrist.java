@@ -0,0 +1,193 @@
+import pieces.Piece;
+import pieces.PieceColor;
+import pieces.PieceKind;
+import exceptions.*;
+
+/**
+ * Zobrist hashing for chess positions.
+ * Every (piece, square) pair, the side to move, each castling right and each
+ * en passant file gets a fixed 64-bit key; a position hash is the XOR of the
+ * keys that apply to it. The keys come from a fixed-seed generator so hashes
+ * are stable across runs and can be persisted in on-disk indexes.
+ */
+public class Zobrist {
+
+    private static final long SEED = 0x4D6F4C6967687473L; // "MoLights"
+
+    // [pieceIndex][square], square = row * 8 + col
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    // [0] white kingside, [1] white queenside, [2] black kingside, [3] black queenside
+    private static final long[] CASTLING_KEYS = new long[4];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        long state = SEED;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                state += 0x9E3779B97F4A7C15L;
+                PIECE_KEYS[piece][square] = mix(state);
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            CASTLING_KEYS[i] = mix(state);
+        }
+        for (int i = 0; i < 8; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            EN_PASSANT_KEYS[i] = mix(state);
+        }
+        state += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE_KEY = mix(state);
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the hash of the current position of an engine.
+     *
+     * @param engine The engine whose position should be hashed
+     * @return 64-bit Zobrist hash of pieces, side to move, castling rights and en passant file
+     */
+    public static long hash(ChessEngine engine) {
+        Square[][] squares = engine.getBoard().getSquares();
+        int[] pieces = new int[64];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = squares[row][col].getPiece();
+                pieces[row * 8 + col] = (piece == null) ? -1 : pieceIndex(piece);
+            }
+        }
+        boolean whiteToMove = engine.getSideToMove() == PieceColor.WHITE;
+        return hash(pieces, whiteToMove, engine.getBoard().getCastlingRights(), enPassantFile(engine));
+    }
+
+    /**
+     * Computes the hash of a position given in Forsyth-Edwards Notation.
+     * The FEN is read by {@link ChessEngine#loadFen(String)}, so it is checked the
+     * same way and castling rights the placement cannot have are dropped as there.
+     *
+     * @param fen The FEN string
+     * @return 64-bit Zobrist hash, equal to {@link #hash(ChessEngine)} for the same position
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    public static long hashFen(String fen) {
+        try {
+            return new ChessEngine(fen).getPositionHash();
+        } catch (FENParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Combines position components into a hash.
+     *
+     * @param pieces Piece index per square (0-63), or -1 for an empty square
+     * @param whiteToMove true if white is to move
+     * @param castlingRights Bit mask: 1 = K, 2 = Q, 4 = k, 8 = q
+     * @param enPassantFile File (0-7) of a capturable en passant pawn, or -1
+     * @return The Zobrist hash
+     */
+    public static long hash(int[] pieces, boolean whiteToMove, int castlingRights, int enPassantFile) {
+        long key = 0L;
+        for (int square = 0; square < 64; square++) {
+            if (pieces[square] >= 0) {
+                key ^= PIECE_KEYS[pieces[square]][square];
+            }
+        }
+        if (!whiteToMove) {
+            key ^= BLACK_TO_MOVE_KEY;
+        }
+        key ^= castlingKey(castlingRights);
+        key ^= enPassantKey(enPassantFile);
+        return key;
+    }
+
+    /**
+     * Get the key of a piece standing on a square, for incremental updates.
+     *
+     * @param pieceIndex Piece index from {@link #pieceIndex(Piece)}
+     * @param row Row (0-7)
+     * @param col Column (0-7)
+     * @return The key
+     */
+    public static long pieceKey(int pieceIndex, int row, int col) {
+        return PIECE_KEYS[pieceIndex][Square.index(row, col)];
+    }
+
+    /**
+     * Get the combined key of a set of castling rights.
+     *
+     * @param castlingRights Bit mask: 1 = K, 2 = Q, 4 = k, 8 = q
+     * @return XOR of the keys of every right in the mask
+     */
+    public static long castlingKey(int castlingRights) {
+        long key = 0L;
+        for (int i = 0; i < 4; i++) {
+            if ((castlingRights & (1 << i)) != 0) {
+                key ^= CASTLING_KEYS[i];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Get the key of an en passant file.
+     *
+     * @param file File (0-7), or -1 for none
+     * @return The key, or 0 if file is -1
+     */
+    public static long enPassantKey(int file) {
+        return file < 0 ? 0L : EN_PASSANT_KEYS[file];
+    }
+
+    public static long sideToMoveKey() {
+        return BLACK_TO_MOVE_KEY;
+    }
+
+    /**
+     * Get the piece index used for hashing: 0-5 for white P, N, B, R, Q, K and 6-11 for black.
+     *
+     * @param piece The piece
+     * @return Index between 0 and 11
+     */
+    public static int pieceIndex(Piece piece) {
+        return piece.getKind().ordinal() + 6 * piece.getPieceColor().ordinal();
+    }
+
+    /**
+     * Get the file of the pawn that can be captured en passant in the engine's position.
+     * The file only counts if a pawn of the side to move is actually able to capture,
+     * so that positions differing only by an unusable en passant square hash the same.
+     *
+     * @param engine The engine
+     * @return File (0-7), or -1 if no en passant capture is possible
+     */
+    public static int enPassantFile(ChessEngine engine) {
+        Square target = engine.getEnPassantTarget();
+        if (target == null) {
+            return -1;
+        }
+        Square[][] squares = engine.getBoard().getSquares();
+        Piece capturer = Piece.of(engine.getSideToMove(), PieceKind.PAWN);
+        // The pushed pawn stands one rank beyond the target square, seen from the side to move
+        int row = capturer.isWhite() ? target.getRow() + 1 : target.getRow() - 1;
+        int col = target.getCol();
+        for (int dc = -1; dc <= 1; dc += 2) {
+            int c = col + dc;
+            if (c < 0 || c > 7) continue;
+            if (squares[row][c].getPiece() == capturer) {
+                return col;
+            }
+        }
+        return -1;
+    }
+}
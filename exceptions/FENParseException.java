@@ -0,0 +1,19 @@
+package exceptions;
+
+/**
+ * Exception thrown when a position in Forsyth-Edwards Notation (FEN) cannot be parsed.
+ */
+public class FENParseException extends Exception {
+    
+    public FENParseException(String message) {
+        super(message);
+    }
+    
+    public FENParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    
+    public FENParseException(String fen, String reason) {
+        super(String.format("Failed to parse FEN '%s': %s", fen, reason));
+    }
+}
@@ -8,8 +8,8 @@ import java.util.List;
  */
 public class Bishop extends Piece {
     
-    public Bishop(String color) {
-        super(color);
+    Bishop(PieceColor color) {
+        super(color, PieceKind.BISHOP);
     }
     
     @Override
@@ -40,7 +40,7 @@ public class Bishop extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♗" : "♝";
+        return color == PieceColor.WHITE ? "♗" : "♝";
     }
 }
 
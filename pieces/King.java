@@ -6,8 +6,8 @@ import java.util.List;
 
 public class King extends Piece {
     
-    public King(String color) {
-        super(color);
+    King(PieceColor color) {
+        super(color, PieceKind.KING);
     }
     
     @Override
@@ -34,7 +34,7 @@ public class King extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♔" : "♚";
+        return color == PieceColor.WHITE ? "♔" : "♚";
     }
 }
 
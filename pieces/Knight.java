@@ -5,8 +5,8 @@ import java.util.List;
 
 public class Knight extends Piece {
     
-    public Knight(String color) {
-        super(color);
+    Knight(PieceColor color) {
+        super(color, PieceKind.KNIGHT);
     }
     
     @Override
@@ -33,7 +33,7 @@ public class Knight extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♘" : "♞";
+        return color == PieceColor.WHITE ? "♘" : "♞";
     }
 }
 
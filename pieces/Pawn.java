@@ -5,14 +5,14 @@ import java.util.List;
 
 public class Pawn extends Piece {
     
-    public Pawn(String color) {
-        super(color);
+    Pawn(PieceColor color) {
+        super(color, PieceKind.PAWN);
     }
     
     @Override
     public List<int[]> getPossibleMoves(int fromRow, int fromCol) {
         List<int[]> moves = new ArrayList<>();
-        int direction = color.equals("white") ? -1 : 1; // White moves up, black moves down
+        int direction = color == PieceColor.WHITE ? -1 : 1; // White moves up, black moves down
         
         // Move forward one square
         int newRow = fromRow + direction;
@@ -20,7 +20,7 @@ public class Pawn extends Piece {
             moves.add(new int[]{newRow, fromCol});
             
             // Move forward two squares from starting position
-            if (!hasMoved) {
+            if (fromRow == (color == PieceColor.WHITE ? 6 : 1)) {
                 int newRow2 = fromRow + (2 * direction);
                 if (newRow2 >= 0 && newRow2 < 8) {
                     moves.add(new int[]{newRow2, fromCol});
@@ -42,7 +42,7 @@ public class Pawn extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♙" : "♟";
+        return color == PieceColor.WHITE ? "♙" : "♟";
     }
 }
 
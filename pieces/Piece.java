@@ -2,92 +2,154 @@ package pieces;
 
 import java.util.List;
 
+/**
+ * A chess piece. Pieces are immutable and shared: there is exactly one
+ * instance per colour and kind, obtained through {@link #of(PieceColor, PieceKind)},
+ * so pieces can be compared with {@code ==}. Everything that changes during a
+ * game, such as castling rights, belongs to the position, not to the piece.
+ */
 public abstract class Piece {
-    protected String color;
-    protected boolean hasMoved;
-    
+    // [colour ordinal][kind ordinal]
+    private static final Piece[][] SHARED = {
+        { new Pawn(PieceColor.WHITE), new Knight(PieceColor.WHITE), new Bishop(PieceColor.WHITE),
+          new Rook(PieceColor.WHITE), new Queen(PieceColor.WHITE), new King(PieceColor.WHITE) },
+        { new Pawn(PieceColor.BLACK), new Knight(PieceColor.BLACK), new Bishop(PieceColor.BLACK),
+          new Rook(PieceColor.BLACK), new Queen(PieceColor.BLACK), new King(PieceColor.BLACK) }
+    };
+
+    protected final PieceColor color;
+    private final PieceKind kind;
+    private final String pieceStr;
+
+    /**
+     * Constructor for a chess piece; only used to build the shared instances.
+     *
+     * @param color The color of the piece
+     * @param kind The kind of the piece
+     */
+    Piece(PieceColor color, PieceKind kind) {
+        this.color = color;
+        this.kind = kind;
+        this.pieceStr = (color == PieceColor.WHITE ? "w" : "b") + (kind == PieceKind.PAWN ? "P" : kind.getLetter());
+    }
+
+    /**
+     * Get the shared piece of a colour and kind.
+     *
+     * @param color The color of the piece
+     * @param kind The kind of the piece
+     * @return The piece
+     */
+    public static Piece of(PieceColor color, PieceKind kind) {
+        return SHARED[color.ordinal()][kind.ordinal()];
+    }
+
     /**
-     * Constructor for a chess piece.
-     * 
+     * Get the shared piece of a colour and kind.
+     *
      * @param color The color of the piece ("white" or "black")
+     * @param kind The kind of the piece
+     * @return The piece
+     * @throws IllegalArgumentException if the color is invalid
      */
-    public Piece(String color) {
-        if (!color.equals("white") && !color.equals("black")) {
-            throw new IllegalArgumentException("Color must be 'white' or 'black'");
+    public static Piece of(String color, PieceKind kind) {
+        return of(PieceColor.of(color), kind);
+    }
+
+    /**
+     * Get the piece for a FEN letter: upper case for white, lower case for black.
+     *
+     * @param letter One of "PNBRQK" or "pnbrqk"
+     * @return The piece, or null for any other character
+     */
+    public static Piece fromFenChar(char letter) {
+        PieceKind kind = PieceKind.fromLetter(letter);
+        if (kind == null) {
+            return null;
         }
-        this.color = color;
-        this.hasMoved = false;
+        return of(Character.isUpperCase(letter) ? PieceColor.WHITE : PieceColor.BLACK, kind);
     }
-    
+
     /**
      * Get all possible move directions/patterns for this piece from a given position.
      * This returns the theoretical moves without considering board state.
-     * 
+     *
      * @param fromRow Current row position (0-7)
      * @param fromCol Current column position (0-7)
      * @return List of possible move positions as int arrays [row, col]
      */
     public abstract List<int[]> getPossibleMoves(int fromRow, int fromCol);
-    
+
     /**
      * Get the unicode symbol for this piece.
-     * 
+     *
      * @return Unicode character representing the piece
      */
     public abstract String getSymbol();
-    
+
     /**
      * Get the color of this piece.
-     * 
+     *
      * @return "white" or "black"
      */
     public String getColor() {
+        return color.getName();
+    }
+
+    /**
+     * Get the color of this piece.
+     *
+     * @return WHITE or BLACK
+     */
+    public PieceColor getPieceColor() {
         return color;
     }
-    
+
     /**
-     * Check if this piece has moved.
-     * 
-     * @return true if the piece has moved, false otherwise
+     * Check if this is a white piece.
+     *
+     * @return true for white, false for black
      */
-    public boolean hasMoved() {
-        return hasMoved;
+    public boolean isWhite() {
+        return color == PieceColor.WHITE;
     }
-    
+
     /**
-     * Mark this piece as having moved.
+     * Get the kind of this piece.
+     *
+     * @return The kind
      */
-    public void setMoved(boolean moved) {
-        this.hasMoved = moved;
+    public PieceKind getKind() {
+        return kind;
     }
-    
+
     /**
      * Get the name of the piece type.
-     * 
-     * @return The class name of the piece
+     *
+     * @return The name of the piece kind, e.g. "Knight"
      */
     public String getType() {
-        return this.getClass().getSimpleName();
+        return kind.getName();
     }
-    
+
     public String getPieceLetter() {
-        switch (this.getType()) 
-        {
-            case "King": return "K";
-            case "Queen": return "Q";
-            case "Rook": return "R";
-            case "Bishop": return "B";
-            case "Knight": return "N";
-            default: return ""; 
-        }
+        return kind.getLetter();
     }
-    
+
     //get piece as string(e.g., bR, wQ)
     public String getPieceStr()
     {
-        String color = this.color.equals("white") ? "w" : "b";
-        String pieceLetter = this.getPieceLetter().equals("") ? "P" : this.getPieceLetter();
-        return color + pieceLetter;
+        return pieceStr;
+    }
+
+    /**
+     * Get the letter of this piece in FEN: upper case for white, lower case for black.
+     *
+     * @return One of "PNBRQKpnbrqk"
+     */
+    public char getFenChar() {
+        char letter = "PNBRQK".charAt(kind.ordinal());
+        return color == PieceColor.WHITE ? letter : Character.toLowerCase(letter);
     }
 
     @Override
@@ -95,4 +157,3 @@ public abstract class Piece {
         return getSymbol();
     }
 }
-
@@ -0,0 +1,56 @@
+package pieces;
+
+/**
+ * The two sides. Compared with {@code ==} and usable as an index into
+ * per-colour tables through {@link #ordinal()}.
+ */
+public enum PieceColor {
+    WHITE("white"),
+    BLACK("black");
+
+    private final String name;
+
+    PieceColor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name used in the string based API.
+     *
+     * @return "white" or "black"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the other side.
+     *
+     * @return BLACK for WHITE and WHITE for BLACK
+     */
+    public PieceColor opposite() {
+        return this == WHITE ? BLACK : WHITE;
+    }
+
+    /**
+     * Get the colour with the given name.
+     *
+     * @param name "white" or "black"
+     * @return The colour
+     * @throws IllegalArgumentException if the name is neither
+     */
+    public static PieceColor of(String name) {
+        if (WHITE.name.equals(name)) {
+            return WHITE;
+        }
+        if (BLACK.name.equals(name)) {
+            return BLACK;
+        }
+        throw new IllegalArgumentException("Color must be 'white' or 'black'");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
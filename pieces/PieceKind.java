@@ -0,0 +1,76 @@
+package pieces;
+
+/**
+ * The six kinds of piece, in the order used by the hashing and snapshot
+ * tables: pawn, knight, bishop, rook, queen, king. {@link #ordinal()} is the
+ * index into per-kind tables.
+ */
+public enum PieceKind {
+    PAWN("Pawn", ""),
+    KNIGHT("Knight", "N"),
+    BISHOP("Bishop", "B"),
+    ROOK("Rook", "R"),
+    QUEEN("Queen", "Q"),
+    KING("King", "K");
+
+    private static final PieceKind[] KINDS = values();
+
+    private final String name;
+    private final String letter;
+
+    PieceKind(String name, String letter) {
+        this.name = name;
+        this.letter = letter;
+    }
+
+    /**
+     * Get the name used in the string based API.
+     *
+     * @return The name, e.g. "Knight"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the letter used in algebraic notation.
+     *
+     * @return "N", "B", "R", "Q" or "K", and "" for pawns
+     */
+    public String getLetter() {
+        return letter;
+    }
+
+    /**
+     * Get the kind with the given ordinal, without copying the values array.
+     *
+     * @param ordinal Index between 0 (pawn) and 5 (king)
+     * @return The kind
+     */
+    public static PieceKind of(int ordinal) {
+        return KINDS[ordinal];
+    }
+
+    /**
+     * Get the kind for a FEN letter of either case.
+     *
+     * @param letter One of "pnbrqk" or "PNBRQK"
+     * @return The kind, or null for any other character
+     */
+    public static PieceKind fromLetter(char letter) {
+        switch (Character.toLowerCase(letter)) {
+            case 'p': return PAWN;
+            case 'n': return KNIGHT;
+            case 'b': return BISHOP;
+            case 'r': return ROOK;
+            case 'q': return QUEEN;
+            case 'k': return KING;
+            default: return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
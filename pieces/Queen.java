@@ -5,8 +5,8 @@ import java.util.List;
 
 public class Queen extends Piece {
     
-    public Queen(String color) {
-        super(color);
+    Queen(PieceColor color) {
+        super(color, PieceKind.QUEEN);
     }
     
     @Override
@@ -40,7 +40,7 @@ public class Queen extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♕" : "♛";
+        return color == PieceColor.WHITE ? "♕" : "♛";
     }
 }
 
@@ -5,8 +5,8 @@ import java.util.List;
 
 public class Rook extends Piece {
     
-    public Rook(String color) {
-        super(color);
+    Rook(PieceColor color) {
+        super(color, PieceKind.ROOK);
     }
     
     @Override
@@ -37,7 +37,7 @@ public class Rook extends Piece {
     
     @Override
     public String getSymbol() {
-        return color.equals("white") ? "♖" : "♜";
+        return color == PieceColor.WHITE ? "♖" : "♜";
     }
 }
 